@@ -0,0 +1,49 @@
+package no.kristiania.pg3402.gateway.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import no.kristiania.pg3402.gateway.loadbalancer.InstanceLoadTracker;
+import no.kristiania.pg3402.gateway.loadbalancer.PowerOfTwoChoicesLoadBalancer;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.ReactiveDiscoveryClient;
+import org.springframework.cloud.loadbalancer.core.ReactorLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.RoundRobinLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.support.LoadBalancerClientFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.Environment;
+
+/**
+ * Load balancer context for catalog-service: power-of-two-choices over the
+ * healthy instances, scored by latency and in-flight requests
+ */
+public class CatalogServiceLoadBalancerConfiguration {
+
+    @Bean
+    public InstanceLoadTracker instanceLoadTracker(Environment environment, ObjectProvider<MeterRegistry> meterRegistry) {
+        return LoadBalancerConfiguration.instanceLoadTracker(environment, meterRegistry);
+    }
+
+    @Bean
+    public ServiceInstanceListSupplier serviceInstanceListSupplier(Environment environment,
+                                                                   ObjectProvider<ReactiveDiscoveryClient> discoveryClient,
+                                                                   InstanceLoadTracker instanceLoadTracker) {
+        return LoadBalancerConfiguration.cachingSupplier(environment, discoveryClient, instanceLoadTracker, 8081);
+    }
+
+    @Bean
+    public ReactorLoadBalancer<ServiceInstance> powerOfTwoChoicesLoadBalancer(Environment environment,
+                                                                              LoadBalancerClientFactory loadBalancerClientFactory,
+                                                                              InstanceLoadTracker instanceLoadTracker) {
+        String name = environment.getProperty(LoadBalancerClientFactory.PROPERTY_NAME);
+        if ("round-robin".equalsIgnoreCase(
+                environment.getProperty("gateway.loadbalancer.catalog-service.strategy", "p2c"))) {
+            // Baseline for comparisons (scripts/simulate-catalog-load-balancing.sh)
+            return new RoundRobinLoadBalancer(
+                    loadBalancerClientFactory.getLazyProvider(name, ServiceInstanceListSupplier.class), name);
+        }
+        return new PowerOfTwoChoicesLoadBalancer(
+                loadBalancerClientFactory.getLazyProvider(name, ServiceInstanceListSupplier.class),
+                instanceLoadTracker);
+    }
+}
@@ -0,0 +1,45 @@
+package no.kristiania.pg3402.gateway.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import no.kristiania.pg3402.gateway.loadbalancer.InstanceLoadTracker;
+import no.kristiania.pg3402.gateway.loadbalancer.UserAffinityLoadBalancer;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.ReactiveDiscoveryClient;
+import org.springframework.cloud.loadbalancer.core.ReactorLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.support.LoadBalancerClientFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.Environment;
+
+/**
+ * Load balancer context for collection-service: requests for the same user stick
+ * to the same replica so its per-user caches (and the change stream it serves
+ * for that user) stay on one instance.
+ */
+public class CollectionServiceLoadBalancerConfiguration {
+
+    @Bean
+    public InstanceLoadTracker instanceLoadTracker(Environment environment, ObjectProvider<MeterRegistry> meterRegistry) {
+        return LoadBalancerConfiguration.instanceLoadTracker(environment, meterRegistry);
+    }
+
+    @Bean
+    public ServiceInstanceListSupplier serviceInstanceListSupplier(Environment environment,
+                                                                   ObjectProvider<ReactiveDiscoveryClient> discoveryClient,
+                                                                   InstanceLoadTracker instanceLoadTracker) {
+        return LoadBalancerConfiguration.cachingSupplier(environment, discoveryClient, instanceLoadTracker, 8082);
+    }
+
+    @Bean
+    public ReactorLoadBalancer<ServiceInstance> userAffinityLoadBalancer(Environment environment,
+                                                                         LoadBalancerClientFactory loadBalancerClientFactory,
+                                                                         InstanceLoadTracker instanceLoadTracker) {
+        String name = environment.getProperty(LoadBalancerClientFactory.PROPERTY_NAME);
+        return new UserAffinityLoadBalancer(
+                loadBalancerClientFactory.getLazyProvider(name, ServiceInstanceListSupplier.class),
+                instanceLoadTracker,
+                environment.getProperty("gateway.loadbalancer.collection-service.load-factor", Double.class, 1.25),
+                environment.getProperty("gateway.loadbalancer.collection-service.virtual-nodes", Integer.class, 100));
+    }
+}
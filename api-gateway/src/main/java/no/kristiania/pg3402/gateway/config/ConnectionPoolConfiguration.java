@@ -0,0 +1,55 @@
+package no.kristiania.pg3402.gateway.config;
+
+import no.kristiania.pg3402.gateway.httpclient.PerRouteNettyRoutingFilter;
+import no.kristiania.pg3402.gateway.httpclient.RouteConnectionPools;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.cloud.gateway.config.HttpClientCustomizer;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.config.HttpClientSslConfigurer;
+import org.springframework.cloud.gateway.filter.NettyRoutingFilter;
+import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import reactor.netty.http.client.HttpClient;
+
+import java.util.List;
+
+/**
+ * Downstream connection pools per route (gateway.connection-pools).
+ *
+ * The auto-configured NettyRoutingFilter cannot be switched off, so instead of
+ * registering a second routing filter it is replaced as it is created.
+ */
+@Configuration
+public class ConnectionPoolConfiguration {
+
+    @Bean
+    public RouteConnectionPools routeConnectionPools(Environment environment,
+                                                     HttpClientProperties properties,
+                                                     ServerProperties serverProperties,
+                                                     HttpClientSslConfigurer sslConfigurer,
+                                                     ObjectProvider<HttpClientCustomizer> customizers) {
+        return new RouteConnectionPools(environment, properties, serverProperties, sslConfigurer,
+                customizers.orderedStream().toList());
+    }
+
+    @Bean
+    static BeanPostProcessor perRouteRoutingFilterPostProcessor(ObjectProvider<HttpClient> httpClient,
+                                                                ObjectProvider<List<HttpHeadersFilter>> headersFilters,
+                                                                ObjectProvider<HttpClientProperties> properties,
+                                                                ObjectProvider<RouteConnectionPools> pools) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof NettyRoutingFilter && !(bean instanceof PerRouteNettyRoutingFilter)) {
+                    return new PerRouteNettyRoutingFilter(httpClient.getObject(), headersFilters,
+                            properties.getObject(), pools.getObject());
+                }
+                return bean;
+            }
+        };
+    }
+}
@@ -1,35 +1,104 @@
 package no.kristiania.pg3402.gateway.config;
 
+import no.kristiania.pg3402.gateway.filter.AdaptiveConcurrencyLimitFilter;
+import no.kristiania.pg3402.gateway.filter.HedgingGatewayFilter;
+import no.kristiania.pg3402.gateway.filter.RequestCoalescingFilter;
+import no.kristiania.pg3402.gateway.filter.ResponseCacheFilter;
+import no.kristiania.pg3402.gateway.filter.RouteBulkheadFilter;
 import org.springframework.cloud.gateway.route.RouteLocator;
+import org.springframework.cloud.gateway.support.RouteMetadataUtils;
 import org.springframework.cloud.gateway.route.builder.RouteLocatorBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 
 @Configuration
 public class GatewayConfig {
 
     @Bean
-    public RouteLocator customRouteLocator(RouteLocatorBuilder builder) {
+    public RouteLocator customRouteLocator(RouteLocatorBuilder builder,
+                                           ResponseCacheFilter responseCacheFilter,
+                                           RequestCoalescingFilter requestCoalescingFilter,
+                                           HedgingGatewayFilter hedgingGatewayFilter,
+                                           AdaptiveConcurrencyLimitFilter concurrencyLimitFilter,
+                                           RouteBulkheadFilter bulkheadFilter) {
         return builder.routes()
-                // Catalog Service routes (with load balancing across multiple instances)
+                // Catalog Service routes (with load balancing across multiple instances;
+                // GETs are cached at the edge, identical in-flight misses share one upstream
+                // call, and GETs are hedged when gateway.hedging.enabled is set).
+                // Rate limits use the gateway.rate-limiter defaults (see RateLimiterConfiguration);
+                // requests that go upstream are subject to the route's adaptive concurrency limit,
+                // bulkhead and circuit breaker. Without a fallback URI, circuit breaker errors
+                // reach the response cache, which answers with a stale copy when it has one
                 .route("catalog-service", r -> r
                         .path("/api/catalog/**")
                         .filters(f -> f
+                                .requestRateLimiter(config -> { })
+                                .filter(responseCacheFilter)
+                                .filter(requestCoalescingFilter)
+                                .filter(concurrencyLimitFilter)
+                                .filter(bulkheadFilter)
+                                .circuitBreaker(config -> config.setName("catalog-service"))
                                 .stripPrefix(2)
-                                .addRequestHeader("X-Gateway", "API-Gateway"))
+                                .addRequestHeader("X-Gateway", "API-Gateway")
+                                .filter(hedgingGatewayFilter))
                         .uri("lb://catalog-service"))
 
-                // Collection Service routes
+                // Collection change stream (Server-Sent Events): long-lived, so no response
+                // timeout; Netty flushes text/event-stream per event rather than buffering
+                .route("collection-events", r -> r
+                        .order(-1)
+                        .path("/api/collections/users/*/events")
+                        .and().method(HttpMethod.GET)
+                        .filters(f -> f
+                                .addRequestHeader("X-Gateway", "API-Gateway")
+                                .setResponseHeader(HttpHeaders.CACHE_CONTROL, "no-cache")
+                                .setResponseHeader("X-Accel-Buffering", "no"))
+                        .metadata(RouteMetadataUtils.RESPONSE_TIMEOUT_ATTR, -1)
+                        .uri("lb://collection-service"))
+
+                // Long-running collection requests: streamed exports, CSV imports and the admin
+                // rebuilds and shard moves take minutes, so they bypass the circuit breaker and its
+                // time limiter (which would cancel them and count them as failures), and have no
+                // response timeout. Their own bulkhead keeps a burst of them from crowding out
+                // ordinary traffic.
+                .route("collection-long-running", r -> r
+                        .order(-1)
+                        .path("/api/collections/users/*/cards/export", "/api/collections/users/*/cards/import",
+                                "/api/collections/admin/export", "/api/collections/admin/ownership-index/rebuild",
+                                "/api/collections/admin/recommendations/rebuild", "/api/collections/admin/shards/move")
+                        .filters(f -> f
+                                .requestRateLimiter(config -> { })
+                                .filter(bulkheadFilter)
+                                .addRequestHeader("X-Gateway", "API-Gateway"))
+                        .metadata(RouteMetadataUtils.RESPONSE_TIMEOUT_ATTR, -1)
+                        .uri("lb://collection-service"))
+
+                // Collection Service routes (sticky per user across instances; a fast 503 while
+                // the circuit breaker is open)
                 .route("collection-service", r -> r
                         .path("/api/collections/**")
                         .filters(f -> f
+                                .requestRateLimiter(config -> { })
+                                .filter(concurrencyLimitFilter)
+                                .filter(bulkheadFilter)
+                                .circuitBreaker(config -> config
+                                        .setName("collection-service")
+                                        .setFallbackUri("forward:/fallback/collection-service"))
                                 .addRequestHeader("X-Gateway", "API-Gateway"))
-                        .uri("http://collection-service:8082"))
+                        .uri("lb://collection-service"))
 
-                // Media Service routes
+                // Media Service routes (only reached when gateway.media.enabled is off; otherwise
+                // MediaController serves the images from the gateway's own copy of the directory)
                 .route("media-service", r -> r
                         .path("/api/media/**")
                         .filters(f -> f
+                                .filter(concurrencyLimitFilter)
+                                .filter(bulkheadFilter)
+                                .circuitBreaker(config -> config
+                                        .setName("media-service")
+                                        .setFallbackUri("forward:/fallback/media-service"))
                                 .stripPrefix(2)
                                 .addRequestHeader("X-Gateway", "API-Gateway"))
                         .uri("http://media-service:8084"))
@@ -1,61 +1,60 @@
 package no.kristiania.pg3402.gateway.config;
 
-import org.springframework.cloud.client.DefaultServiceInstance;
-import org.springframework.cloud.client.ServiceInstance;
+import io.micrometer.core.instrument.MeterRegistry;
+import no.kristiania.pg3402.gateway.loadbalancer.CachingServiceInstanceListSupplier;
+import no.kristiania.pg3402.gateway.loadbalancer.DockerDnsServiceInstanceListSupplier;
+import no.kristiania.pg3402.gateway.loadbalancer.InstanceLoadTracker;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.cloud.client.discovery.ReactiveDiscoveryClient;
+import org.springframework.cloud.loadbalancer.annotation.LoadBalancerClient;
+import org.springframework.cloud.loadbalancer.annotation.LoadBalancerClients;
+import org.springframework.cloud.loadbalancer.core.DiscoveryClientServiceInstanceListSupplier;
 import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
-import org.springframework.context.annotation.Bean;
+import org.springframework.cloud.loadbalancer.support.LoadBalancerClientFactory;
 import org.springframework.context.annotation.Configuration;
-import reactor.core.publisher.Flux;
-
-import java.net.InetAddress;
-import java.net.UnknownHostException;
-import java.util.ArrayList;
-import java.util.List;
+import org.springframework.core.env.Environment;
 
 /**
  * Load Balancer configuration for Docker Compose DNS-based service discovery.
  * Docker Compose creates DNS records that resolve to all container IPs for a service.
+ *
+ * Each load-balanced service gets its own child context with its own instance
+ * supplier and balancer; the per-client configuration classes are deliberately
+ * not annotated with @Configuration so component scanning does not pick them up.
  */
 @Configuration
+@LoadBalancerClients({
+        @LoadBalancerClient(name = "catalog-service", configuration = CatalogServiceLoadBalancerConfiguration.class),
+        @LoadBalancerClient(name = "collection-service", configuration = CollectionServiceLoadBalancerConfiguration.class)
+})
 public class LoadBalancerConfiguration {
 
+    static InstanceLoadTracker instanceLoadTracker(Environment environment, ObjectProvider<MeterRegistry> meterRegistry) {
+        return new InstanceLoadTracker(
+                environment.getProperty(LoadBalancerClientFactory.PROPERTY_NAME),
+                environment.getProperty("gateway.loadbalancer.failure-threshold", Integer.class, 3),
+                DurationStyle.detectAndParse(environment.getProperty("gateway.loadbalancer.cooldown", "30s")),
+                DurationStyle.detectAndParse(environment.getProperty("gateway.loadbalancer.latency-decay", "5s")),
+                DurationStyle.detectAndParse(environment.getProperty("gateway.loadbalancer.failure-penalty", "1s")),
+                meterRegistry.getIfAvailable());
+    }
+
     /**
-     * Custom ServiceInstanceListSupplier that uses Docker DNS to discover catalog-service instances.
-     * Docker Compose DNS returns all IPs for scaled services.
+     * Cached instance list for the client's service, refreshed in the background
+     * from Docker DNS (default) or, with gateway.loadbalancer.discovery=consul,
+     * from the discovery client
      */
-    @Bean
-    public ServiceInstanceListSupplier serviceInstanceListSupplier() {
-        return new ServiceInstanceListSupplier() {
-            @Override
-            public String getServiceId() {
-                return "catalog-service";
-            }
-
-            @Override
-            public Flux<List<ServiceInstance>> get() {
-                return Flux.defer(() -> {
-                    try {
-                        // Docker Compose DNS resolves service name to all container IPs
-                        InetAddress[] addresses = InetAddress.getAllByName("catalog-service");
-                        List<ServiceInstance> instances = new ArrayList<>();
-
-                        for (int i = 0; i < addresses.length; i++) {
-                            String host = addresses[i].getHostAddress();
-                            instances.add(new DefaultServiceInstance(
-                                    "catalog-service-" + i,
-                                    "catalog-service",
-                                    host,
-                                    8081,
-                                    false
-                            ));
-                        }
-
-                        return Flux.just(instances);
-                    } catch (UnknownHostException e) {
-                        return Flux.just(new ArrayList<>());
-                    }
-                });
-            }
-        };
+    static ServiceInstanceListSupplier cachingSupplier(Environment environment,
+                                                       ObjectProvider<ReactiveDiscoveryClient> discoveryClient,
+                                                       InstanceLoadTracker tracker,
+                                                       int port) {
+        String serviceId = environment.getProperty(LoadBalancerClientFactory.PROPERTY_NAME);
+        ServiceInstanceListSupplier source = "consul".equalsIgnoreCase(
+                environment.getProperty("gateway.loadbalancer.discovery", "dns"))
+                ? new DiscoveryClientServiceInstanceListSupplier(discoveryClient.getObject(), environment)
+                : new DockerDnsServiceInstanceListSupplier(serviceId, port);
+        return new CachingServiceInstanceListSupplier(source, tracker,
+                DurationStyle.detectAndParse(environment.getProperty("gateway.loadbalancer.refresh-interval", "5s")));
     }
 }
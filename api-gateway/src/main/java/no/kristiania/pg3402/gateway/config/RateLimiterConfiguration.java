@@ -0,0 +1,81 @@
+package no.kristiania.pg3402.gateway.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import no.kristiania.pg3402.gateway.ratelimit.LocalRateLimiter;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.gateway.filter.ratelimit.KeyResolver;
+import org.springframework.cloud.gateway.filter.ratelimit.RedisRateLimiter;
+import org.springframework.cloud.gateway.support.ConfigurationService;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.security.Principal;
+import java.time.Duration;
+
+/**
+ * Rate limiter used by the RequestRateLimiter filters.
+ *
+ * gateway.rate-limiter.mode picks the implementation: redis (the shared Spring
+ * Cloud Gateway limiter, one Redis call per request) or local (in-memory token
+ * buckets, optionally synced between gateway instances through Redis). Either
+ * way the gateway.rate-limiter defaults apply to routes that do not set their
+ * own limiter arguments, such as the Java DSL routes in GatewayConfig.
+ */
+@Configuration
+public class RateLimiterConfiguration {
+
+    @Value("${gateway.rate-limiter.replenish-rate:100}")
+    private int replenishRate;
+
+    @Value("${gateway.rate-limiter.burst-capacity:200}")
+    private int burstCapacity;
+
+    @Value("${gateway.rate-limiter.requested-tokens:1}")
+    private int requestedTokens;
+
+    @Bean
+    @Primary
+    @ConditionalOnProperty(name = "gateway.rate-limiter.mode", havingValue = "redis", matchIfMissing = true)
+    public RedisRateLimiter redisRateLimiter() {
+        // Picks up the Redis template, script and configuration service from the context
+        return new RedisRateLimiter(replenishRate, burstCapacity, requestedTokens);
+    }
+
+    @Bean
+    @Primary
+    @ConditionalOnProperty(name = "gateway.rate-limiter.mode", havingValue = "local")
+    public LocalRateLimiter localRateLimiter(ConfigurationService configurationService,
+                                             ObjectProvider<ReactiveStringRedisTemplate> redisTemplate,
+                                             MeterRegistry meterRegistry,
+                                             @Value("${gateway.rate-limiter.sync.enabled:false}") boolean syncEnabled,
+                                             @Value("${gateway.rate-limiter.sync.interval:1s}") Duration syncInterval) {
+        LocalRateLimiter.Config defaults = new LocalRateLimiter.Config();
+        defaults.setReplenishRate(replenishRate);
+        defaults.setBurstCapacity(burstCapacity);
+        defaults.setRequestedTokens(requestedTokens);
+        return new LocalRateLimiter(configurationService, defaults,
+                syncEnabled ? redisTemplate.getIfAvailable() : null, syncInterval, meterRegistry);
+    }
+
+    /**
+     * Limits per authenticated user, or per client address while security is disabled
+     * (the default principal resolver would leave every request with an empty key)
+     */
+    @Bean
+    public KeyResolver clientKeyResolver() {
+        return exchange -> exchange.getPrincipal()
+                .map(Principal::getName)
+                .switchIfEmpty(Mono.fromSupplier(() -> {
+                    InetSocketAddress remoteAddress = exchange.getRequest().getRemoteAddress();
+                    return remoteAddress != null && remoteAddress.getAddress() != null
+                            ? remoteAddress.getAddress().getHostAddress()
+                            : "";
+                }));
+    }
+}
@@ -0,0 +1,50 @@
+package no.kristiania.pg3402.gateway.controller;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import no.kristiania.pg3402.gateway.dto.BinderCardResponse;
+import no.kristiania.pg3402.gateway.service.BinderService;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+
+@RestController
+@RequestMapping("/api/binder")
+@RequiredArgsConstructor
+@Slf4j
+@CrossOrigin(origins = "*", exposedHeaders = {"X-Correlation-ID", BinderController.PARTIAL_HEADER})
+public class BinderController {
+
+    static final String PARTIAL_HEADER = "X-Binder-Partial";
+
+    private final BinderService binderService;
+
+    /**
+     * One binder page: the set's cards with the user's quantities and conditions joined on,
+     * replacing separate calls to catalog and collection.
+     * GET /api/binder/users/{userId}/sets/{setCode}
+     * Streamed as a JSON array, or one card per line with Accept: application/x-ndjson.
+     * If the collection did not answer in time the cards come without ownership and
+     * X-Binder-Partial: collection is set.
+     */
+    @GetMapping(value = "/users/{userId}/sets/{setCode}",
+            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<BinderCardResponse> getBinderPage(@PathVariable Long userId,
+                                                  @PathVariable String setCode,
+                                                  ServerWebExchange exchange) {
+        log.info("GET /api/binder/users/{}/sets/{}", userId, setCode);
+        return binderService.getBinderPage(userId, setCode)
+                .flatMapMany(page -> {
+                    // Still before the first byte of the body, so the header can be added
+                    if (page.partial()) {
+                        exchange.getResponse().getHeaders().set(PARTIAL_HEADER, "collection");
+                    }
+                    return Flux.fromIterable(page.cards());
+                });
+    }
+}
@@ -0,0 +1,63 @@
+package no.kristiania.pg3402.gateway.controller;
+
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import lombok.extern.slf4j.Slf4j;
+import no.kristiania.pg3402.gateway.dto.FallbackResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Circuit breaker fallbacks (forward:/fallback/{service} in GatewayConfig):
+ * an immediate 503 with Retry-After, or 504 when the service timed out.
+ */
+@RestController
+@RequestMapping("/fallback")
+@Slf4j
+public class FallbackController {
+
+    private final String retryAfter;
+
+    public FallbackController(@Value("${gateway.resilience.retry-after:5s}") Duration retryAfter) {
+        this.retryAfter = String.valueOf(Math.max(1, retryAfter.toSeconds()));
+    }
+
+    @RequestMapping("/{service}")
+    public Mono<ResponseEntity<FallbackResponse>> unavailable(@PathVariable String service,
+                                                              ServerWebExchange exchange) {
+        Throwable cause = exchange.getAttribute(ServerWebExchangeUtils.CIRCUITBREAKER_EXECUTION_EXCEPTION_ATTR);
+        HttpStatus status = cause instanceof TimeoutException ? HttpStatus.GATEWAY_TIMEOUT : HttpStatus.SERVICE_UNAVAILABLE;
+        String message;
+        if (cause instanceof CallNotPermittedException) {
+            message = service + " is failing; requests are paused while it recovers";
+        } else if (cause instanceof TimeoutException) {
+            message = service + " did not respond in time";
+        } else {
+            message = service + " is unavailable";
+        }
+        log.warn("Fallback for {}: {}", service, cause != null ? cause.toString() : "unknown cause");
+
+        FallbackResponse body = FallbackResponse.builder()
+                .timestamp(LocalDateTime.now())
+                .status(status.value())
+                .error(status.getReasonPhrase())
+                .message(message)
+                .service(service)
+                .build();
+        return Mono.just(ResponseEntity.status(status)
+                .header(HttpHeaders.RETRY_AFTER, retryAfter)
+                .header(HttpHeaders.CACHE_CONTROL, "no-store")
+                .body(body));
+    }
+}
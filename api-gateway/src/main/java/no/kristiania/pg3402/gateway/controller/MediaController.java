@@ -0,0 +1,74 @@
+package no.kristiania.pg3402.gateway.controller;
+
+import lombok.extern.slf4j.Slf4j;
+import no.kristiania.pg3402.gateway.dto.ImageListResponse;
+import no.kristiania.pg3402.gateway.media.ImageFile;
+import no.kristiania.pg3402.gateway.service.ImageService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Card images straight from the gateway (gateway.media.enabled), on the paths the
+ * media-service route proxies otherwise; controller mappings take precedence over routes.
+ */
+@RestController
+@RequestMapping("/api/media")
+@ConditionalOnProperty(name = "gateway.media.enabled", havingValue = "true")
+@Slf4j
+@CrossOrigin(origins = "*", exposedHeaders = {"ETag", "Accept-Ranges", "Content-Range"})
+public class MediaController {
+
+    private final ImageService imageService;
+    private final CacheControl cacheControl;
+
+    public MediaController(ImageService imageService,
+                           @Value("${gateway.media.max-age:365d}") Duration maxAge) {
+        this.imageService = imageService;
+        this.cacheControl = CacheControl.maxAge(maxAge).cachePublic().immutable();
+    }
+
+    /**
+     * Image file
+     * GET /api/media/images/{filename}
+     * Supports Range requests, and If-None-Match / If-Modified-Since (304)
+     */
+    @GetMapping("/images/{filename:.+}")
+    public ResponseEntity<Resource> getImage(@PathVariable String filename) {
+        ImageFile file = imageService.find(filename)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Image not found"));
+        return ResponseEntity.ok()
+                .eTag(file.etag())
+                .lastModified(file.lastModified())
+                .cacheControl(cacheControl)
+                .contentType(file.mediaType())
+                .body(imageService.resource(file));
+    }
+
+    /**
+     * List all available images
+     * GET /api/media/images
+     */
+    @GetMapping("/images")
+    public Mono<ImageListResponse> listImages() {
+        List<String> images = imageService.imageNames();
+        log.debug("GET /api/media/images - {} images", images.size());
+        return Mono.just(ImageListResponse.builder()
+                .total(images.size())
+                .images(images)
+                .build());
+    }
+}
@@ -0,0 +1,34 @@
+package no.kristiania.pg3402.gateway.controller;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import no.kristiania.pg3402.gateway.dto.CachePurgeResponse;
+import no.kristiania.pg3402.gateway.filter.ResponseCacheFilter;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+@RestController
+@RequestMapping("/admin/response-cache")
+@RequiredArgsConstructor
+@Slf4j
+public class ResponseCacheController {
+
+    private final ResponseCacheFilter responseCacheFilter;
+
+    /**
+     * Purge cached responses whose URL starts with the prefix, e.g. /api/catalog/sets
+     * (everything when no prefix is given)
+     */
+    @DeleteMapping
+    public Mono<CachePurgeResponse> purge(@RequestParam(defaultValue = "") String prefix) {
+        int purged = responseCacheFilter.purge(prefix);
+        log.info("DELETE /admin/response-cache - prefix: '{}', purged: {}", prefix, purged);
+        return Mono.just(CachePurgeResponse.builder()
+                .prefix(prefix)
+                .purged(purged)
+                .build());
+    }
+}
@@ -0,0 +1,33 @@
+package no.kristiania.pg3402.gateway.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * A catalog card with the user's copies of it joined on.
+ *
+ * The card fields are read straight from catalog-service's card JSON.
+ * ownedQuantity and copies are null (rather than 0 and empty) when the
+ * collection could not be read in time, so clients can tell "not owned" from
+ * "unknown".
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BinderCardResponse {
+    private Long id;
+    private String setCode;
+    private String setName;
+    private String cardNumber;
+    private String name;
+    private String rarity;
+    private String variant;
+    private String imageUrl;
+    private String type;
+    private String artist;
+    private Integer ownedQuantity;
+    private List<OwnedCopy> copies;
+}
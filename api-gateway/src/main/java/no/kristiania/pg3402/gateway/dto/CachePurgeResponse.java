@@ -0,0 +1,15 @@
+package no.kristiania.pg3402.gateway.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CachePurgeResponse {
+    private String prefix;
+    private int purged;
+}
@@ -0,0 +1,17 @@
+package no.kristiania.pg3402.gateway.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImageListResponse {
+    private int total;
+    private List<String> images;
+}
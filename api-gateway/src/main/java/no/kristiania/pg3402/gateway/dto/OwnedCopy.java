@@ -0,0 +1,21 @@
+package no.kristiania.pg3402.gateway.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One collection entry for a card (as returned by collection-service's
+ * /users/{userId}/cards); a user can hold several, e.g. per condition
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OwnedCopy {
+    private Long cardId;
+    private Integer quantity;
+    private String condition;
+    private Boolean isReverseHolo;
+}
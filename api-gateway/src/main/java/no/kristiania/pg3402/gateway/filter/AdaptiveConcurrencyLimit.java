@@ -0,0 +1,137 @@
+package no.kristiania.pg3402.gateway.filter;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Concurrency limit for one route that adapts to upstream latency (a gradient
+ * limiter in the style of Netflix concurrency-limits).
+ *
+ * Latency samples are averaged over a short window and compared to a slow
+ * moving average of past windows. While recent latency is within tolerance of
+ * that baseline the limit grows by about sqrt(limit) per window; once requests
+ * start queueing upstream, latency rises and the limit shrinks in proportion
+ * (by at most half per window). Failed requests back the limit off
+ * multiplicatively. The limit only grows when at least half of it was in use,
+ * so a quiet route does not drift up to max-limit.
+ */
+class AdaptiveConcurrencyLimit {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double smoothing;
+    private final double backoffRatio;
+    private final long windowNanos;
+    private final int minWindowSamples;
+    private final double baselineDecay;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile double limit;
+
+    // Window state, guarded by this
+    private long windowStart = System.nanoTime();
+    private long windowRttSum;
+    private int windowSamples;
+    private int windowMaxInFlight;
+    private boolean windowDropped;
+    private double baselineRtt;
+
+    AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, double tolerance, double smoothing,
+                             double backoffRatio, long windowNanos, int minWindowSamples, int baselineWindows) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.smoothing = smoothing;
+        this.backoffRatio = backoffRatio;
+        this.windowNanos = windowNanos;
+        this.minWindowSamples = minWindowSamples;
+        this.baselineDecay = 2.0 / (baselineWindows + 1);
+    }
+
+    /**
+     * Takes a slot if the route is below its limit.
+     *
+     * @return the in-flight count including this request, or -1 if it should be shed
+     */
+    int tryAcquire() {
+        int max = (int) limit;
+        while (true) {
+            int current = inFlight.get();
+            if (current >= max) {
+                return -1;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return current + 1;
+            }
+        }
+    }
+
+    /**
+     * Releases the slot taken by tryAcquire without recording anything, for
+     * requests that tell nothing about the upstream (cancelled, or answered
+     * before reaching it)
+     */
+    void release() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Releases the slot taken by tryAcquire and records how the request went
+     *
+     * @param inFlightAtStart what tryAcquire returned
+     * @param dropped         the upstream failed, timed out or answered 503
+     */
+    void release(long rttNanos, int inFlightAtStart, boolean dropped) {
+        inFlight.decrementAndGet();
+        long now = System.nanoTime();
+        synchronized (this) {
+            if (dropped) {
+                windowDropped = true;
+            } else {
+                windowRttSum += rttNanos;
+                windowSamples++;
+            }
+            windowMaxInFlight = Math.max(windowMaxInFlight, inFlightAtStart);
+            if (now - windowStart < windowNanos || (windowSamples < minWindowSamples && !windowDropped)) {
+                return;
+            }
+            update();
+            windowStart = now;
+            windowRttSum = 0;
+            windowSamples = 0;
+            windowMaxInFlight = 0;
+            windowDropped = false;
+        }
+    }
+
+    private void update() {
+        double current = limit;
+        double next;
+        if (windowDropped) {
+            next = current * backoffRatio;
+        } else {
+            double shortRtt = (double) windowRttSum / windowSamples;
+            baselineRtt = baselineRtt == 0 ? shortRtt : baselineRtt + baselineDecay * (shortRtt - baselineRtt);
+            if (baselineRtt / shortRtt > 2) {
+                // Latency has stayed well below the baseline (e.g. after a slow period): catch up faster
+                baselineRtt *= 0.95;
+            }
+            if (windowMaxInFlight < current / 2) {
+                return;
+            }
+            double gradient = Math.max(0.5, Math.min(1.0, tolerance * baselineRtt / shortRtt));
+            double target = current * gradient + Math.sqrt(current);
+            next = current * (1 - smoothing) + target * smoothing;
+        }
+        limit = Math.max(minLimit, Math.min(maxLimit, next));
+    }
+
+    int limit() {
+        return (int) limit;
+    }
+
+    int inFlight() {
+        return inFlight.get();
+    }
+}
@@ -0,0 +1,150 @@
+package no.kristiania.pg3402.gateway.filter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sheds load when a route's upstream slows down, instead of letting requests
+ * queue until they time out.
+ *
+ * Each route gets its own {@link AdaptiveConcurrencyLimit}, which lowers the
+ * number of requests allowed in flight as upstream latency rises above its
+ * baseline (or requests fail) and raises it again as latency recovers.
+ * Requests over the limit are answered immediately with 503 and Retry-After.
+ * Only requests that reached the upstream (see {@link RequestTiming}) are
+ * measured; those answered by the gateway itself only release their slot.
+ *
+ * Put it after the response cache and request coalescing, so only requests
+ * that actually go upstream count against the limit.
+ */
+@Slf4j
+@Component
+public class AdaptiveConcurrencyLimitFilter implements GatewayFilter {
+
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double smoothing;
+    private final double backoffRatio;
+    private final Duration window;
+    private final int minWindowSamples;
+    private final int baselineWindows;
+    private final String retryAfter;
+    private final Map<String, RouteLimit> limits = new ConcurrentHashMap<>();
+
+    public AdaptiveConcurrencyLimitFilter(MeterRegistry meterRegistry,
+                                          @Value("${gateway.concurrency-limit.enabled:true}") boolean enabled,
+                                          @Value("${gateway.concurrency-limit.initial-limit:20}") int initialLimit,
+                                          @Value("${gateway.concurrency-limit.min-limit:4}") int minLimit,
+                                          @Value("${gateway.concurrency-limit.max-limit:200}") int maxLimit,
+                                          @Value("${gateway.concurrency-limit.tolerance:1.5}") double tolerance,
+                                          @Value("${gateway.concurrency-limit.smoothing:0.2}") double smoothing,
+                                          @Value("${gateway.concurrency-limit.backoff-ratio:0.9}") double backoffRatio,
+                                          @Value("${gateway.concurrency-limit.window:1s}") Duration window,
+                                          @Value("${gateway.concurrency-limit.min-window-samples:10}") int minWindowSamples,
+                                          @Value("${gateway.concurrency-limit.baseline-windows:60}") int baselineWindows,
+                                          @Value("${gateway.concurrency-limit.retry-after:1s}") Duration retryAfter) {
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.smoothing = smoothing;
+        this.backoffRatio = backoffRatio;
+        this.window = window;
+        this.minWindowSamples = Math.max(1, minWindowSamples);
+        this.baselineWindows = baselineWindows;
+        this.retryAfter = String.valueOf(Math.max(1, (retryAfter.toMillis() + 999) / 1000));
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        if (!enabled) {
+            return chain.filter(exchange);
+        }
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        RouteLimit routeLimit = limits.computeIfAbsent(route != null ? route.getId() : "unknown", this::newLimit);
+        AdaptiveConcurrencyLimit limit = routeLimit.limit();
+
+        int inFlightAtStart = limit.tryAcquire();
+        if (inFlightAtStart < 0) {
+            routeLimit.shed().increment();
+            return shed(exchange);
+        }
+
+        long start = System.nanoTime();
+        return chain.filter(exchange)
+                .doFinally(signal -> {
+                    if (signal == SignalType.CANCEL) {
+                        // The client went away: says nothing about the upstream
+                        limit.release();
+                        return;
+                    }
+                    if (exchange.getAttribute(RequestTiming.UPSTREAM_START_ATTR) == null) {
+                        // Answered without going upstream: a bulkhead rejection, the open circuit
+                        // breaker's fallback, a local error. Shrinking the limit for these would
+                        // keep it down for as long as the circuit stays open.
+                        limit.release();
+                        return;
+                    }
+                    // Sent upstream: a 503 is the upstream's own, a 504 the time limiter giving up on it
+                    HttpStatusCode status = exchange.getResponse().getStatusCode();
+                    boolean dropped = signal == SignalType.ON_ERROR
+                            || (status != null && (status.value() == HttpStatus.SERVICE_UNAVAILABLE.value()
+                            || status.value() == HttpStatus.GATEWAY_TIMEOUT.value()));
+                    limit.release(System.nanoTime() - start, inFlightAtStart, dropped);
+                });
+    }
+
+    private Mono<Void> shed(ServerWebExchange exchange) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+        response.getHeaders().set(HttpHeaders.RETRY_AFTER, retryAfter);
+        return response.setComplete();
+    }
+
+    private RouteLimit newLimit(String routeId) {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(initialLimit, minLimit, maxLimit, tolerance,
+                smoothing, backoffRatio, window.toNanos(), minWindowSamples, baselineWindows);
+        Gauge.builder("gateway.concurrency.limit", limit, AdaptiveConcurrencyLimit::limit)
+                .description("Current adaptive concurrency limit of the route")
+                .tag("route", routeId)
+                .register(meterRegistry);
+        Gauge.builder("gateway.concurrency.inflight", limit, AdaptiveConcurrencyLimit::inFlight)
+                .description("Requests of the route currently in flight upstream")
+                .tag("route", routeId)
+                .register(meterRegistry);
+        Counter shed = Counter.builder("gateway.concurrency.shed")
+                .description("Requests rejected with 503 because the route was at its concurrency limit")
+                .tag("route", routeId)
+                .register(meterRegistry);
+        log.debug("Adaptive concurrency limit for route {} starts at {}", routeId, initialLimit);
+        return new RouteLimit(limit, shed);
+    }
+
+    private record RouteLimit(AdaptiveConcurrencyLimit limit, Counter shed) {
+    }
+}
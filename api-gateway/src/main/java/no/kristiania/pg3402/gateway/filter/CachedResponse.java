@@ -0,0 +1,73 @@
+package no.kristiania.pg3402.gateway.filter;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A stored upstream response: headers (minus hop-by-hop and per-request ones),
+ * body bytes, and when it stops being fresh.
+ *
+ * Only one variant is kept per URL: varyValues records the request header
+ * values the response varied on, and a request with different values misses.
+ */
+record CachedResponse(HttpHeaders headers,
+                      byte[] body,
+                      String etag,
+                      Map<String, List<String>> varyValues,
+                      long storedAt,
+                      long freshUntil) {
+
+    boolean isFresh() {
+        return System.currentTimeMillis() < freshUntil;
+    }
+
+    boolean matches(ServerHttpRequest request) {
+        for (Map.Entry<String, List<String>> vary : varyValues.entrySet()) {
+            if (!Objects.equals(vary.getValue(), request.getHeaders().get(vary.getKey()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    long ageSeconds() {
+        return Math.max(0, (System.currentTimeMillis() - storedAt) / 1000);
+    }
+
+    /**
+     * Approximate heap footprint, used to weigh entries against the cache size limit
+     */
+    int weight() {
+        int headerBytes = 0;
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            headerBytes += header.getKey().length();
+            for (String value : header.getValue()) {
+                headerBytes += value.length();
+            }
+        }
+        return body.length + 2 * headerBytes + 128;
+    }
+
+    /**
+     * The same body, fresh again after a 304 (which may carry updated headers)
+     */
+    CachedResponse revalidated(HttpHeaders notModifiedHeaders, long freshForMillis) {
+        HttpHeaders merged = new HttpHeaders();
+        merged.putAll(headers);
+        for (String name : List.of(HttpHeaders.CACHE_CONTROL, HttpHeaders.ETAG, HttpHeaders.EXPIRES,
+                HttpHeaders.LAST_MODIFIED, HttpHeaders.VARY)) {
+            List<String> values = notModifiedHeaders.get(name);
+            if (values != null) {
+                merged.put(name, values);
+            }
+        }
+        long now = System.currentTimeMillis();
+        String currentEtag = merged.getETag() != null ? merged.getETag() : etag;
+        return new CachedResponse(HttpHeaders.readOnlyHttpHeaders(merged), body, currentEtag, varyValues,
+                now, now + freshForMillis);
+    }
+}
@@ -1,44 +1,123 @@
 package no.kristiania.pg3402.gateway.filter;
 
+import io.micrometer.context.ContextRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.MDC;
 import org.springframework.cloud.gateway.filter.GatewayFilterChain;
 import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
 import org.springframework.core.Ordered;
 import org.springframework.stereotype.Component;
 import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Mono;
 
-import java.util.UUID;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Gives every request a correlation ID (X-Correlation-ID, generated when the
+ * client sent none) and records how long each route's requests take.
+ *
+ * The ID is sent upstream, returned to the client, and put in the Reactor
+ * context; with spring.reactor.context-propagation=auto it is restored into
+ * the logging MDC on whichever thread the request continues.
+ *
+ * Latency is recorded per route as gateway.route.latency with a phase tag:
+ * request (in the gateway before it was sent upstream: rate limiting,
+ * queueing, load balancing), upstream (until the upstream's response
+ * headers) and total (until the response was written). Requests answered
+ * without calling upstream, such as cache hits and shed requests, only have
+ * a total.
+ */
 @Component
 public class CorrelationIdFilter implements GlobalFilter, Ordered {
 
     private static final String CORRELATION_ID_HEADER = "X-Correlation-ID";
 
+    static {
+        // Reactor context -> MDC, under the key the log pattern prints
+        ContextRegistry.getInstance().registerThreadLocalAccessor(CORRELATION_ID_HEADER,
+                () -> MDC.get(CORRELATION_ID_HEADER),
+                id -> MDC.put(CORRELATION_ID_HEADER, id),
+                () -> MDC.remove(CORRELATION_ID_HEADER));
+    }
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, RouteTimers> timers = new ConcurrentHashMap<>();
+
+    public CorrelationIdFilter(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
     @Override
     public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        long start = System.nanoTime();
         String correlationId = exchange.getRequest().getHeaders().getFirst(CORRELATION_ID_HEADER);
 
+        ServerWebExchange routedExchange = exchange;
         if (correlationId == null || correlationId.isEmpty()) {
-            correlationId = UUID.randomUUID().toString();
+            String generatedId = RequestIdGenerator.next();
+            correlationId = generatedId;
+            // Only a generated ID needs adding to the downstream request
+            routedExchange = exchange.mutate()
+                    .request(r -> r.header(CORRELATION_ID_HEADER, generatedId))
+                    .build();
         }
 
         final String finalCorrelationId = correlationId;
+        final ServerWebExchange finalExchange = routedExchange;
 
         // Add correlation ID to response headers
         exchange.getResponse().getHeaders().add(CORRELATION_ID_HEADER, finalCorrelationId);
 
-        // Add correlation ID to all downstream requests
-        ServerWebExchange mutatedExchange = exchange.mutate()
-                .request(r -> r.header(CORRELATION_ID_HEADER, finalCorrelationId))
-                .build();
-
-        // Set in MDC for logging
-        return chain.filter(mutatedExchange)
+        return chain.filter(finalExchange)
+                .doFinally(signal -> record(finalExchange, start))
                 .contextWrite(ctx -> ctx.put(CORRELATION_ID_HEADER, finalCorrelationId));
     }
 
+    private void record(ServerWebExchange exchange, long start) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        if (route == null) {
+            return;
+        }
+        long end = System.nanoTime();
+        RouteTimers routeTimers = timers.computeIfAbsent(route.getId(), this::routeTimers);
+        routeTimers.total().record(end - start, TimeUnit.NANOSECONDS);
+
+        Long upstreamStart = exchange.getAttribute(RequestTiming.UPSTREAM_START_ATTR);
+        Long upstreamEnd = exchange.getAttribute(RequestTiming.UPSTREAM_END_ATTR);
+        if (upstreamStart != null) {
+            routeTimers.request().record(upstreamStart - start, TimeUnit.NANOSECONDS);
+            if (upstreamEnd != null) {
+                routeTimers.upstream().record(upstreamEnd - upstreamStart, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private RouteTimers routeTimers(String routeId) {
+        return new RouteTimers(timer(routeId, "request"), timer(routeId, "upstream"), timer(routeId, "total"));
+    }
+
+    private Timer timer(String routeId, String phase) {
+        return Timer.builder("gateway.route.latency")
+                .description("Time spent on requests per route and phase")
+                .tag("route", routeId)
+                .tag("phase", phase)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofSeconds(30))
+                .register(meterRegistry);
+    }
+
     @Override
     public int getOrder() {
         return Ordered.HIGHEST_PRECEDENCE;
     }
+
+    private record RouteTimers(Timer request, Timer upstream, Timer total) {
+    }
 }
@@ -0,0 +1,30 @@
+package no.kristiania.pg3402.gateway.filter;
+
+/**
+ * Caps hedged attempts to a fraction of requests: every request deposits
+ * ratio tokens, every hedge withdraws one. The balance is capped so a quiet
+ * period cannot bank a burst of hedges.
+ */
+class HedgeBudget {
+
+    private final double ratio;
+    private final double maxTokens;
+    private double tokens;
+
+    HedgeBudget(double ratio, double maxTokens) {
+        this.ratio = ratio;
+        this.maxTokens = maxTokens;
+    }
+
+    synchronized void deposit() {
+        tokens = Math.min(maxTokens, tokens + ratio);
+    }
+
+    synchronized boolean tryWithdraw() {
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+}
@@ -0,0 +1,295 @@
+package no.kristiania.pg3402.gateway.filter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import no.kristiania.pg3402.gateway.loadbalancer.InstanceLoadTracker;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.CompletionContext;
+import org.springframework.cloud.client.loadbalancer.DefaultRequest;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerLifecycle;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerLifecycleValidator;
+import org.springframework.cloud.client.loadbalancer.RequestData;
+import org.springframework.cloud.client.loadbalancer.RequestDataContext;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.client.loadbalancer.ResponseData;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
+import org.springframework.cloud.gateway.support.NotFoundException;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.cloud.loadbalancer.core.ReactorServiceInstanceLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.support.LoadBalancerClientFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hedged GETs for catalog-service (opt-in with gateway.hedging.enabled).
+ *
+ * The first attempt goes to the instance the load balancer picks. If it has not
+ * answered within the recent latency percentile (clamped to min/max delay), a
+ * second attempt goes to the best-scored other instance; whichever answers
+ * first is returned and the other is cancelled. A budget keeps hedges to a
+ * fraction of requests, so a slow catalog cannot double its own load.
+ *
+ * Because two attempts race, this filter proxies the request itself (buffering
+ * the response) instead of passing it on to the load balancer and routing
+ * filters. Both attempts are reported to the load balancer lifecycle, so
+ * latency scores and passive health checks see them like any other request.
+ * Request headers go through the same HttpHeadersFilter chain as routed
+ * requests (forwarded headers, hop-by-hop removal). The attempts use this
+ * filter's own WebClient, not the per-route connection pools of
+ * PerRouteNettyRoutingFilter, so they are not counted against the catalog
+ * route's pool limits.
+ */
+@Component
+public class HedgingGatewayFilter implements GatewayFilter {
+
+    private static final String SERVICE_ID = "catalog-service";
+    private static final int MIN_SAMPLES = 100;
+    private static final Set<String> HOP_BY_HOP_HEADERS = Set.of(
+            "connection", "keep-alive", "proxy-authenticate", "proxy-authorization",
+            "te", "trailer", "transfer-encoding", "upgrade", "content-length");
+
+    private final LoadBalancerClientFactory clientFactory;
+    private final WebClient webClient;
+    private final ObjectProvider<List<HttpHeadersFilter>> headersFilters;
+    private final boolean enabled;
+    private final Duration minDelay;
+    private final Duration maxDelay;
+    private final Duration timeout;
+    private final LatencyPercentile latencies;
+    private final HedgeBudget budget;
+    private final Counter requests;
+    private final Counter hedgesSent;
+    private final Counter hedgesWon;
+    private final Counter budgetExhausted;
+
+    public HedgingGatewayFilter(LoadBalancerClientFactory clientFactory,
+                                WebClient.Builder webClientBuilder,
+                                ObjectProvider<List<HttpHeadersFilter>> headersFilters,
+                                MeterRegistry meterRegistry,
+                                @Value("${gateway.hedging.enabled:false}") boolean enabled,
+                                @Value("${gateway.hedging.percentile:0.95}") double percentile,
+                                @Value("${gateway.hedging.min-delay:5ms}") Duration minDelay,
+                                @Value("${gateway.hedging.max-delay:1s}") Duration maxDelay,
+                                @Value("${gateway.hedging.budget-ratio:0.1}") double budgetRatio,
+                                @Value("${gateway.hedging.timeout:10s}") Duration timeout,
+                                @Value("${gateway.hedging.max-body-size:4MB}") DataSize maxBodySize) {
+        this.clientFactory = clientFactory;
+        this.webClient = webClientBuilder.clone()
+                .codecs(codecs -> codecs.defaultCodecs().maxInMemorySize((int) maxBodySize.toBytes()))
+                .build();
+        this.headersFilters = headersFilters;
+        this.enabled = enabled;
+        this.minDelay = minDelay;
+        this.maxDelay = maxDelay;
+        this.timeout = timeout;
+        this.latencies = new LatencyPercentile(percentile, 1024);
+        this.budget = new HedgeBudget(budgetRatio, 20);
+
+        this.requests = Counter.builder("gateway.hedge.requests")
+                .description("Catalog GETs eligible for hedging")
+                .register(meterRegistry);
+        this.hedgesSent = Counter.builder("gateway.hedge.sent")
+                .description("Hedged second attempts sent")
+                .register(meterRegistry);
+        this.hedgesWon = Counter.builder("gateway.hedge.won")
+                .description("Requests answered by the hedged attempt")
+                .register(meterRegistry);
+        this.budgetExhausted = Counter.builder("gateway.hedge.budget.exhausted")
+                .description("Hedges skipped because the hedge budget was spent")
+                .register(meterRegistry);
+        Gauge.builder("gateway.hedge.delay", this, filter -> filter.hedgeDelay().toMillis())
+                .description("Current delay before a hedge is sent, in milliseconds")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        if (!enabled || request.getMethod() != HttpMethod.GET) {
+            return chain.filter(exchange);
+        }
+        ReactorServiceInstanceLoadBalancer loadBalancer =
+                clientFactory.getInstance(SERVICE_ID, ReactorServiceInstanceLoadBalancer.class);
+        if (loadBalancer == null) {
+            return chain.filter(exchange);
+        }
+        Set<LoadBalancerLifecycle> lifecycles = LoadBalancerLifecycleValidator.getSupportedLifecycleProcessors(
+                clientFactory.getInstances(SERVICE_ID, LoadBalancerLifecycle.class),
+                RequestDataContext.class, ResponseData.class, ServiceInstance.class);
+
+        requests.increment();
+        budget.deposit();
+        Duration delay = hedgeDelay();
+        HttpHeaders forwardedHeaders = forwardedHeaders(exchange);
+
+        RequestTiming.upstreamStarted(exchange);
+        return loadBalancer.choose(lbRequest(request))
+                .flatMap(first -> {
+                    if (!first.hasServer()) {
+                        return Mono.error(NotFoundException.create(true, "Unable to find instance for " + SERVICE_ID));
+                    }
+                    AtomicReference<Throwable> primaryError = new AtomicReference<>();
+                    Sinks.One<Boolean> primaryFailed = Sinks.one();
+                    Mono<Attempt> primary = attempt(request, forwardedHeaders, first.getServer(), lifecycles, false)
+                            .doOnError(e -> {
+                                primaryError.set(e);
+                                primaryFailed.tryEmitValue(true);
+                            });
+                    Mono<Attempt> hedge = Mono.delay(delay)
+                            // No hedge once the primary has failed; its error is the answer
+                            .takeUntilOther(primaryFailed.asMono())
+                            .flatMap(tick -> hedgeTarget(first.getServer()))
+                            .flatMap(instance -> {
+                                hedgesSent.increment();
+                                return attempt(request, forwardedHeaders, instance, lifecycles, true);
+                            });
+                    // Cancels the loser. If the primary fails, a hedge already sent can still answer;
+                    // otherwise the primary's own error is passed on, not firstWithValue's composite
+                    return Mono.firstWithValue(primary, hedge)
+                            .onErrorMap(e -> primaryError.get() != null ? primaryError.get() : e);
+                })
+                .flatMap(winner -> {
+                    if (winner.hedge()) {
+                        hedgesWon.increment();
+                    }
+                    return write(exchange, winner);
+                });
+    }
+
+    /**
+     * The headers to send upstream, filtered as NettyRoutingFilter filters them
+     */
+    private HttpHeaders forwardedHeaders(ServerWebExchange exchange) {
+        HttpHeaders filtered = HttpHeadersFilter.filterRequest(headersFilters.getIfAvailable(List::of), exchange);
+        HttpHeaders headers = new HttpHeaders();
+        filtered.forEach((name, values) -> {
+            if (!HOP_BY_HOP_HEADERS.contains(name.toLowerCase())) {
+                headers.put(name, values);
+            }
+        });
+        if (!Boolean.TRUE.equals(exchange.getAttribute(ServerWebExchangeUtils.PRESERVE_HOST_HEADER_ATTRIBUTE))) {
+            headers.remove(HttpHeaders.HOST);
+        }
+        return headers;
+    }
+
+    private Duration hedgeDelay() {
+        long nanos = latencies.nanos(MIN_SAMPLES);
+        if (nanos < 0) {
+            // Not enough samples to know what slow means yet
+            return maxDelay;
+        }
+        Duration delay = Duration.ofNanos(nanos);
+        if (delay.compareTo(minDelay) < 0) {
+            return minDelay;
+        }
+        return delay.compareTo(maxDelay) > 0 ? maxDelay : delay;
+    }
+
+    /**
+     * The best-scored healthy instance other than the one already tried, if the budget allows a hedge
+     */
+    private Mono<ServiceInstance> hedgeTarget(ServiceInstance tried) {
+        if (!budget.tryWithdraw()) {
+            budgetExhausted.increment();
+            return Mono.empty();
+        }
+        ServiceInstanceListSupplier supplier = clientFactory.getInstance(SERVICE_ID, ServiceInstanceListSupplier.class);
+        InstanceLoadTracker tracker = clientFactory.getInstance(SERVICE_ID, InstanceLoadTracker.class);
+        if (supplier == null || tracker == null) {
+            return Mono.empty();
+        }
+        String triedKey = InstanceLoadTracker.key(tried);
+        return supplier.get().next()
+                .flatMap(instances -> Mono.justOrEmpty(instances.stream()
+                        .filter(instance -> !InstanceLoadTracker.key(instance).equals(triedKey))
+                        .min(Comparator.comparingDouble(tracker::score))));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Mono<Attempt> attempt(ServerHttpRequest request,
+                                  HttpHeaders forwardedHeaders,
+                                  ServiceInstance instance,
+                                  Set<LoadBalancerLifecycle> lifecycles,
+                                  boolean hedge) {
+        DefaultRequest<RequestDataContext> lbRequest = lbRequest(request);
+        Response<ServiceInstance> lbResponse = new DefaultResponse(instance);
+        URI uri = UriComponentsBuilder.fromUri(request.getURI())
+                .scheme(instance.isSecure() ? "https" : "http")
+                .host(instance.getHost())
+                .port(instance.getPort())
+                .build(true)
+                .toUri();
+
+        return Mono.defer(() -> {
+                    long start = System.nanoTime();
+                    lifecycles.forEach(lifecycle -> lifecycle.onStartRequest(lbRequest, lbResponse));
+                    return webClient.get()
+                            .uri(uri)
+                            .headers(headers -> headers.putAll(forwardedHeaders))
+                            .exchangeToMono(response -> response.bodyToMono(byte[].class)
+                                    .defaultIfEmpty(new byte[0])
+                                    .map(body -> new Attempt(response.statusCode(),
+                                            response.headers().asHttpHeaders(), body, hedge)))
+                            .timeout(timeout)
+                            .doOnSuccess(attempt -> {
+                                latencies.record(System.nanoTime() - start);
+                                ResponseData responseData = new ResponseData(attempt.status(), attempt.headers(),
+                                        new LinkedMultiValueMap<>(), lbRequest.getContext().getClientRequest());
+                                lifecycles.forEach(lifecycle -> lifecycle.onComplete(new CompletionContext<>(
+                                        CompletionContext.Status.SUCCESS, lbRequest, lbResponse, responseData)));
+                            })
+                            .doOnError(e -> lifecycles.forEach(lifecycle -> lifecycle.onComplete(
+                                    new CompletionContext<>(CompletionContext.Status.FAILED, e, lbRequest, lbResponse))))
+                            .doOnCancel(() -> lifecycles.forEach(lifecycle -> lifecycle.onComplete(
+                                    new CompletionContext<>(CompletionContext.Status.DISCARD, lbRequest, lbResponse))));
+                });
+    }
+
+    private static DefaultRequest<RequestDataContext> lbRequest(ServerHttpRequest request) {
+        return new DefaultRequest<>(new RequestDataContext(new RequestData(request), "default"));
+    }
+
+    private Mono<Void> write(ServerWebExchange exchange, Attempt attempt) {
+        RequestTiming.upstreamFinished(exchange);
+        ServerWebExchangeUtils.setAlreadyRouted(exchange);
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(attempt.status());
+        HttpHeaders headers = response.getHeaders();
+        attempt.headers().forEach((name, values) -> {
+            if (!HOP_BY_HOP_HEADERS.contains(name.toLowerCase())) {
+                headers.put(name, values);
+            }
+        });
+        headers.setContentLength(attempt.body().length);
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(attempt.body())));
+    }
+
+    private record Attempt(HttpStatusCode status, HttpHeaders headers, byte[] body, boolean hedge) {
+    }
+}
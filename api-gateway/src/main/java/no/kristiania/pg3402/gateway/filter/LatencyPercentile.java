@@ -0,0 +1,47 @@
+package no.kristiania.pg3402.gateway.filter;
+
+import java.util.Arrays;
+
+/**
+ * A percentile over the most recent latency samples, recomputed at most once
+ * per refresh interval so reading it stays cheap on the request path.
+ */
+class LatencyPercentile {
+
+    private static final long REFRESH_NANOS = 1_000_000_000L;
+
+    private final double percentile;
+    private final long[] samples;
+    private int next;
+    private int count;
+    private long cachedNanos = -1;
+    private long cachedAt;
+
+    LatencyPercentile(double percentile, int window) {
+        this.percentile = percentile;
+        this.samples = new long[window];
+    }
+
+    synchronized void record(long nanos) {
+        samples[next] = nanos;
+        next = (next + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+    }
+
+    /**
+     * The percentile in nanoseconds, or -1 until minSamples have been recorded
+     */
+    synchronized long nanos(int minSamples) {
+        if (count < minSamples) {
+            return -1;
+        }
+        long now = System.nanoTime();
+        if (cachedNanos < 0 || now - cachedAt >= REFRESH_NANOS) {
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            cachedNanos = sorted[Math.min(count - 1, (int) Math.ceil(percentile * count) - 1)];
+            cachedAt = now;
+        }
+        return cachedNanos;
+    }
+}
@@ -0,0 +1,221 @@
+package no.kristiania.pg3402.gateway.filter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.io.ByteArrayOutputStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collapses concurrent identical GETs into one upstream call (single-flight).
+ *
+ * Requests are identical when they share the route, path, query and the
+ * values of the configured vary headers. The first one (the leader) goes
+ * upstream as usual while its response is copied on the way through; requests
+ * arriving before it completes wait and get that copy. Nothing is kept once
+ * the leader finishes, so this only removes duplicated in-flight work and is
+ * independent of the response cache. Followers go upstream themselves when
+ * the leader fails, streams, sets cookies, has a body over max-shared-body, or
+ * answers with anything but 200 OK. Conditional and range requests are never
+ * coalesced: their 304 or 206 answers only make sense to the client that sent
+ * the validators.
+ */
+@Component
+public class RequestCoalescingFilter implements GatewayFilter {
+
+    private static final List<String> CONDITIONAL_HEADERS = List.of(
+            HttpHeaders.IF_NONE_MATCH, HttpHeaders.IF_MODIFIED_SINCE, HttpHeaders.IF_MATCH,
+            HttpHeaders.IF_UNMODIFIED_SINCE, HttpHeaders.IF_RANGE, HttpHeaders.RANGE);
+
+    private static final Set<String> UNSHARED_HEADERS = Set.of(
+            "connection", "keep-alive", "proxy-authenticate", "proxy-authorization", "te", "trailer",
+            "transfer-encoding", "upgrade", "content-length", "x-correlation-id");
+
+    private final boolean enabled;
+    private final List<String> varyHeaders;
+    private final long maxSharedBytes;
+    private final Duration maxWait;
+    private final Map<String, Sinks.One<SharedResponse>> inFlight = new ConcurrentHashMap<>();
+    private final Counter requests;
+    private final Counter collapsed;
+
+    public RequestCoalescingFilter(MeterRegistry meterRegistry,
+                                   @Value("${gateway.coalescing.enabled:true}") boolean enabled,
+                                   @Value("${gateway.coalescing.vary-headers:Accept,Accept-Encoding,Accept-Language}") List<String> varyHeaders,
+                                   @Value("${gateway.coalescing.max-shared-body:1MB}") DataSize maxSharedBody,
+                                   @Value("${gateway.coalescing.max-wait:10s}") Duration maxWait) {
+        this.enabled = enabled;
+        this.varyHeaders = List.copyOf(varyHeaders);
+        this.maxSharedBytes = maxSharedBody.toBytes();
+        this.maxWait = maxWait;
+
+        this.requests = Counter.builder("gateway.coalescing.requests")
+                .description("GETs eligible for request coalescing")
+                .register(meterRegistry);
+        this.collapsed = Counter.builder("gateway.coalescing.collapsed")
+                .description("GETs answered with the response of an identical in-flight request")
+                .register(meterRegistry);
+        Gauge.builder("gateway.coalescing.inflight", inFlight, Map::size)
+                .description("Distinct upstream GETs currently shared")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        if (!enabled || request.getMethod() != HttpMethod.GET
+                || request.getHeaders().containsKey(HttpHeaders.AUTHORIZATION)
+                || request.getHeaders().containsKey(HttpHeaders.COOKIE)
+                || CONDITIONAL_HEADERS.stream().anyMatch(request.getHeaders()::containsKey)) {
+            return chain.filter(exchange);
+        }
+        requests.increment();
+        String key = key(exchange);
+
+        Sinks.One<SharedResponse> flight = Sinks.one();
+        Sinks.One<SharedResponse> existing = inFlight.putIfAbsent(key, flight);
+        if (existing == null) {
+            SharingResponse response = new SharingResponse(exchange.getResponse(), flight);
+            return chain.filter(exchange.mutate().response(response).build())
+                    .doFinally(signal -> {
+                        inFlight.remove(key, flight);
+                        // No-op if the response was already shared
+                        flight.tryEmitEmpty();
+                    });
+        }
+
+        return existing.asMono()
+                .timeout(maxWait)
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .onErrorReturn(Optional.empty())
+                .flatMap(shared -> {
+                    if (shared.isEmpty()) {
+                        return chain.filter(exchange);
+                    }
+                    collapsed.increment();
+                    return write(exchange.getResponse(), shared.get());
+                });
+    }
+
+    private Mono<Void> write(ServerHttpResponse response, SharedResponse shared) {
+        response.setStatusCode(shared.status());
+        HttpHeaders headers = response.getHeaders();
+        shared.headers().forEach((name, values) -> {
+            if (!name.toLowerCase(Locale.ROOT).startsWith("access-control-")) {
+                headers.put(name, values);
+            }
+        });
+        headers.setContentLength(shared.body().length);
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(shared.body())));
+    }
+
+    private String key(ServerWebExchange exchange) {
+        ServerHttpRequest request = exchange.getRequest();
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        StringBuilder key = new StringBuilder(route != null ? route.getId() : "")
+                .append(' ').append(request.getURI().getRawPath());
+        if (request.getURI().getRawQuery() != null) {
+            key.append('?').append(request.getURI().getRawQuery());
+        }
+        for (String header : varyHeaders) {
+            key.append('\n').append(header).append('=').append(request.getHeaders().get(header));
+        }
+        return key.toString();
+    }
+
+    private record SharedResponse(HttpStatusCode status, HttpHeaders headers, byte[] body) {
+    }
+
+    /**
+     * Lets the leader's body through untouched while copying it (up to the limit) for followers
+     */
+    private class SharingResponse extends ServerHttpResponseDecorator {
+
+        private final Sinks.One<SharedResponse> flight;
+
+        SharingResponse(ServerHttpResponse delegate, Sinks.One<SharedResponse> flight) {
+            super(delegate);
+            this.flight = flight;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            HttpHeaders headers = getHeaders();
+            HttpStatusCode status = getStatusCode();
+            if (status == null || status.value() != HttpStatus.OK.value()
+                    || headers.containsKey(HttpHeaders.SET_COOKIE)
+                    || headers.getContentLength() > maxSharedBytes) {
+                flight.tryEmitEmpty();
+                return super.writeWith(body);
+            }
+            HttpHeaders shared = new HttpHeaders();
+            headers.forEach((name, values) -> {
+                if (!UNSHARED_HEADERS.contains(name.toLowerCase(Locale.ROOT))) {
+                    shared.put(name, values);
+                }
+            });
+
+            ByteArrayOutputStream copy = new ByteArrayOutputStream();
+            boolean[] overflow = {false};
+            Flux<? extends DataBuffer> teed = Flux.from(body)
+                    .doOnNext(buffer -> {
+                        if (overflow[0]) {
+                            return;
+                        }
+                        int readable = buffer.readableByteCount();
+                        if (copy.size() + readable > maxSharedBytes) {
+                            overflow[0] = true;
+                            flight.tryEmitEmpty();
+                            return;
+                        }
+                        int position = buffer.readPosition();
+                        byte[] chunk = new byte[readable];
+                        buffer.read(chunk);
+                        buffer.readPosition(position);
+                        copy.writeBytes(chunk);
+                    })
+                    .doOnComplete(() -> {
+                        if (!overflow[0]) {
+                            flight.tryEmitValue(new SharedResponse(status,
+                                    HttpHeaders.readOnlyHttpHeaders(shared), copy.toByteArray()));
+                        }
+                    });
+            return super.writeWith(teed);
+        }
+
+        @Override
+        public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+            // Streaming responses are not shared
+            flight.tryEmitEmpty();
+            return super.writeAndFlushWith(body);
+        }
+    }
+}
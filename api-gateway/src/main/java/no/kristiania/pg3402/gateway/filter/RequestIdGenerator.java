@@ -0,0 +1,30 @@
+package no.kristiania.pg3402.gateway.filter;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Correlation IDs for requests that arrive without one: UUIDv7 strings
+ * (48-bit millisecond timestamp, then random bits), so they sort by creation
+ * time and still look like the UUIDs downstream services already log.
+ *
+ * Unlike UUID.randomUUID() this never touches SecureRandom; the random bits
+ * come from ThreadLocalRandom, whose state lives on the calling thread, so
+ * event loop threads neither block nor contend. The IDs are unique, not
+ * unguessable, and must not be used as secrets.
+ */
+final class RequestIdGenerator {
+
+    private RequestIdGenerator() {
+    }
+
+    static String next() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long msb = (System.currentTimeMillis() << 16)
+                | 0x7000L                                   // version 7
+                | (random.nextInt() & 0x0FFF);
+        long lsb = (random.nextLong() & 0x3FFF_FFFF_FFFF_FFFFL)
+                | 0x8000_0000_0000_0000L;                   // IETF variant
+        return new UUID(msb, lsb).toString();
+    }
+}
@@ -0,0 +1,28 @@
+package no.kristiania.pg3402.gateway.filter;
+
+import org.springframework.web.server.ServerWebExchange;
+
+/**
+ * Marks when a request was sent upstream and when the upstream answered, for
+ * the latency histograms recorded by {@link CorrelationIdFilter}. Called by
+ * whatever actually routes the request (the routing filter, or hedging).
+ */
+public final class RequestTiming {
+
+    static final String UPSTREAM_START_ATTR = RequestTiming.class.getName() + ".upstreamStart";
+    static final String UPSTREAM_END_ATTR = RequestTiming.class.getName() + ".upstreamEnd";
+
+    private RequestTiming() {
+    }
+
+    public static void upstreamStarted(ServerWebExchange exchange) {
+        exchange.getAttributes().put(UPSTREAM_START_ATTR, System.nanoTime());
+    }
+
+    /**
+     * Response headers (or, for buffered calls, the whole response) received
+     */
+    public static void upstreamFinished(ServerWebExchange exchange) {
+        exchange.getAttributes().put(UPSTREAM_END_ATTR, System.nanoTime());
+    }
+}
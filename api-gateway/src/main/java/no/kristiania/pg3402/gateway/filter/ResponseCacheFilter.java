@@ -0,0 +1,381 @@
+package no.kristiania.pg3402.gateway.filter;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.io.ByteArrayOutputStream;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Caches full catalog GET responses (status 200: headers and body) at the edge.
+ *
+ * Upstream Cache-Control is honoured: no-store and private responses are not
+ * kept, s-maxage/max-age set the freshness (capped at max-ttl), no-cache
+ * entries are always revalidated, and default-ttl applies otherwise. Stale
+ * entries with an ETag are revalidated with If-None-Match, so an unchanged
+ * resource costs the catalog a bodiless 304. Concurrent misses for the same
+ * URL wait for the one request that is already fetching it instead of all
+ * going upstream. A successful write through the route purges every entry of
+ * the route: a write can change resources under other paths (a new card shows
+ * up in its set's card list, an import touches everything), and writes are
+ * rare next to reads. Other replicas' entries expire with their TTL.
+ *
+ * When the upstream call fails (circuit breaker open, timeout, connection
+ * error), a stored entry within stale-retention is served instead of the
+ * error, marked X-Cache: STALE.
+ */
+@Component
+@Slf4j
+public class ResponseCacheFilter implements GatewayFilter {
+
+    private static final String X_CACHE = "X-Cache";
+    private static final Set<String> UNSTORED_HEADERS = Set.of(
+            "connection", "keep-alive", "proxy-authenticate", "proxy-authorization", "te", "trailer",
+            "transfer-encoding", "upgrade", "content-length", "set-cookie", "age", "x-cache", "x-correlation-id");
+
+    enum Result { HIT, COALESCED, REVALIDATED, MISS, BYPASS, STALE }
+
+    private final boolean enabled;
+    private final boolean serveStaleOnError;
+    private final long defaultTtlMillis;
+    private final long maxTtlMillis;
+    private final long maxEntryBytes;
+    private final Duration coalesceTimeout;
+    private final Cache<String, CachedResponse> cache;
+    private final Map<String, Sinks.Empty<Void>> inFlight = new ConcurrentHashMap<>();
+    private final Map<Result, Counter> results = new EnumMap<>(Result.class);
+
+    public ResponseCacheFilter(MeterRegistry meterRegistry,
+                               @Value("${gateway.response-cache.enabled:true}") boolean enabled,
+                               @Value("${gateway.response-cache.default-ttl:60s}") Duration defaultTtl,
+                               @Value("${gateway.response-cache.max-ttl:10m}") Duration maxTtl,
+                               @Value("${gateway.response-cache.stale-retention:30m}") Duration staleRetention,
+                               @Value("${gateway.response-cache.max-size:64MB}") DataSize maxSize,
+                               @Value("${gateway.response-cache.max-entry-size:2MB}") DataSize maxEntrySize,
+                               @Value("${gateway.response-cache.coalesce-timeout:5s}") Duration coalesceTimeout,
+                               @Value("${gateway.response-cache.serve-stale-on-error:true}") boolean serveStaleOnError) {
+        this.enabled = enabled;
+        this.serveStaleOnError = serveStaleOnError;
+        this.defaultTtlMillis = defaultTtl.toMillis();
+        this.maxTtlMillis = maxTtl.toMillis();
+        this.maxEntryBytes = maxEntrySize.toBytes();
+        this.coalesceTimeout = coalesceTimeout;
+        // Entries outlive their freshness by stale-retention so they can still be revalidated
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxSize.toBytes())
+                .weigher((String key, CachedResponse response) -> response.weight())
+                .expireAfterWrite(maxTtl.plus(staleRetention))
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "gateway-response-cache");
+        Gauge.builder("gateway.response.cache.bytes", cache,
+                        c -> c.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L))
+                .description("Approximate size of cached responses")
+                .register(meterRegistry);
+        for (Result result : Result.values()) {
+            results.put(result, Counter.builder("gateway.response.cache.requests")
+                    .description("Catalog requests by response cache outcome")
+                    .tag("result", result.name().toLowerCase(Locale.ROOT))
+                    .register(meterRegistry));
+        }
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        if (!enabled) {
+            return chain.filter(exchange);
+        }
+        if (request.getMethod() != HttpMethod.GET) {
+            return chain.filter(exchange).then(Mono.fromRunnable(() -> purgeAfterWrite(exchange)));
+        }
+        Map<String, String> directives = directives(request.getHeaders().getCacheControl());
+        if (directives.containsKey("no-store") || request.getHeaders().containsKey(HttpHeaders.AUTHORIZATION)) {
+            results.get(Result.BYPASS).increment();
+            exchange.getResponse().getHeaders().set(X_CACHE, Result.BYPASS.name());
+            return chain.filter(exchange);
+        }
+
+        String key = key(request);
+        CachedResponse cached = lookup(key, request);
+        if (cached != null && cached.isFresh() && !directives.containsKey("no-cache")) {
+            return serve(exchange, cached, Result.HIT);
+        }
+
+        Sinks.Empty<Void> fetching = Sinks.empty();
+        Sinks.Empty<Void> existing = inFlight.putIfAbsent(key, fetching);
+        if (existing == null) {
+            return fetch(exchange, chain, key, cached)
+                    .doFinally(signal -> {
+                        inFlight.remove(key, fetching);
+                        fetching.tryEmitEmpty();
+                    });
+        }
+        // Someone is already fetching this URL: wait for it, then serve what it stored
+        return existing.asMono()
+                .timeout(coalesceTimeout)
+                .onErrorResume(TimeoutException.class, e -> Mono.empty())
+                .then(Mono.defer(() -> {
+                    CachedResponse stored = lookup(key, exchange.getRequest());
+                    if (stored != null && stored.isFresh()) {
+                        return serve(exchange, stored, Result.COALESCED);
+                    }
+                    return fetch(exchange, chain, key, stored);
+                }));
+    }
+
+    /**
+     * Drop cached entries whose key starts with the prefix (all entries for an empty prefix)
+     *
+     * @return number of entries removed
+     */
+    public int purge(String prefix) {
+        int[] purged = {0};
+        cache.asMap().keySet().removeIf(key -> {
+            boolean match = key.startsWith(prefix);
+            if (match) {
+                purged[0]++;
+            }
+            return match;
+        });
+        return purged[0];
+    }
+
+    private Mono<Void> fetch(ServerWebExchange exchange, GatewayFilterChain chain, String key, CachedResponse stale) {
+        ServerHttpRequest request = exchange.getRequest();
+        CachedResponse revalidating = null;
+        ServerWebExchange target = exchange;
+        boolean clientConditional = request.getHeaders().containsKey(HttpHeaders.IF_NONE_MATCH)
+                || request.getHeaders().containsKey(HttpHeaders.IF_MODIFIED_SINCE);
+        if (stale != null && stale.etag() != null && !clientConditional) {
+            revalidating = stale;
+            target = exchange.mutate()
+                    .request(r -> r.header(HttpHeaders.IF_NONE_MATCH, stale.etag()))
+                    .build();
+        }
+        CachingResponse response = new CachingResponse(target.getResponse(), key, request, revalidating);
+        return chain.filter(target.mutate().response(response).build())
+                .onErrorResume(e -> {
+                    if (!serveStaleOnError || stale == null || exchange.getResponse().isCommitted()) {
+                        return Mono.error(e);
+                    }
+                    log.debug("Serving stale {} after upstream error: {}", key, e.toString());
+                    return serve(exchange, stale, Result.STALE);
+                });
+    }
+
+    private CachedResponse lookup(String key, ServerHttpRequest request) {
+        CachedResponse cached = cache.getIfPresent(key);
+        return cached != null && cached.matches(request) ? cached : null;
+    }
+
+    private Mono<Void> serve(ServerWebExchange exchange, CachedResponse cached, Result result) {
+        results.get(result).increment();
+        ServerHttpResponse response = exchange.getResponse();
+        HttpHeaders headers = response.getHeaders();
+        headers.set(X_CACHE, result.name());
+        headers.set(HttpHeaders.AGE, String.valueOf(cached.ageSeconds()));
+
+        List<String> ifNoneMatch = exchange.getRequest().getHeaders().getIfNoneMatch();
+        if (cached.etag() != null && (ifNoneMatch.contains(cached.etag()) || ifNoneMatch.contains("*"))) {
+            response.setStatusCode(HttpStatus.NOT_MODIFIED);
+            headers.setETag(cached.etag());
+            List<String> cacheControl = cached.headers().get(HttpHeaders.CACHE_CONTROL);
+            if (cacheControl != null) {
+                headers.put(HttpHeaders.CACHE_CONTROL, cacheControl);
+            }
+            return response.setComplete();
+        }
+        response.setStatusCode(HttpStatus.OK);
+        headers.putAll(cached.headers());
+        headers.setContentLength(cached.body().length);
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(cached.body())));
+    }
+
+    private void purgeAfterWrite(ServerWebExchange exchange) {
+        HttpStatusCode status = exchange.getResponse().getStatusCode();
+        if (status != null && status.is2xxSuccessful()) {
+            // The route's mount point: POST /api/catalog/cards purges everything under /api/catalog
+            String[] segments = exchange.getRequest().getURI().getRawPath().split("/");
+            String prefix = String.join("/", List.of(segments).subList(0, Math.min(segments.length, 3)));
+            int purged = purge(prefix);
+            if (purged > 0) {
+                log.debug("Purged {} cached responses under {} after {}", purged, prefix,
+                        exchange.getRequest().getMethod());
+            }
+        }
+    }
+
+    /**
+     * Freshness lifetime from the response's Cache-Control, or -1 if it must not be stored
+     */
+    private long freshnessMillis(HttpHeaders headers) {
+        Map<String, String> directives = directives(headers.getCacheControl());
+        if (directives.containsKey("no-store") || directives.containsKey("private")) {
+            return -1;
+        }
+        if (directives.containsKey("no-cache")) {
+            return 0;
+        }
+        String maxAge = directives.getOrDefault("s-maxage", directives.get("max-age"));
+        if (maxAge != null) {
+            try {
+                return Math.min(maxTtlMillis, Math.max(0, Long.parseLong(maxAge) * 1000));
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+        return Math.min(maxTtlMillis, defaultTtlMillis);
+    }
+
+    private CachedResponse toCached(HttpHeaders responseHeaders, byte[] body, ServerHttpRequest request, long freshFor) {
+        HttpHeaders stored = new HttpHeaders();
+        responseHeaders.forEach((name, values) -> {
+            String lower = name.toLowerCase(Locale.ROOT);
+            if (!UNSTORED_HEADERS.contains(lower) && !lower.startsWith("access-control-")) {
+                stored.put(name, values);
+            }
+        });
+        Map<String, List<String>> varyValues = new HashMap<>();
+        for (String name : responseHeaders.getVary()) {
+            varyValues.put(name, request.getHeaders().get(name));
+        }
+        long now = System.currentTimeMillis();
+        return new CachedResponse(HttpHeaders.readOnlyHttpHeaders(stored), body, responseHeaders.getETag(),
+                varyValues, now, now + freshFor);
+    }
+
+    private static String key(ServerHttpRequest request) {
+        String query = request.getURI().getRawQuery();
+        return query != null ? request.getURI().getRawPath() + "?" + query : request.getURI().getRawPath();
+    }
+
+    private static Map<String, String> directives(String cacheControl) {
+        Map<String, String> directives = new HashMap<>();
+        if (cacheControl == null) {
+            return directives;
+        }
+        for (String part : cacheControl.split(",")) {
+            String directive = part.trim();
+            if (directive.isEmpty()) {
+                continue;
+            }
+            int eq = directive.indexOf('=');
+            if (eq < 0) {
+                directives.put(directive.toLowerCase(Locale.ROOT), "");
+            } else {
+                directives.put(directive.substring(0, eq).trim().toLowerCase(Locale.ROOT),
+                        directive.substring(eq + 1).trim().replace("\"", ""));
+            }
+        }
+        return directives;
+    }
+
+    /**
+     * Captures a 200 body into the cache, or turns the 304 answering our own
+     * If-None-Match back into the cached 200
+     */
+    private class CachingResponse extends ServerHttpResponseDecorator {
+
+        private final String key;
+        private final ServerHttpRequest request;
+        private final CachedResponse revalidating;
+
+        CachingResponse(ServerHttpResponse delegate, String key, ServerHttpRequest request, CachedResponse revalidating) {
+            super(delegate);
+            this.key = key;
+            this.request = request;
+            this.revalidating = revalidating;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            HttpStatusCode status = getStatusCode();
+            HttpHeaders headers = getHeaders();
+
+            if (revalidating != null && status != null && status.value() == HttpStatus.NOT_MODIFIED.value()) {
+                long freshFor = freshnessMillis(headers);
+                CachedResponse refreshed = revalidating.revalidated(headers, Math.max(0, freshFor));
+                cache.put(key, refreshed);
+                results.get(Result.REVALIDATED).increment();
+                setStatusCode(HttpStatus.OK);
+                headers.putAll(refreshed.headers());
+                headers.set(X_CACHE, Result.REVALIDATED.name());
+                headers.setContentLength(refreshed.body().length);
+                return Flux.from(body).doOnNext(DataBufferUtils::release)
+                        .then(super.writeWith(Mono.just(bufferFactory().wrap(refreshed.body()))));
+            }
+
+            results.get(Result.MISS).increment();
+            headers.set(X_CACHE, Result.MISS.name());
+            long freshFor = status != null && status.value() == HttpStatus.OK.value()
+                    && !headers.containsKey(HttpHeaders.SET_COOKIE) && !headers.getVary().contains("*")
+                    ? freshnessMillis(headers) : -1;
+            if (freshFor < 0 || (freshFor == 0 && headers.getETag() == null)
+                    || headers.getContentLength() > maxEntryBytes) {
+                return super.writeWith(body);
+            }
+
+            // Copy the body as it streams through rather than buffering it first, and stop
+            // copying once it outgrows max-entry-size (chunked responses have no Content-Length)
+            ByteArrayOutputStream copy = new ByteArrayOutputStream();
+            boolean[] overflow = {false};
+            Flux<? extends DataBuffer> teed = Flux.from(body)
+                    .doOnNext(buffer -> {
+                        if (overflow[0]) {
+                            return;
+                        }
+                        int readable = buffer.readableByteCount();
+                        if (copy.size() + readable > maxEntryBytes) {
+                            overflow[0] = true;
+                            copy.reset();
+                            return;
+                        }
+                        int position = buffer.readPosition();
+                        byte[] chunk = new byte[readable];
+                        buffer.read(chunk);
+                        buffer.readPosition(position);
+                        copy.writeBytes(chunk);
+                    })
+                    .doOnComplete(() -> {
+                        if (!overflow[0]) {
+                            cache.put(key, toCached(headers, copy.toByteArray(), request, freshFor));
+                        }
+                    });
+            return super.writeWith(teed);
+        }
+    }
+}
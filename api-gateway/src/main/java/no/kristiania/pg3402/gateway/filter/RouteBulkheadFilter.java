@@ -0,0 +1,64 @@
+package no.kristiania.pg3402.gateway.filter;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * Semaphore bulkhead per route: caps the requests a route can have in flight,
+ * so one slow or dead service cannot take every gateway connection.
+ *
+ * Bulkheads come from the Resilience4j registry, named after the route. A
+ * route uses resilience4j.bulkhead.configs.[route id] when defined and the
+ * default config otherwise. Requests that find the bulkhead full (after
+ * maxWaitDuration) get 503 with Retry-After.
+ */
+@Component
+public class RouteBulkheadFilter implements GatewayFilter {
+
+    private final BulkheadRegistry bulkheadRegistry;
+    private final String retryAfter;
+
+    public RouteBulkheadFilter(BulkheadRegistry bulkheadRegistry,
+                               @Value("${gateway.resilience.retry-after:5s}") Duration retryAfter) {
+        this.bulkheadRegistry = bulkheadRegistry;
+        this.retryAfter = String.valueOf(Math.max(1, retryAfter.toSeconds()));
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        if (route == null) {
+            return chain.filter(exchange);
+        }
+        return chain.filter(exchange)
+                .transformDeferred(BulkheadOperator.of(bulkhead(route.getId())))
+                .onErrorResume(BulkheadFullException.class, e -> {
+                    ServerHttpResponse response = exchange.getResponse();
+                    response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+                    response.getHeaders().set(HttpHeaders.RETRY_AFTER, retryAfter);
+                    return response.setComplete();
+                });
+    }
+
+    private Bulkhead bulkhead(String routeId) {
+        return bulkheadRegistry.find(routeId)
+                .orElseGet(() -> bulkheadRegistry.getConfiguration(routeId)
+                        .map(config -> bulkheadRegistry.bulkhead(routeId, config))
+                        .orElseGet(() -> bulkheadRegistry.bulkhead(routeId)));
+    }
+}
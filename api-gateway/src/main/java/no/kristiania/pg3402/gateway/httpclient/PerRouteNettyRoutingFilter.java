@@ -0,0 +1,61 @@
+package no.kristiania.pg3402.gateway.httpclient;
+
+import io.netty.channel.ChannelOption;
+import no.kristiania.pg3402.gateway.filter.RequestTiming;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.NettyRoutingFilter;
+import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.RouteMetadataUtils;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+
+import java.net.URI;
+import java.util.List;
+
+/**
+ * The gateway's routing filter, sending each route's requests through that
+ * route's own connection pool (see {@link RouteConnectionPools}). Request
+ * handling, header filters and response timeouts are unchanged; the
+ * connect-timeout route metadata is still honoured. Marks the upstream
+ * call's start and end for the route latency histograms.
+ */
+public class PerRouteNettyRoutingFilter extends NettyRoutingFilter {
+
+    private final RouteConnectionPools pools;
+
+    public PerRouteNettyRoutingFilter(HttpClient httpClient,
+                                      ObjectProvider<List<HttpHeadersFilter>> headersFilters,
+                                      HttpClientProperties properties,
+                                      RouteConnectionPools pools) {
+        super(httpClient, headersFilters, properties);
+        this.pools = pools;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        URI requestUrl = exchange.getRequiredAttribute(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR);
+        String scheme = requestUrl.getScheme();
+        if (ServerWebExchangeUtils.isAlreadyRouted(exchange) || (!"http".equals(scheme) && !"https".equals(scheme))) {
+            return super.filter(exchange, chain);
+        }
+        RequestTiming.upstreamStarted(exchange);
+        // The rest of the chain is subscribed to once the upstream's response headers have arrived
+        return super.filter(exchange, routed -> Mono.fromRunnable(() -> RequestTiming.upstreamFinished(routed))
+                .then(chain.filter(routed)));
+    }
+
+    @Override
+    protected HttpClient getHttpClient(Route route, ServerWebExchange exchange) {
+        HttpClient client = pools.httpClient(route.getId());
+        Object connectTimeout = route.getMetadata().get(RouteMetadataUtils.CONNECT_TIMEOUT_ATTR);
+        if (connectTimeout != null) {
+            return client.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, Integer.parseInt(connectTimeout.toString()));
+        }
+        return client;
+    }
+}
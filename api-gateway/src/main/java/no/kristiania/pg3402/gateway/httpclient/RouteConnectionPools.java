@@ -0,0 +1,133 @@
+package no.kristiania.pg3402.gateway.httpclient;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.cloud.gateway.config.HttpClientCustomizer;
+import org.springframework.cloud.gateway.config.HttpClientFactory;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.config.HttpClientSslConfigurer;
+import org.springframework.core.env.Environment;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One Reactor Netty connection pool (and HttpClient) per gateway route.
+ *
+ * Settings are read from gateway.connection-pools.routes.[route id].* and
+ * fall back to gateway.connection-pools.default.*. Everything else (SSL,
+ * proxy, header limits, customizers) comes from the regular
+ * spring.cloud.gateway.httpclient configuration, so a route client differs
+ * from the shared one only in its pool and protocol. As with any Reactor
+ * Netty pool, the connection limits apply per remote address, i.e. per
+ * upstream instance of the route, not to the route as a whole.
+ *
+ * Pools publish Reactor Netty's connection provider metrics under the name
+ * gateway-[route id]: total, active, idle and pending connections, and the
+ * time spent waiting to acquire one. Clients publish connect time, which
+ * counts new connections and so shows churn.
+ */
+@Slf4j
+public class RouteConnectionPools implements DisposableBean {
+
+    private static final String PREFIX = "gateway.connection-pools.";
+
+    private final Environment environment;
+    private final HttpClientProperties properties;
+    private final ServerProperties serverProperties;
+    private final HttpClientSslConfigurer sslConfigurer;
+    private final List<HttpClientCustomizer> customizers;
+    private final Map<String, HttpClient> clients = new ConcurrentHashMap<>();
+    private final Map<String, ConnectionProvider> providers = new ConcurrentHashMap<>();
+
+    public RouteConnectionPools(Environment environment,
+                                HttpClientProperties properties,
+                                ServerProperties serverProperties,
+                                HttpClientSslConfigurer sslConfigurer,
+                                List<HttpClientCustomizer> customizers) {
+        this.environment = environment;
+        this.properties = properties;
+        this.serverProperties = serverProperties;
+        this.sslConfigurer = sslConfigurer;
+        this.customizers = customizers;
+    }
+
+    public HttpClient httpClient(String routeId) {
+        return clients.computeIfAbsent(routeId, this::create);
+    }
+
+    private HttpClient create(String routeId) {
+        ConnectionProvider provider = ConnectionProvider.builder("gateway-" + routeId)
+                .maxConnections(intSetting(routeId, "max-connections", 200))
+                .pendingAcquireMaxCount(intSetting(routeId, "pending-acquire-max-count", 400))
+                .pendingAcquireTimeout(durationSetting(routeId, "pending-acquire-timeout", "2s"))
+                .maxIdleTime(durationSetting(routeId, "max-idle-time", "30s"))
+                .maxLifeTime(durationSetting(routeId, "max-life-time", "5m"))
+                .evictInBackground(durationSetting(routeId, "eviction-interval", "30s"))
+                .metrics(true)
+                .build();
+        providers.put(routeId, provider);
+
+        HttpClient client = new RouteHttpClientFactory(properties, serverProperties, sslConfigurer, customizers, provider).build()
+                // Tag client metrics with the route instead of every distinct URI
+                .metrics(true, uri -> routeId);
+        String protocol = setting(routeId, "protocol", "http1");
+        if ("h2c".equalsIgnoreCase(protocol)) {
+            // Prior-knowledge-free h2c: upgrades from HTTP/1.1 when the upstream supports it
+            client = client.protocol(HttpProtocol.H2C, HttpProtocol.HTTP11);
+        }
+        log.info("Created connection pool gateway-{} ({})", routeId, protocol);
+        return client;
+    }
+
+    private String setting(String routeId, String key, String defaultValue) {
+        String value = environment.getProperty(PREFIX + "routes." + routeId + "." + key);
+        return value != null ? value : environment.getProperty(PREFIX + "default." + key, defaultValue);
+    }
+
+    private int intSetting(String routeId, String key, int defaultValue) {
+        return Integer.parseInt(setting(routeId, key, String.valueOf(defaultValue)));
+    }
+
+    private Duration durationSetting(String routeId, String key, String defaultValue) {
+        return DurationStyle.detectAndParse(setting(routeId, key, defaultValue));
+    }
+
+    @Override
+    public void destroy() {
+        providers.values().forEach(ConnectionProvider::dispose);
+    }
+
+    /**
+     * The gateway's own HttpClient setup, with the route's pool swapped in
+     */
+    private static class RouteHttpClientFactory extends HttpClientFactory {
+
+        private final ConnectionProvider provider;
+
+        RouteHttpClientFactory(HttpClientProperties properties,
+                               ServerProperties serverProperties,
+                               HttpClientSslConfigurer sslConfigurer,
+                               List<HttpClientCustomizer> customizers,
+                               ConnectionProvider provider) {
+            super(properties, serverProperties, sslConfigurer, customizers);
+            this.provider = provider;
+        }
+
+        @Override
+        protected ConnectionProvider buildConnectionProvider(HttpClientProperties properties) {
+            return provider;
+        }
+
+        HttpClient build() {
+            return createInstance();
+        }
+    }
+}
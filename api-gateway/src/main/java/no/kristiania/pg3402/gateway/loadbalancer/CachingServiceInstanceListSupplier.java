@@ -0,0 +1,97 @@
+package no.kristiania.pg3402.gateway.loadbalancer;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Serves the instances of a service from an immutable cached list.
+ *
+ * The delegate (Docker DNS or the discovery client) is polled in the
+ * background, so choosing an instance never blocks or waits on discovery. A
+ * failed refresh keeps the last known list. Instances the tracker has ejected
+ * after consecutive failures are left out until their cooldown ends; if every
+ * instance is ejected the full list is served, since trying one beats failing
+ * the request outright.
+ */
+@Slf4j
+public class CachingServiceInstanceListSupplier implements ServiceInstanceListSupplier, DisposableBean {
+
+    private final ServiceInstanceListSupplier delegate;
+    private final InstanceLoadTracker tracker;
+    private final Sinks.Empty<Void> firstRefresh = Sinks.empty();
+    private final Disposable refreshes;
+    private volatile List<ServiceInstance> instances = List.of();
+
+    public CachingServiceInstanceListSupplier(ServiceInstanceListSupplier delegate,
+                                              InstanceLoadTracker tracker,
+                                              Duration refreshInterval) {
+        this.delegate = delegate;
+        this.tracker = tracker;
+        Duration timeout = refreshInterval.compareTo(Duration.ofSeconds(5)) < 0 ? refreshInterval : Duration.ofSeconds(5);
+        this.refreshes = Flux.interval(Duration.ZERO, refreshInterval, Schedulers.boundedElastic())
+                .onBackpressureDrop()
+                .concatMap(tick -> delegate.get().next()
+                        .timeout(timeout)
+                        .doOnNext(this::update)
+                        .onErrorResume(e -> {
+                            log.warn("Failed to refresh {} instances, keeping {} known: {}",
+                                    getServiceId(), instances.size(), e.toString());
+                            return Mono.empty();
+                        })
+                        .doFinally(signal -> firstRefresh.tryEmitEmpty()))
+                .subscribe();
+    }
+
+    @Override
+    public String getServiceId() {
+        return delegate.getServiceId();
+    }
+
+    @Override
+    public Flux<List<ServiceInstance>> get() {
+        // Only the very first requests wait, and only for the first refresh
+        return firstRefresh.asMono()
+                .then(Mono.fromSupplier(this::available))
+                .flux();
+    }
+
+    /**
+     * Every known instance, including ejected ones
+     */
+    public List<ServiceInstance> known() {
+        return instances;
+    }
+
+    @Override
+    public void destroy() {
+        refreshes.dispose();
+    }
+
+    private List<ServiceInstance> available() {
+        List<ServiceInstance> current = instances;
+        List<ServiceInstance> healthy = current.stream().filter(tracker::isHealthy).toList();
+        return healthy.isEmpty() ? current : healthy;
+    }
+
+    private void update(List<ServiceInstance> refreshed) {
+        List<ServiceInstance> previous = instances;
+        instances = List.copyOf(refreshed);
+        if (!keys(previous).equals(keys(instances))) {
+            log.info("{} instances: {}", getServiceId(), keys(instances));
+        }
+    }
+
+    private static List<String> keys(List<ServiceInstance> instances) {
+        return instances.stream().map(InstanceLoadTracker::key).sorted().toList();
+    }
+}
@@ -0,0 +1,66 @@
+package no.kristiania.pg3402.gateway.loadbalancer;
+
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ServiceInstanceListSupplier that uses Docker DNS to discover the instances of a service.
+ * Docker Compose DNS returns all container IPs for a scaled service.
+ *
+ * Resolution blocks, so it runs on the bounded elastic scheduler; wrap this in
+ * a CachingServiceInstanceListSupplier rather than resolving per request.
+ */
+public class DockerDnsServiceInstanceListSupplier implements ServiceInstanceListSupplier {
+
+    private final String serviceId;
+    private final int port;
+
+    public DockerDnsServiceInstanceListSupplier(String serviceId, int port) {
+        this.serviceId = serviceId;
+        this.port = port;
+    }
+
+    @Override
+    public String getServiceId() {
+        return serviceId;
+    }
+
+    @Override
+    public Flux<List<ServiceInstance>> get() {
+        return Mono.fromCallable(this::resolve)
+                .subscribeOn(Schedulers.boundedElastic())
+                .flux();
+    }
+
+    private List<ServiceInstance> resolve() {
+        try {
+            // Docker Compose DNS resolves service name to all container IPs
+            InetAddress[] addresses = InetAddress.getAllByName(serviceId);
+            List<ServiceInstance> instances = new ArrayList<>();
+
+            for (InetAddress address : addresses) {
+                String host = address.getHostAddress();
+                instances.add(new DefaultServiceInstance(
+                        serviceId + "-" + host,
+                        serviceId,
+                        host,
+                        port,
+                        false
+                ));
+            }
+
+            return instances;
+        } catch (UnknownHostException e) {
+            return new ArrayList<>();
+        }
+    }
+}
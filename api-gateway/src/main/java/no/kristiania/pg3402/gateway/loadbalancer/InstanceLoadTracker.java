@@ -0,0 +1,242 @@
+package no.kristiania.pg3402.gateway.loadbalancer;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.CompletionContext;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerLifecycle;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.RequestDataContext;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.client.loadbalancer.ResponseData;
+import org.springframework.http.MediaType;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per-instance request bookkeeping for one load-balanced service.
+ *
+ * Registered as a LoadBalancerLifecycle in the service's load balancer context,
+ * so the gateway reports every request it sends: in-flight counts go up when an
+ * instance is chosen and down when the exchange completes or is cancelled
+ * (cancels are reported by {@link LoadBalancerCancellationFilter}). Event streams
+ * (Accept: text/event-stream) are left out of the in-flight counts; they stay
+ * open for as long as the client listens, and counting them would make a
+ * replica holding many idle streams look busy. Consecutive failures
+ * (connect errors, 5xx or time-limiter timeouts) eject an instance for a cooldown; the
+ * CachingServiceInstanceListSupplier leaves ejected instances out.
+ *
+ * Response latency is folded into a time-decayed peak EWMA per instance (failures
+ * count as at least the failure penalty, so a replica that fails fast does not
+ * look attractive). Reading it also decays it towards zero by the time since
+ * it was last updated, so an instance that looked slow, and therefore gets no
+ * requests, is tried again after a few decay periods. The score, EWMA x (in-flight + 1), estimates how long a new
+ * request would wait there; it is exported per instance as a gauge.
+ */
+@Slf4j
+public class InstanceLoadTracker
+        implements LoadBalancerLifecycle<RequestDataContext, ResponseData, ServiceInstance> {
+
+    private final String serviceId;
+    private final int failureThreshold;
+    private final long cooldownNanos;
+    private final double decayNanos;
+    private final long failurePenaltyNanos;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, InstanceState> states = new ConcurrentHashMap<>();
+
+    public InstanceLoadTracker(String serviceId,
+                               int failureThreshold,
+                               Duration cooldown,
+                               Duration latencyDecay,
+                               Duration failurePenalty,
+                               MeterRegistry meterRegistry) {
+        this.serviceId = serviceId;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.cooldownNanos = cooldown.toNanos();
+        this.decayNanos = Math.max(1, latencyDecay.toNanos());
+        this.failurePenaltyNanos = failurePenalty.toNanos();
+        this.meterRegistry = meterRegistry;
+    }
+
+    public static String key(ServiceInstance instance) {
+        return instance.getHost() + ":" + instance.getPort();
+    }
+
+    public int inFlight(ServiceInstance instance) {
+        InstanceState state = states.get(key(instance));
+        return state != null ? state.inFlight.get() : 0;
+    }
+
+    /**
+     * Decayed average response time in milliseconds, 0 until the first response
+     */
+    public double latencyMillis(ServiceInstance instance) {
+        InstanceState state = states.get(key(instance));
+        return state != null ? state.latencyMillis(decayNanos) : 0;
+    }
+
+    /**
+     * Expected wait for one more request; lower is better. The +1 ms floor keeps
+     * in-flight counts meaningful for instances without latency samples yet.
+     */
+    public double score(ServiceInstance instance) {
+        return (latencyMillis(instance) + 1) * (inFlight(instance) + 1);
+    }
+
+    public boolean isHealthy(ServiceInstance instance) {
+        InstanceState state = states.get(key(instance));
+        return state == null || System.nanoTime() - state.unhealthyUntil >= 0;
+    }
+
+    @Override
+    public boolean supports(Class requestContextClass, Class responseClass, Class serverTypeClass) {
+        return RequestDataContext.class.isAssignableFrom(requestContextClass)
+                && ResponseData.class.isAssignableFrom(responseClass)
+                && ServiceInstance.class.isAssignableFrom(serverTypeClass);
+    }
+
+    @Override
+    public void onStart(Request<RequestDataContext> request) {
+    }
+
+    @Override
+    public void onStartRequest(Request<RequestDataContext> request, Response<ServiceInstance> lbResponse) {
+        if (lbResponse.hasServer()) {
+            if (!isEventStream(request)) {
+                state(lbResponse.getServer()).inFlight.incrementAndGet();
+            }
+            if (request.getContext() != null) {
+                request.getContext().setRequestStartTime(System.nanoTime());
+            }
+        }
+    }
+
+    @Override
+    public void onComplete(CompletionContext<ResponseData, ServiceInstance, RequestDataContext> completionContext) {
+        Response<ServiceInstance> lbResponse = completionContext.getLoadBalancerResponse();
+        if (lbResponse == null || !lbResponse.hasServer()) {
+            return;
+        }
+        ServiceInstance instance = lbResponse.getServer();
+        InstanceState state = state(instance);
+        if (!isEventStream(completionContext.getLoadBalancerRequest())) {
+            state.inFlight.updateAndGet(count -> Math.max(0, count - 1));
+        }
+        if (completionContext.status() == CompletionContext.Status.DISCARD) {
+            // Cancelled before completing (a client abort, a hedged attempt that lost); says nothing about the instance
+            return;
+        }
+
+        ResponseData response = completionContext.getClientResponse();
+        boolean failed = completionContext.status() == CompletionContext.Status.FAILED
+                || (response != null && response.getHttpStatus() != null && response.getHttpStatus().is5xxServerError());
+        recordLatency(state, completionContext, response, failed);
+        if (!failed) {
+            state.consecutiveFailures.set(0);
+            return;
+        }
+        if (state.consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            state.consecutiveFailures.set(0);
+            state.unhealthyUntil = System.nanoTime() + cooldownNanos;
+            log.warn("Ejecting {} instance {} for {} ms after {} consecutive failures",
+                    serviceId, key(instance), cooldownNanos / 1_000_000, failureThreshold);
+        }
+    }
+
+    private void recordLatency(InstanceState state,
+                               CompletionContext<ResponseData, ServiceInstance, RequestDataContext> completionContext,
+                               ResponseData response,
+                               boolean failed) {
+        Request<RequestDataContext> request = completionContext.getLoadBalancerRequest();
+        if (request == null || request.getContext() == null || request.getContext().getRequestStartTime() == 0) {
+            return;
+        }
+        if (response != null && response.getHeaders() != null
+                && MediaType.TEXT_EVENT_STREAM.isCompatibleWith(response.getHeaders().getContentType())) {
+            // Event streams stay open for as long as the client listens; not a latency
+            return;
+        }
+        long latency = System.nanoTime() - request.getContext().getRequestStartTime();
+        state.sample(failed ? Math.max(latency, failurePenaltyNanos) : latency, decayNanos);
+    }
+
+    private static boolean isEventStream(Request<RequestDataContext> request) {
+        if (request == null || request.getContext() == null || request.getContext().getClientRequest() == null) {
+            return false;
+        }
+        return request.getContext().getClientRequest().getHeaders().getAccept().stream()
+                .anyMatch(MediaType.TEXT_EVENT_STREAM::equalsTypeAndSubtype);
+    }
+
+    private InstanceState state(ServiceInstance instance) {
+        return states.computeIfAbsent(key(instance), key -> {
+            InstanceState state = new InstanceState();
+            if (meterRegistry != null) {
+                Tags tags = Tags.of("service", serviceId, "instance", key);
+                Gauge.builder("gateway.loadbalancer.instance.score", state,
+                                s -> (s.latencyMillis(decayNanos) + 1) * (s.inFlight.get() + 1))
+                        .description("Expected wait for one more request (EWMA latency x (in-flight + 1))")
+                        .tags(tags)
+                        .register(meterRegistry);
+                Gauge.builder("gateway.loadbalancer.instance.latency.ewma", state, s -> s.latencyMillis(decayNanos))
+                        .description("Decayed average response time in milliseconds")
+                        .tags(tags)
+                        .register(meterRegistry);
+                Gauge.builder("gateway.loadbalancer.instance.inflight", state, s -> s.inFlight.get())
+                        .description("Requests in flight to the instance")
+                        .tags(tags)
+                        .register(meterRegistry);
+            }
+            return state;
+        });
+    }
+
+    private static class InstanceState {
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private volatile long unhealthyUntil = System.nanoTime();
+        private double ewmaNanos;
+        private long updatedAt;
+        private boolean sampled;
+
+        /**
+         * Peak EWMA: a slower sample replaces the average at once (a GC pause
+         * shows up on the next response), faster samples pull it down weighted by
+         * the time since the previous update, so it decays over a few decay periods
+         * regardless of request rate
+         */
+        synchronized void sample(long latencyNanos, double decayNanos) {
+            long now = System.nanoTime();
+            if (!sampled || latencyNanos > ewmaNanos) {
+                ewmaNanos = latencyNanos;
+            } else {
+                double weight = Math.exp(-Math.max(0, now - updatedAt) / decayNanos);
+                ewmaNanos = ewmaNanos * weight + latencyNanos * (1 - weight);
+            }
+            sampled = true;
+            updatedAt = now;
+        }
+
+        /**
+         * The average decayed towards zero for the time since the last update, as
+         * if a zero-latency sample had arrived now (Finagle's PeakEwma does the same
+         * on every read); without it an instance that stops being chosen would keep
+         * its last, high value for good
+         */
+        synchronized double latencyMillis(double decayNanos) {
+            if (!sampled) {
+                return 0;
+            }
+            long now = System.nanoTime();
+            ewmaNanos *= Math.exp(-Math.max(0, now - updatedAt) / decayNanos);
+            updatedAt = now;
+            return ewmaNanos / 1_000_000;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package no.kristiania.pg3402.gateway.loadbalancer;
+
+import io.github.resilience4j.timelimiter.TimeLimiterConfig;
+import io.github.resilience4j.timelimiter.TimeLimiterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.CompletionContext;
+import org.springframework.cloud.client.loadbalancer.DefaultRequest;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerLifecycle;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerLifecycleValidator;
+import org.springframework.cloud.client.loadbalancer.RequestData;
+import org.springframework.cloud.client.loadbalancer.RequestDataContext;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.client.loadbalancer.ResponseData;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.ReactiveLoadBalancerClientFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.cloud.loadbalancer.support.LoadBalancerClientFactory;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Completes the load balancer lifecycle for cancelled exchanges.
+ *
+ * ReactiveLoadBalancerClientFilter reports a request's completion only when it
+ * succeeds or fails, not when it is cancelled, so without this every cancelled
+ * exchange would stay in the chosen instance's in-flight count for good. That
+ * covers client aborts and the circuit breaker's time limiter, which cancels
+ * the request when the timeout expires.
+ *
+ * A cancel that comes at the route's time-limiter timeout (configured under the
+ * route ID, as the circuit breakers are) is reported as a failure, so an
+ * instance that keeps timing out is ejected like one that answers with errors.
+ * Any other cancel is reported as discarded: it says nothing about the instance.
+ */
+@Component
+public class LoadBalancerCancellationFilter implements GlobalFilter, Ordered {
+
+    /**
+     * The time limiter starts its clock slightly before this filter runs
+     */
+    private static final long TIMEOUT_SLACK_NANOS = Duration.ofMillis(100).toNanos();
+
+    private final LoadBalancerClientFactory clientFactory;
+    private final ObjectProvider<TimeLimiterRegistry> timeLimiterRegistry;
+
+    public LoadBalancerCancellationFilter(LoadBalancerClientFactory clientFactory,
+                                          ObjectProvider<TimeLimiterRegistry> timeLimiterRegistry) {
+        this.clientFactory = clientFactory;
+        this.timeLimiterRegistry = timeLimiterRegistry;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        long start = System.nanoTime();
+        return chain.filter(exchange).doOnCancel(() -> cancelled(exchange, start));
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void cancelled(ServerWebExchange exchange, long start) {
+        Response<ServiceInstance> lbResponse =
+                exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_LOADBALANCER_RESPONSE_ATTR);
+        if (lbResponse == null || !lbResponse.hasServer()) {
+            // Cancelled before an instance was chosen; nothing was counted
+            return;
+        }
+        Set<LoadBalancerLifecycle> lifecycles = LoadBalancerLifecycleValidator.getSupportedLifecycleProcessors(
+                clientFactory.getInstances(lbResponse.getServer().getServiceId(), LoadBalancerLifecycle.class),
+                RequestDataContext.class, ResponseData.class, ServiceInstance.class);
+        if (lifecycles.isEmpty()) {
+            return;
+        }
+        RequestDataContext context = new RequestDataContext(new RequestData(exchange.getRequest()), "default");
+        context.setRequestStartTime(start);
+        DefaultRequest<RequestDataContext> lbRequest = new DefaultRequest<>(context);
+        CompletionContext<ResponseData, ServiceInstance, RequestDataContext> completion =
+                timedOut(exchange, System.nanoTime() - start)
+                        ? new CompletionContext<>(CompletionContext.Status.FAILED,
+                                new TimeoutException("Cancelled by the time limiter"), lbRequest, lbResponse)
+                        : new CompletionContext<>(CompletionContext.Status.DISCARD, lbRequest, lbResponse);
+        lifecycles.forEach(lifecycle -> lifecycle.onComplete(completion));
+    }
+
+    private boolean timedOut(ServerWebExchange exchange, long elapsedNanos) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        TimeLimiterRegistry registry = timeLimiterRegistry.getIfAvailable();
+        if (route == null || registry == null) {
+            return false;
+        }
+        return registry.getConfiguration(route.getId())
+                .map(TimeLimiterConfig::getTimeoutDuration)
+                .map(timeout -> elapsedNanos + TIMEOUT_SLACK_NANOS >= timeout.toNanos())
+                .orElse(false);
+    }
+
+    @Override
+    public int getOrder() {
+        return ReactiveLoadBalancerClientFilter.LOAD_BALANCER_CLIENT_FILTER_ORDER - 1;
+    }
+}
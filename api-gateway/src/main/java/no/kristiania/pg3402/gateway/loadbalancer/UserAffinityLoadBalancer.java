@@ -0,0 +1,198 @@
+package no.kristiania.pg3402.gateway.loadbalancer;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.client.loadbalancer.EmptyResponse;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.RequestDataContext;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.loadbalancer.core.NoopServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.core.ReactorServiceInstanceLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Routes all requests for a user to the same instance, so per-user caches in
+ * the service stay warm across replicas.
+ *
+ * The user ID path segment is hashed onto a consistent-hash ring of instances
+ * (with bounded loads): walking clockwise from the user's point, the first
+ * instance with fewer than ceil(loadFactor * (in-flight + 1) / instances)
+ * requests in flight wins. A hot user therefore spills onto the next instance
+ * instead of overloading its home. Instances ejected by the supplier drop off
+ * the ring, so only their users move (to the ring successor) until they
+ * recover. Requests without a user ID go to the least loaded instance.
+ */
+public class UserAffinityLoadBalancer implements ReactorServiceInstanceLoadBalancer {
+
+    private static final Pattern USER_ID = Pattern.compile("/users/([^/]+)(?:/|$)");
+
+    private final ObjectProvider<ServiceInstanceListSupplier> supplierProvider;
+    private final InstanceLoadTracker tracker;
+    private final double loadFactor;
+    private final int virtualNodes;
+    private final AtomicInteger position = new AtomicInteger();
+    private volatile Ring ring = Ring.EMPTY;
+
+    public UserAffinityLoadBalancer(ObjectProvider<ServiceInstanceListSupplier> supplierProvider,
+                                    InstanceLoadTracker tracker,
+                                    double loadFactor,
+                                    int virtualNodes) {
+        this.supplierProvider = supplierProvider;
+        this.tracker = tracker;
+        this.loadFactor = Math.max(1.0, loadFactor);
+        this.virtualNodes = Math.max(1, virtualNodes);
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public Mono<Response<ServiceInstance>> choose(Request request) {
+        ServiceInstanceListSupplier supplier = supplierProvider.getIfAvailable(NoopServiceInstanceListSupplier::new);
+        return supplier.get(request).next()
+                .map(instances -> choose(instances, userKey(request)));
+    }
+
+    private Response<ServiceInstance> choose(List<ServiceInstance> instances, String userKey) {
+        if (instances.isEmpty()) {
+            return new EmptyResponse();
+        }
+        if (userKey == null) {
+            return new DefaultResponse(leastLoaded(instances));
+        }
+
+        int totalInFlight = 0;
+        Map<String, ServiceInstance> byKey = new HashMap<>();
+        for (ServiceInstance instance : instances) {
+            totalInFlight += tracker.inFlight(instance);
+            byKey.put(InstanceLoadTracker.key(instance), instance);
+        }
+        int capacity = (int) Math.ceil(loadFactor * (totalInFlight + 1) / instances.size());
+
+        for (String key : ringFor(instances).walk(hash(userKey))) {
+            ServiceInstance instance = byKey.get(key);
+            if (tracker.inFlight(instance) < capacity) {
+                return new DefaultResponse(instance);
+            }
+        }
+        return new DefaultResponse(leastLoaded(instances));
+    }
+
+    private ServiceInstance leastLoaded(List<ServiceInstance> instances) {
+        // Start at a rotating offset so ties are spread round-robin
+        int start = Math.floorMod(position.getAndIncrement(), instances.size());
+        ServiceInstance best = null;
+        int bestLoad = Integer.MAX_VALUE;
+        for (int i = 0; i < instances.size(); i++) {
+            ServiceInstance instance = instances.get((start + i) % instances.size());
+            int load = tracker.inFlight(instance);
+            if (load < bestLoad) {
+                best = instance;
+                bestLoad = load;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * The ring only changes when the set of instances does, so it is cached between requests
+     */
+    private Ring ringFor(List<ServiceInstance> instances) {
+        List<String> keys = instances.stream().map(InstanceLoadTracker::key).sorted().toList();
+        Ring current = ring;
+        if (!current.keys.equals(keys)) {
+            current = new Ring(keys, virtualNodes);
+            ring = current;
+        }
+        return current;
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static String userKey(Request request) {
+        if (!(request.getContext() instanceof RequestDataContext context) || context.getClientRequest() == null) {
+            return null;
+        }
+        Matcher matcher = USER_ID.matcher(context.getClientRequest().getUrl().getPath());
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    /**
+     * FNV-1a, then mixed with the SplitMix64 finalizer; stable across gateway restarts and replicas
+     */
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        long z = hash + 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Sorted ring points with the instance owning each point
+     */
+    private static final class Ring {
+
+        static final Ring EMPTY = new Ring(List.of(), 0);
+
+        private final List<String> keys;
+        private final long[] points;
+        private final int[] owners;
+
+        Ring(List<String> keys, int virtualNodes) {
+            this.keys = keys;
+
+            // Point placement depends on host:port only, so every gateway replica builds the same ring
+            long[][] entries = new long[keys.size() * virtualNodes][];
+            int n = 0;
+            for (int i = 0; i < keys.size(); i++) {
+                for (int v = 0; v < virtualNodes; v++) {
+                    entries[n++] = new long[]{hash(keys.get(i) + "#" + v), i};
+                }
+            }
+            Arrays.sort(entries, (a, b) -> Long.compare(a[0], b[0]));
+            this.points = new long[entries.length];
+            this.owners = new int[entries.length];
+            for (int i = 0; i < entries.length; i++) {
+                points[i] = entries[i][0];
+                owners[i] = (int) entries[i][1];
+            }
+        }
+
+        /**
+         * Distinct instance keys in ring order, starting at the first point at or after the hash
+         */
+        List<String> walk(long hash) {
+            List<String> order = new ArrayList<>(keys.size());
+            if (points.length == 0) {
+                return order;
+            }
+            int index = Arrays.binarySearch(points, hash);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            boolean[] seen = new boolean[keys.size()];
+            for (int i = 0; i < points.length && order.size() < keys.size(); i++) {
+                int owner = owners[(index + i) % points.length];
+                if (!seen[owner]) {
+                    seen[owner] = true;
+                    order.add(keys.get(owner));
+                }
+            }
+            return order;
+        }
+    }
+}
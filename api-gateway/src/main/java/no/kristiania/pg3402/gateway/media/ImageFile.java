@@ -0,0 +1,23 @@
+package no.kristiania.pg3402.gateway.media;
+
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+
+import java.nio.file.Path;
+
+/**
+ * A file in the image directory, as last seen by {@link MediaIndex}
+ *
+ * @param etag strong validator from the file's size and modification time
+ */
+public record ImageFile(String name, Path path, long size, long lastModified, String etag) {
+
+    static ImageFile of(Path path, long size, long lastModified) {
+        String etag = Long.toHexString(size) + "-" + Long.toHexString(lastModified);
+        return new ImageFile(path.getFileName().toString(), path, size, lastModified, etag);
+    }
+
+    public MediaType mediaType() {
+        return MediaTypeFactory.getMediaType(name).orElse(MediaType.APPLICATION_OCTET_STREAM);
+    }
+}
@@ -0,0 +1,160 @@
+package no.kristiania.pg3402.gateway.media;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory index of the image directory (gateway.media.directory), kept up
+ * to date by a file watcher so requests never list or stat the directory.
+ *
+ * Only the directory's own regular files are indexed, and only indexed names
+ * are served, so request paths cannot reach anything else on disk. Bind
+ * mounts do not always deliver file events (Docker Desktop in particular),
+ * so the directory is also rescanned every rescan-interval.
+ */
+@Component
+@ConditionalOnProperty(name = "gateway.media.enabled", havingValue = "true")
+@Slf4j
+public class MediaIndex implements DisposableBean {
+
+    private static final String LISTED_EXTENSION = ".webp";
+
+    private final Path directory;
+    private final Duration rescanInterval;
+    private final Map<String, ImageFile> files = new ConcurrentHashMap<>();
+    private final WatchService watchService;
+    private final Thread watcher;
+    private volatile boolean watching;
+    private volatile List<String> listing = List.of();
+
+    public MediaIndex(@Value("${gateway.media.directory:/app/images}") Path directory,
+                      @Value("${gateway.media.rescan-interval:5m}") Duration rescanInterval) throws IOException {
+        this.directory = directory.toAbsolutePath().normalize();
+        this.rescanInterval = rescanInterval;
+        this.watchService = this.directory.getFileSystem().newWatchService();
+        if (!Files.isDirectory(this.directory)) {
+            log.warn("Image directory {} does not exist; no images are served until it does", this.directory);
+        }
+        rescan();
+        log.info("Serving {} images from {}", files.size(), this.directory);
+
+        this.watcher = new Thread(this::watch, "media-index-watcher");
+        this.watcher.setDaemon(true);
+        this.watcher.start();
+    }
+
+    public Optional<ImageFile> find(String name) {
+        return Optional.ofNullable(files.get(name));
+    }
+
+    /**
+     * Sorted names of the .webp images, rebuilt by the watcher whenever the directory changes
+     */
+    public List<String> imageNames() {
+        return listing;
+    }
+
+    private void watch() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watchService.poll(rescanInterval.toMillis(), TimeUnit.MILLISECONDS);
+                if (key == null) {
+                    rescan();
+                    continue;
+                }
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        rescan();
+                    } else {
+                        refresh(directory.resolve((Path) event.context()));
+                    }
+                }
+                if (!key.reset()) {
+                    // Directory deleted or unmounted; rescan registers it again once it is back
+                    watching = false;
+                    rescan();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void rescan() {
+        if (!Files.isDirectory(directory)) {
+            files.clear();
+            rebuildListing();
+            return;
+        }
+        try {
+            if (!watching) {
+                directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                watching = true;
+            }
+            Map<String, ImageFile> found = new ConcurrentHashMap<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path path : stream) {
+                    read(path).ifPresent(file -> found.put(file.name(), file));
+                }
+            }
+            files.keySet().retainAll(found.keySet());
+            files.putAll(found);
+            rebuildListing();
+        } catch (IOException | ClosedWatchServiceException e) {
+            log.warn("Could not scan image directory {}: {}", directory, e.toString());
+        }
+    }
+
+    private void refresh(Path path) {
+        String name = path.getFileName().toString();
+        read(path).ifPresentOrElse(file -> files.put(name, file), () -> files.remove(name));
+        rebuildListing();
+    }
+
+    private void rebuildListing() {
+        listing = files.keySet().stream()
+                .filter(name -> name.endsWith(LISTED_EXTENSION))
+                .sorted()
+                .toList();
+    }
+
+    private static Optional<ImageFile> read(Path path) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            if (!attributes.isRegularFile()) {
+                return Optional.empty();
+            }
+            return Optional.of(ImageFile.of(path, attributes.size(), attributes.lastModifiedTime().toMillis()));
+        } catch (IOException e) {
+            // Deleted between the event and this read
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        watcher.interrupt();
+        watchService.close();
+    }
+}
@@ -0,0 +1,160 @@
+package no.kristiania.pg3402.gateway.ratelimit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.validation.constraints.Min;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cloud.gateway.filter.ratelimit.AbstractRateLimiter;
+import org.springframework.cloud.gateway.filter.ratelimit.RedisRateLimiter;
+import org.springframework.cloud.gateway.support.ConfigurationService;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.validation.annotation.Validated;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory alternative to the Redis rate limiter (gateway.rate-limiter.mode=local).
+ *
+ * Each route and key gets a {@link TokenBucket} with the same replenishRate,
+ * burstCapacity and requestedTokens semantics and response headers as
+ * RedisRateLimiter, but deciding costs a compare-and-set instead of a Redis
+ * round trip, and keeps working when Redis is down.
+ *
+ * On its own every gateway instance enforces the full limit. With sync enabled,
+ * each instance periodically adds the tokens it handed out to a shared Redis
+ * counter per key and debits what the other instances used from its local
+ * bucket, so the cluster converges on the configured limit within about one
+ * sync interval. Sync failures are logged and the buckets carry on locally.
+ */
+@Slf4j
+public class LocalRateLimiter extends AbstractRateLimiter<LocalRateLimiter.Config> implements DisposableBean {
+
+    public static final String CONFIGURATION_PROPERTY_NAME = "local-rate-limiter";
+
+    private static final String SYNC_KEY_PREFIX = "gateway_rate_limiter.";
+    private static final Duration IDLE_EVICTION = Duration.ofMinutes(2);
+
+    private final Config defaultConfig;
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final ReactiveStringRedisTemplate redis;
+    private final Disposable maintenance;
+    private final Counter allowed;
+    private final Counter denied;
+
+    /**
+     * @param defaultConfig used for routes without local-rate-limiter arguments (including
+     *                      routes built with the Java DSL)
+     * @param redis         shared counters for sync between instances, or null to keep limits local
+     */
+    public LocalRateLimiter(ConfigurationService configurationService,
+                            Config defaultConfig,
+                            ReactiveStringRedisTemplate redis,
+                            Duration syncInterval,
+                            MeterRegistry meterRegistry) {
+        super(Config.class, CONFIGURATION_PROPERTY_NAME, configurationService);
+        this.defaultConfig = defaultConfig;
+        this.redis = redis;
+        this.maintenance = Flux.interval(syncInterval, syncInterval, Schedulers.boundedElastic())
+                .onBackpressureDrop()
+                .concatMap(tick -> sync().doFinally(signal -> evictIdle()))
+                .subscribe();
+
+        this.allowed = Counter.builder("gateway.ratelimiter.requests")
+                .description("Requests checked by the local rate limiter")
+                .tag("result", "allowed")
+                .register(meterRegistry);
+        this.denied = Counter.builder("gateway.ratelimiter.requests")
+                .description("Requests checked by the local rate limiter")
+                .tag("result", "denied")
+                .register(meterRegistry);
+        Gauge.builder("gateway.ratelimiter.buckets", buckets, Map::size)
+                .description("Rate limiter keys currently tracked in memory")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Mono<Response> isAllowed(String routeId, String id) {
+        Config config = getConfig().getOrDefault(routeId, defaultConfig);
+        long now = System.nanoTime();
+        TokenBucket bucket = buckets.computeIfAbsent(bucketKey(routeId, id), key -> new TokenBucket(now));
+
+        long result = bucket.tryAcquire(now, config.getReplenishRate(), config.getBurstCapacity(),
+                config.getRequestedTokens());
+        boolean isAllowed = result >= 0;
+        (isAllowed ? allowed : denied).increment();
+        long remaining = isAllowed ? result : -1 - result;
+        return Mono.just(new Response(isAllowed, headers(config, remaining)));
+    }
+
+    private Map<String, String> headers(Config config, long remaining) {
+        return Map.of(
+                RedisRateLimiter.REMAINING_HEADER, String.valueOf(remaining),
+                RedisRateLimiter.REPLENISH_RATE_HEADER, String.valueOf(config.getReplenishRate()),
+                RedisRateLimiter.BURST_CAPACITY_HEADER, String.valueOf(config.getBurstCapacity()),
+                RedisRateLimiter.REQUESTED_TOKENS_HEADER, String.valueOf(config.getRequestedTokens()));
+    }
+
+    /**
+     * Reports local usage per key to Redis and debits what other instances used since the last sync
+     */
+    private Mono<Void> sync() {
+        if (redis == null) {
+            return Mono.empty();
+        }
+        Duration ttl = IDLE_EVICTION.multipliedBy(2);
+        return Flux.fromIterable(buckets.entrySet())
+                .flatMap(entry -> {
+                    String routeId = entry.getKey().substring(0, entry.getKey().indexOf('\n'));
+                    Config config = getConfig().getOrDefault(routeId, defaultConfig);
+                    TokenBucket bucket = entry.getValue();
+                    long delta = bucket.drainUnsynced();
+                    String key = SYNC_KEY_PREFIX + entry.getKey().replace('\n', '.') + ".consumed";
+                    return redis.opsForValue().increment(key, delta)
+                            .flatMap(total -> redis.expire(key, ttl).thenReturn(total))
+                            .doOnNext(total -> bucket.debit(System.nanoTime(), bucket.observeTotal(total, delta),
+                                    config.getReplenishRate(), config.getBurstCapacity()));
+                }, 32)
+                .then()
+                .onErrorResume(e -> {
+                    log.warn("Rate limiter sync failed, limiting locally until the next attempt: {}", e.toString());
+                    return Mono.empty();
+                });
+    }
+
+    private void evictIdle() {
+        long now = System.nanoTime();
+        buckets.values().removeIf(bucket -> bucket.isIdle(now, IDLE_EVICTION.toNanos()));
+    }
+
+    private static String bucketKey(String routeId, String id) {
+        return routeId + '\n' + id;
+    }
+
+    @Override
+    public void destroy() {
+        maintenance.dispose();
+    }
+
+    @Data
+    @Validated
+    public static class Config {
+
+        @Min(1)
+        private int replenishRate;
+
+        @Min(0)
+        private int burstCapacity = 1;
+
+        @Min(1)
+        private int requestedTokens = 1;
+    }
+}
@@ -0,0 +1,90 @@
+package no.kristiania.pg3402.gateway.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free token bucket for one rate limiter key.
+ *
+ * The bucket is stored as a single "theoretical arrival time" (GCRA): the
+ * moment it would be full again. Taking n tokens pushes that moment n refill
+ * intervals further out, and a request is allowed while it stays within
+ * burstCapacity intervals of now. That is the same admission rule as a bucket
+ * holding burstCapacity tokens refilled at replenishRate per second, but the
+ * whole state fits in one AtomicLong, so an update is a single compare-and-set.
+ *
+ * Tokens taken locally are also counted in a LongAdder, so the periodic
+ * synchronization can report them without touching the hot path.
+ */
+class TokenBucket {
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private final AtomicLong fullAt;
+    private final LongAdder unsynced = new LongAdder();
+    private volatile long lastSeenTotal = -1;
+
+    TokenBucket(long now) {
+        this.fullAt = new AtomicLong(now);
+    }
+
+    /**
+     * Takes the requested tokens if available.
+     *
+     * @return tokens left after the request, or -1 - (tokens left) when it is denied
+     */
+    long tryAcquire(long now, int replenishRate, int burstCapacity, int requestedTokens) {
+        long interval = Math.max(1, NANOS_PER_SECOND / replenishRate);
+        long capacity = burstCapacity * interval;
+        long cost = requestedTokens * interval;
+        while (true) {
+            long current = fullAt.get();
+            long base = Math.max(current, now);
+            long next = base + cost;
+            if (next - now > capacity) {
+                return -1 - Math.max(0, (capacity - (base - now)) / interval);
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                unsynced.add(requestedTokens);
+                return (capacity - (next - now)) / interval;
+            }
+        }
+    }
+
+    /**
+     * Takes tokens that other gateway instances used, without going below empty
+     */
+    void debit(long now, long tokens, int replenishRate, int burstCapacity) {
+        long interval = Math.max(1, NANOS_PER_SECOND / replenishRate);
+        long limit = now + burstCapacity * interval;
+        while (true) {
+            long current = fullAt.get();
+            long next = Math.min(Math.max(current, now) + tokens * interval, limit);
+            if (next <= current || fullAt.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * True once the bucket has been full for longer than idleNanos (it can then be dropped and
+     * recreated without changing any decision)
+     */
+    boolean isIdle(long now, long idleNanos) {
+        return now - fullAt.get() > idleNanos;
+    }
+
+    long drainUnsynced() {
+        return unsynced.sumThenReset();
+    }
+
+    /**
+     * Records the cluster-wide total after a sync and returns what other instances took since the
+     * previous one
+     */
+    long observeTotal(long total, long ownDelta) {
+        long previous = lastSeenTotal;
+        lastSeenTotal = total;
+        return previous < 0 ? 0 : Math.max(0, total - previous - ownDelta);
+    }
+}
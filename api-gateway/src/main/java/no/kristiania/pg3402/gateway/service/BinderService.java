@@ -0,0 +1,111 @@
+package no.kristiania.pg3402.gateway.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import no.kristiania.pg3402.gateway.dto.BinderCardResponse;
+import no.kristiania.pg3402.gateway.dto.OwnedCopy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.client.loadbalancer.reactive.LoadBalancedExchangeFilterFunction;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+/**
+ * Builds a binder page (a set's cards with the user's copies joined on) from
+ * catalog-service and collection-service, called concurrently through the
+ * gateway's load balancers and Reactor Netty's pooled connections.
+ *
+ * The catalog is required: without it there are no cards to show, so its
+ * failure fails the page. The collection is optional: if it errors or misses
+ * the timeout the cards are returned without ownership and the page is
+ * flagged as partial.
+ */
+@Service
+@Slf4j
+public class BinderService {
+
+    private final WebClient webClient;
+    private final Duration timeout;
+    private final Counter partialPages;
+
+    public BinderService(WebClient.Builder webClientBuilder,
+                         LoadBalancedExchangeFilterFunction loadBalancerFunction,
+                         MeterRegistry meterRegistry,
+                         @Value("${gateway.binder.timeout:2s}") Duration timeout) {
+        this.webClient = webClientBuilder.clone()
+                .filter(loadBalancerFunction)
+                .build();
+        this.timeout = timeout;
+        this.partialPages = Counter.builder("gateway.binder.partial")
+                .description("Binder pages returned without collection data")
+                .register(meterRegistry);
+    }
+
+    public Mono<BinderPage> getBinderPage(Long userId, String setCode) {
+        Mono<List<BinderCardResponse>> cards = webClient.get()
+                .uri("http://catalog-service/sets/{setCode}/cards", setCode)
+                .retrieve()
+                .bodyToFlux(BinderCardResponse.class)
+                .collectList()
+                .timeout(timeout)
+                .onErrorMap(e -> catalogError(setCode, e));
+
+        Mono<Optional<Map<Long, List<OwnedCopy>>>> owned = webClient.get()
+                .uri("http://collection-service/api/collections/users/{userId}/cards", userId)
+                .retrieve()
+                .bodyToFlux(OwnedCopy.class)
+                .collect(Collectors.groupingBy(OwnedCopy::getCardId))
+                .timeout(timeout)
+                .map(Optional::of)
+                .onErrorResume(e -> {
+                    log.warn("Binder for user {} set {} without collection data: {}", userId, setCode, e.toString());
+                    return Mono.just(Optional.empty());
+                });
+
+        // Both requests are in flight at once; the page is ready when both have answered or given up
+        return Mono.zip(cards, owned)
+                .map(results -> {
+                    Optional<Map<Long, List<OwnedCopy>>> copies = results.getT2();
+                    if (copies.isEmpty()) {
+                        partialPages.increment();
+                    }
+                    copies.ifPresent(byCard -> results.getT1().forEach(card -> join(card, byCard)));
+                    return new BinderPage(results.getT1(), copies.isEmpty());
+                });
+    }
+
+    private static void join(BinderCardResponse card, Map<Long, List<OwnedCopy>> byCard) {
+        List<OwnedCopy> copies = byCard.getOrDefault(card.getId(), List.of());
+        card.setCopies(copies);
+        card.setOwnedQuantity(copies.stream()
+                .mapToInt(copy -> copy.getQuantity() != null ? copy.getQuantity() : 0)
+                .sum());
+    }
+
+    private static Throwable catalogError(String setCode, Throwable e) {
+        if (e instanceof WebClientResponseException.NotFound) {
+            return new ResponseStatusException(HttpStatus.NOT_FOUND, "Set not found: " + setCode);
+        }
+        if (e instanceof TimeoutException) {
+            return new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT, "catalog-service did not respond in time");
+        }
+        return new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "catalog-service is unavailable", e);
+    }
+
+    /**
+     * @param partial true when the collection could not be read and cards carry no ownership
+     */
+    public record BinderPage(List<BinderCardResponse> cards, boolean partial) {
+    }
+}
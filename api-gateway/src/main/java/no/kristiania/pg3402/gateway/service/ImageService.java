@@ -0,0 +1,98 @@
+package no.kristiania.pg3402.gateway.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import no.kristiania.pg3402.gateway.media.ImageFile;
+import no.kristiania.pg3402.gateway.media.MediaIndex;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Card images served by the gateway itself, replacing the hop to the Flask
+ * media-service.
+ *
+ * Frequently requested images are kept in memory, up to cache.max-size bytes
+ * in total; Caffeine's frequency-based admission keeps the hot ones when the
+ * budget is full. Other images are returned as file resources, which Reactor
+ * Netty sends with zero-copy file transfer (sendfile) straight from the page
+ * cache. A miss schedules the file to be read into the cache off the event
+ * loop. Cached copies are keyed by the file's ETag, so a replaced file is
+ * never served from a stale copy.
+ */
+@Service
+@ConditionalOnProperty(name = "gateway.media.enabled", havingValue = "true")
+@Slf4j
+public class ImageService {
+
+    private final MediaIndex mediaIndex;
+    private final long maxCachedFileBytes;
+    private final Cache<String, byte[]> cache;
+
+    public ImageService(MediaIndex mediaIndex,
+                        MeterRegistry meterRegistry,
+                        @Value("${gateway.media.cache.max-size:64MB}") DataSize maxSize,
+                        @Value("${gateway.media.cache.max-file-size:1MB}") DataSize maxFileSize) {
+        this.mediaIndex = mediaIndex;
+        this.maxCachedFileBytes = maxFileSize.toBytes();
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxSize.toBytes())
+                .weigher((String key, byte[] bytes) -> bytes.length)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "gateway-media-cache");
+    }
+
+    public Optional<ImageFile> find(String filename) {
+        return mediaIndex.find(filename);
+    }
+
+    public List<String> imageNames() {
+        return mediaIndex.imageNames();
+    }
+
+    public Resource resource(ImageFile file) {
+        String key = key(file);
+        byte[] bytes = cache.getIfPresent(key);
+        if (bytes != null) {
+            return new ByteArrayResource(bytes);
+        }
+        if (file.size() <= maxCachedFileBytes) {
+            Schedulers.boundedElastic().schedule(() -> load(key, file));
+        }
+        return new FileSystemResource(file.path());
+    }
+
+    private void load(String key, ImageFile file) {
+        // Not getIfPresent: this check is not a request and must not count as a miss
+        if (cache.asMap().containsKey(key)) {
+            return;
+        }
+        try {
+            byte[] bytes = Files.readAllBytes(file.path());
+            // The file may have changed since it was indexed; only keep it under the ETag it matches
+            if (bytes.length == file.size()) {
+                cache.put(key, bytes);
+            }
+        } catch (IOException e) {
+            log.debug("Could not cache image {}: {}", file.name(), e.toString());
+        }
+    }
+
+    private static String key(ImageFile file) {
+        return file.name() + "\n" + file.etag();
+    }
+}
@@ -0,0 +1,192 @@
+package no.kristiania.pg3402.gateway.loadbalancer;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.CompletionContext;
+import org.springframework.cloud.client.loadbalancer.DefaultRequest;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.RequestData;
+import org.springframework.cloud.client.loadbalancer.RequestDataContext;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.util.LinkedMultiValueMap;
+import reactor.core.publisher.Flux;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Drives PowerOfTwoChoicesLoadBalancer and InstanceLoadTracker with closed-loop
+ * clients against simulated instances, one of which answers an order of
+ * magnitude slower than the others, and compares the outcome with round-robin
+ * over the same instances.
+ *
+ * Latencies are simulated by sleeping, since the tracker measures wall-clock
+ * time between onStartRequest and onComplete, exactly as the gateway reports it.
+ */
+class PowerOfTwoChoicesLoadBalancerSimulationTest {
+
+    private static final Duration FAST = Duration.ofMillis(5);
+    private static final Duration SLOW = Duration.ofMillis(80);
+    private static final int CLIENTS = 6;
+    private static final Duration RUN_TIME = Duration.ofMillis(1500);
+
+    private final ServiceInstance fast1 = instance("fast-1", 8081);
+    private final ServiceInstance fast2 = instance("fast-2", 8082);
+    private final ServiceInstance slow = instance("slow", 8083);
+    private final List<ServiceInstance> instances = List.of(fast1, fast2, slow);
+
+    @Test
+    void sendsLessTrafficToTheSlowInstanceAndCutsTailLatencyComparedToRoundRobin() throws InterruptedException {
+        AtomicInteger next = new AtomicInteger();
+        SimulationResult roundRobin = simulate(new InstanceLoadTracker("cards", 5, Duration.ofSeconds(30),
+                        Duration.ofSeconds(10), Duration.ofSeconds(1), null),
+                (request) -> new DefaultResponse(instances.get(Math.floorMod(next.getAndIncrement(), instances.size()))));
+
+        InstanceLoadTracker tracker = new InstanceLoadTracker("cards", 5, Duration.ofSeconds(30),
+                Duration.ofSeconds(10), Duration.ofSeconds(1), null);
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        beanFactory.addBean("supplier", new FixedInstanceListSupplier(instances));
+        PowerOfTwoChoicesLoadBalancer balancer = new PowerOfTwoChoicesLoadBalancer(
+                beanFactory.getBeanProvider(ServiceInstanceListSupplier.class), tracker);
+        SimulationResult powerOfTwo = simulate(tracker, request -> balancer.choose(request).block());
+
+        assertThat(roundRobin.share(slow)).isGreaterThan(0.3);
+        assertThat(powerOfTwo.share(slow))
+                .as("slow instance share (round-robin %.3f)", roundRobin.share(slow))
+                .isLessThan(roundRobin.share(slow) / 3);
+        assertThat(powerOfTwo.percentileMillis(0.99))
+                .as("p99 in ms (round-robin %.1f)", roundRobin.percentileMillis(0.99))
+                .isLessThan(roundRobin.percentileMillis(0.99) / 2);
+        assertThat(powerOfTwo.requests()).isGreaterThan(roundRobin.requests());
+        assertThat(tracker.inFlight(fast1) + tracker.inFlight(fast2) + tracker.inFlight(slow)).isZero();
+    }
+
+    @Test
+    void triesTheSlowInstanceAgainOnceItRecovers() throws InterruptedException {
+        InstanceLoadTracker tracker = new InstanceLoadTracker("cards", 5, Duration.ofSeconds(30),
+                Duration.ofMillis(100), Duration.ofSeconds(1), null);
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        beanFactory.addBean("supplier", new FixedInstanceListSupplier(instances));
+        PowerOfTwoChoicesLoadBalancer balancer = new PowerOfTwoChoicesLoadBalancer(
+                beanFactory.getBeanProvider(ServiceInstanceListSupplier.class), tracker);
+
+        // One slow response (a GC pause), then the instance is as fast as the others
+        complete(tracker, request(), new DefaultResponse(slow), SLOW);
+        Map<ServiceInstance, Duration> recovered = Map.of(fast1, FAST, fast2, FAST, slow, FAST);
+        SimulationResult result = simulate(tracker, request -> balancer.choose(request).block(), recovered);
+
+        // Once the pause has decayed away the instance gets close to its fair third again
+        assertThat(result.share(slow)).isGreaterThan(0.2);
+    }
+
+    private SimulationResult simulate(InstanceLoadTracker tracker,
+                                      Function<Request<RequestDataContext>, Response<ServiceInstance>> chooser)
+            throws InterruptedException {
+        return simulate(tracker, chooser, Map.of(fast1, FAST, fast2, FAST, slow, SLOW));
+    }
+
+    private SimulationResult simulate(InstanceLoadTracker tracker,
+                                      Function<Request<RequestDataContext>, Response<ServiceInstance>> chooser,
+                                      Map<ServiceInstance, Duration> latencies) throws InterruptedException {
+        Map<String, AtomicLong> counts = new ConcurrentHashMap<>();
+        List<Long> latencyNanos = Collections.synchronizedList(new ArrayList<>());
+        long deadline = System.nanoTime() + RUN_TIME.toNanos();
+        List<Thread> clients = new ArrayList<>();
+        for (int i = 0; i < CLIENTS; i++) {
+            Thread client = new Thread(() -> {
+                while (System.nanoTime() < deadline) {
+                    Request<RequestDataContext> request = request();
+                    Response<ServiceInstance> response = chooser.apply(request);
+                    ServiceInstance instance = response.getServer();
+                    long start = System.nanoTime();
+                    complete(tracker, request, response, latencies.get(instance));
+                    latencyNanos.add(System.nanoTime() - start);
+                    counts.computeIfAbsent(InstanceLoadTracker.key(instance), key -> new AtomicLong()).incrementAndGet();
+                }
+            }, "client-" + i);
+            clients.add(client);
+            client.start();
+        }
+        for (Thread client : clients) {
+            client.join();
+        }
+        Map<String, Long> perInstance = new HashMap<>();
+        counts.forEach((key, count) -> perInstance.put(key, count.get()));
+        List<Long> sorted = new ArrayList<>(latencyNanos);
+        Collections.sort(sorted);
+        return new SimulationResult(perInstance, sorted);
+    }
+
+    /**
+     * One request as the gateway reports it: start, a response after the
+     * instance's latency (with up to 20% jitter), completion
+     */
+    private static void complete(InstanceLoadTracker tracker, Request<RequestDataContext> request,
+                                 Response<ServiceInstance> response, Duration latency) {
+        tracker.onStartRequest(request, response);
+        long jitter = ThreadLocalRandom.current().nextLong(latency.toNanos() / 5 + 1);
+        try {
+            Thread.sleep(latency.plusNanos(jitter).toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        tracker.onComplete(new CompletionContext<>(CompletionContext.Status.SUCCESS, request, response));
+    }
+
+    private static Request<RequestDataContext> request() {
+        RequestData data = new RequestData(HttpMethod.GET, URI.create("http://cards/api/cards"),
+                new HttpHeaders(), new LinkedMultiValueMap<>(), new HashMap<>());
+        return new DefaultRequest<>(new RequestDataContext(data, "default"));
+    }
+
+    private static ServiceInstance instance(String id, int port) {
+        return new DefaultServiceInstance(id, "cards", "10.0.0." + (port - 8080), port, false);
+    }
+
+    private record SimulationResult(Map<String, Long> counts, List<Long> sortedLatencyNanos) {
+
+        long requests() {
+            return sortedLatencyNanos.size();
+        }
+
+        double share(ServiceInstance instance) {
+            return counts.getOrDefault(InstanceLoadTracker.key(instance), 0L) / (double) requests();
+        }
+
+        double percentileMillis(double percentile) {
+            int index = (int) Math.ceil(percentile * sortedLatencyNanos.size()) - 1;
+            return sortedLatencyNanos.get(Math.max(0, index)) / 1_000_000.0;
+        }
+    }
+
+    private record FixedInstanceListSupplier(List<ServiceInstance> instances) implements ServiceInstanceListSupplier {
+
+        @Override
+        public String getServiceId() {
+            return "cards";
+        }
+
+        @Override
+        public Flux<List<ServiceInstance>> get() {
+            return Flux.just(instances);
+        }
+    }
+}
@@ -5,12 +5,19 @@
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import org.springframework.amqp.core.*;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import no.kristiania.pg3402.catalog.events.CardAddedEvent;
+import no.kristiania.pg3402.catalog.events.CardRemovedEvent;
+import no.kristiania.pg3402.catalog.events.CardUpdatedEvent;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.DefaultJackson2JavaTypeMapper;
+import org.springframework.amqp.support.converter.Jackson2JavaTypeMapper;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.Map;
+
 /**
  * RabbitMQ configuration for Catalog Service
  * This service consumes events published by Collection Service
@@ -22,6 +29,11 @@ public class RabbitMQConfig {
     public static final String QUEUE_NAME = "card.events.queue";
     public static final String ROUTING_KEY = "card.events";
 
+    /**
+     * Collection Service sends its own event class names in the __TypeId__ header
+     */
+    private static final String PUBLISHER_EVENTS_PACKAGE = "no.kristiania.pg3402.collection.events.";
+
     /**
      * Define the exchange (should match Collection Service)
      */
@@ -52,13 +64,25 @@ public Binding binding(Queue cardEventsQueue, TopicExchange cardEventsExchange)
     /**
      * JSON message converter for deserializing events
      * Configured with JavaTimeModule to handle Instant and other Java 8 date/time types
+     * The payload type comes from the __TypeId__ header, mapped to this service's event classes,
+     * so CardEventListener can dispatch on it
      */
     @Bean
     public MessageConverter messageConverter() {
         ObjectMapper objectMapper = new ObjectMapper();
         objectMapper.registerModule(new JavaTimeModule());
         objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
-        return new Jackson2JsonMessageConverter(objectMapper);
+
+        DefaultJackson2JavaTypeMapper typeMapper = new DefaultJackson2JavaTypeMapper();
+        typeMapper.setTypePrecedence(Jackson2JavaTypeMapper.TypePrecedence.TYPE_ID);
+        typeMapper.setIdClassMapping(Map.of(
+                PUBLISHER_EVENTS_PACKAGE + "CardAddedEvent", CardAddedEvent.class,
+                PUBLISHER_EVENTS_PACKAGE + "CardRemovedEvent", CardRemovedEvent.class,
+                PUBLISHER_EVENTS_PACKAGE + "CardUpdatedEvent", CardUpdatedEvent.class));
+
+        Jackson2JsonMessageConverter converter = new Jackson2JsonMessageConverter(objectMapper);
+        converter.setJavaTypeMapper(typeMapper);
+        return converter;
     }
 
     /**
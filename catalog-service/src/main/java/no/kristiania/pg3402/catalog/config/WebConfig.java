@@ -0,0 +1,23 @@
+package no.kristiania.pg3402.catalog.config;
+
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.filter.ShallowEtagHeaderFilter;
+
+@Configuration
+public class WebConfig {
+
+    /**
+     * ETags on catalog reads, so the gateway's response cache can revalidate stale
+     * entries with If-None-Match and get a bodiless 304 when nothing changed
+     */
+    @Bean
+    public FilterRegistrationBean<ShallowEtagHeaderFilter> shallowEtagHeaderFilter() {
+        FilterRegistrationBean<ShallowEtagHeaderFilter> registration =
+                new FilterRegistrationBean<>(new ShallowEtagHeaderFilter());
+        registration.addUrlPatterns("/sets/*", "/cards/*");
+        registration.setName("shallowEtagHeaderFilter");
+        return registration;
+    }
+}
@@ -2,17 +2,25 @@
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import no.kristiania.pg3402.catalog.config.RabbitMQConfig;
 import no.kristiania.pg3402.catalog.events.CardAddedEvent;
 import no.kristiania.pg3402.catalog.events.CardRemovedEvent;
 import no.kristiania.pg3402.catalog.events.CardUpdatedEvent;
+import org.springframework.amqp.rabbit.annotation.RabbitHandler;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.stereotype.Component;
 
 /**
  * Listens to card events published by Collection Service
  * This demonstrates asynchronous communication between microservices
+ *
+ * One listener consumes card.events.queue and dispatches each message to the
+ * handler for its event type (the __TypeId__ header, mapped to these classes in
+ * RabbitMQConfig). Consumer concurrency, prefetch and ack batching are set under
+ * spring.rabbitmq.listener.simple.
  */
 @Component
+@RabbitListener(queues = RabbitMQConfig.QUEUE_NAME)
 @RequiredArgsConstructor
 @Slf4j
 public class CardEventListener {
@@ -25,17 +33,15 @@ public class CardEventListener {
      * - Trigger notifications
      * - Update card popularity statistics
      */
-    @RabbitListener(queues = "card.events.queue")
+    @RabbitHandler
     public void handleCardAddedEvent(CardAddedEvent event) {
-        log.info("=== ASYNC EVENT RECEIVED ===");
-        log.info("Event: CardAdded");
-        log.info("User {} added card {} to their collection", event.getUserId(), event.getCardId());
-        log.info("Quantity: {}, Condition: {}, Reverse Holo: {}",
+        log.info("Event CardAdded: user {} added card {} (quantity: {}, condition: {}, reverse holo: {}) at {}",
+                event.getUserId(),
+                event.getCardId(),
                 event.getQuantity(),
                 event.getCondition(),
-                event.getIsReverseHolo());
-        log.info("Timestamp: {}", event.getTimestamp());
-        log.info("===========================");
+                event.getIsReverseHolo(),
+                event.getTimestamp());
 
         // TODO: In future, implement actual business logic here:
         // - Update card popularity counter
@@ -46,13 +52,12 @@ public void handleCardAddedEvent(CardAddedEvent event) {
     /**
      * Handle CardRemovedEvent
      */
-    @RabbitListener(queues = "card.events.queue")
+    @RabbitHandler
     public void handleCardRemovedEvent(CardRemovedEvent event) {
-        log.info("=== ASYNC EVENT RECEIVED ===");
-        log.info("Event: CardRemoved");
-        log.info("User {} removed card {} from their collection", event.getUserId(), event.getCardId());
-        log.info("Timestamp: {}", event.getTimestamp());
-        log.info("===========================");
+        log.info("Event CardRemoved: user {} removed card {} at {}",
+                event.getUserId(),
+                event.getCardId(),
+                event.getTimestamp());
 
         // TODO: Update statistics, search index, etc.
     }
@@ -60,16 +65,14 @@ public void handleCardRemovedEvent(CardRemovedEvent event) {
     /**
      * Handle CardUpdatedEvent
      */
-    @RabbitListener(queues = "card.events.queue")
+    @RabbitHandler
     public void handleCardUpdatedEvent(CardUpdatedEvent event) {
-        log.info("=== ASYNC EVENT RECEIVED ===");
-        log.info("Event: CardUpdated");
-        log.info("User {} updated card {} in their collection", event.getUserId(), event.getCardId());
-        log.info("New Quantity: {}, New Condition: {}",
+        log.info("Event CardUpdated: user {} updated card {} (quantity: {}, condition: {}) at {}",
+                event.getUserId(),
+                event.getCardId(),
                 event.getNewQuantity(),
-                event.getNewCondition());
-        log.info("Timestamp: {}", event.getTimestamp());
-        log.info("===========================");
+                event.getNewCondition(),
+                event.getTimestamp());
 
         // TODO: Update search index, analytics, etc.
     }
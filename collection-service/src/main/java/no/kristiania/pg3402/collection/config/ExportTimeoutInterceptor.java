@@ -0,0 +1,42 @@
+package no.kristiania.pg3402.collection.config;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.async.AsyncWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+
+/**
+ * Gives streamed exports their own async timeout (collection.export.timeout), so
+ * spring.mvc.async.request-timeout can stay short for every other async request.
+ * Export endpoints call {@link #markExport} before returning their StreamingResponseBody.
+ */
+@Component
+public class ExportTimeoutInterceptor implements CallableProcessingInterceptor {
+
+    private static final String EXPORT_ATTRIBUTE = ExportTimeoutInterceptor.class.getName() + ".export";
+
+    private final long timeoutMillis;
+
+    public ExportTimeoutInterceptor(@Value("${collection.export.timeout:1h}") Duration timeout) {
+        this.timeoutMillis = timeout.toMillis();
+    }
+
+    public static void markExport(HttpServletRequest request) {
+        request.setAttribute(EXPORT_ATTRIBUTE, Boolean.TRUE);
+    }
+
+    @Override
+    public <T> void beforeConcurrentHandling(NativeWebRequest request, Callable<T> task) {
+        // Called with the async request before async processing starts, so the timeout still applies
+        if (request instanceof AsyncWebRequest asyncRequest
+                && request.getAttribute(EXPORT_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST) != null) {
+            asyncRequest.setTimeout(timeoutMillis);
+        }
+    }
+}
@@ -13,7 +13,8 @@
 
 /**
  * RabbitMQ configuration for Collection Service
- * This service publishes events when cards are added/removed/updated
+ * This service publishes events when cards are added/removed/updated, and
+ * fans committed collection changes out to its own replicas
  */
 @Configuration
 public class RabbitMQConfig {
@@ -22,6 +23,11 @@ public class RabbitMQConfig {
     public static final String QUEUE_NAME = "card.events.queue";
     public static final String ROUTING_KEY = "card.events";
 
+    /**
+     * Fanout of committed collection changes between collection-service replicas
+     */
+    public static final String CHANGES_EXCHANGE_NAME = "collection.changes.exchange";
+
     /**
      * Define the exchange (topic exchange for flexible routing)
      */
@@ -49,6 +55,24 @@ public Binding binding(Queue cardEventsQueue, TopicExchange cardEventsExchange)
                 .with(ROUTING_KEY);
     }
 
+    @Bean
+    public FanoutExchange collectionChangesExchange() {
+        return new FanoutExchange(CHANGES_EXCHANGE_NAME);
+    }
+
+    /**
+     * One server-named, exclusive queue per replica, deleted when the replica disconnects
+     */
+    @Bean
+    public Queue collectionChangesQueue() {
+        return new AnonymousQueue();
+    }
+
+    @Bean
+    public Binding collectionChangesBinding(Queue collectionChangesQueue, FanoutExchange collectionChangesExchange) {
+        return BindingBuilder.bind(collectionChangesQueue).to(collectionChangesExchange);
+    }
+
     /**
      * JSON message converter for serializing events
      * Configured with JavaTimeModule to handle Instant and other Java 8 date/time types
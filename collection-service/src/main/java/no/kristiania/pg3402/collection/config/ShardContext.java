@@ -0,0 +1,29 @@
+package no.kristiania.pg3402.collection.config;
+
+/**
+ * Shard bound to the current thread. ShardRoutingDataSource reads it when a
+ * connection is first needed; bind it through ShardRouter rather than directly.
+ */
+public final class ShardContext {
+
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+    private ShardContext() {
+    }
+
+    public static String current() {
+        return CURRENT.get();
+    }
+
+    public static void set(String shard) {
+        if (shard == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(shard);
+        }
+    }
+
+    public static void clear() {
+        CURRENT.remove();
+    }
+}
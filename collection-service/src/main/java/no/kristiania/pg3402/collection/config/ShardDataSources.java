@@ -0,0 +1,54 @@
+package no.kristiania.pg3402.collection.config;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The physical datasource of every shard, in configuration order.
+ * The first shard is the primary: it also holds the persisted shard ranges.
+ */
+public class ShardDataSources {
+
+    public static final String DEFAULT_SHARD = "default";
+
+    private final Map<String, DataSource> dataSources;
+
+    public ShardDataSources(Map<String, DataSource> dataSources) {
+        if (dataSources.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard must be configured");
+        }
+        this.dataSources = Collections.unmodifiableMap(new LinkedHashMap<>(dataSources));
+    }
+
+    public static ShardDataSources single(DataSource dataSource) {
+        return new ShardDataSources(Map.of(DEFAULT_SHARD, dataSource));
+    }
+
+    public List<String> names() {
+        return new ArrayList<>(dataSources.keySet());
+    }
+
+    public String primaryName() {
+        return dataSources.keySet().iterator().next();
+    }
+
+    public DataSource primary() {
+        return dataSources.get(primaryName());
+    }
+
+    public DataSource get(String shard) {
+        DataSource dataSource = dataSources.get(shard);
+        if (dataSource == null) {
+            throw new IllegalArgumentException("Unknown shard: " + shard);
+        }
+        return dataSource;
+    }
+
+    public Map<String, DataSource> asMap() {
+        return dataSources;
+    }
+}
@@ -0,0 +1,15 @@
+package no.kristiania.pg3402.collection.config;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+/**
+ * Picks the shard bound in ShardContext. Unbound access (startup schema
+ * validation, health checks) goes to the primary shard.
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource {
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return ShardContext.current();
+    }
+}
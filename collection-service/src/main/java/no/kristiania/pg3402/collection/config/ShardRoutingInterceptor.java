@@ -0,0 +1,49 @@
+package no.kristiania.pg3402.collection.config;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import no.kristiania.pg3402.collection.exception.InvalidCollectionQueryException;
+import no.kristiania.pg3402.collection.service.ShardRouter;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.Map;
+
+/**
+ * Binds the shard of the {userId} in the request path for the duration of the request
+ */
+@Component
+@RequiredArgsConstructor
+public class ShardRoutingInterceptor implements AsyncHandlerInterceptor {
+
+    private final ShardRouter shardRouter;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        @SuppressWarnings("unchecked")
+        Map<String, String> pathVariables =
+                (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        String userId = pathVariables != null ? pathVariables.get("userId") : null;
+        if (userId != null) {
+            try {
+                shardRouter.bindUser(Long.valueOf(userId));
+            } catch (NumberFormatException e) {
+                throw new InvalidCollectionQueryException("Invalid user ID: " + userId);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        // Async bodies (exports, event streams) run on other threads and bind their own shard
+        shardRouter.unbind();
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        shardRouter.unbind();
+    }
+}
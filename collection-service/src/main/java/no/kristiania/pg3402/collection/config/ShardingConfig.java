@@ -0,0 +1,88 @@
+package no.kristiania.pg3402.collection.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.flywaydb.core.Flyway;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Datasources for sharded collection storage.
+ *
+ * With collection.sharding.enabled=true every configured shard gets its own
+ * connection pool and the application DataSource becomes a router over them.
+ * The router sits behind a lazy proxy, so the physical connection (and with
+ * it the shard) is chosen at the first statement rather than when a
+ * transaction begins, after the caller has bound the user's shard.
+ */
+@Configuration
+@EnableConfigurationProperties(ShardingProperties.class)
+@Slf4j
+public class ShardingConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "collection.sharding.enabled", havingValue = "true")
+    public ShardDataSources shardDataSources(ShardingProperties properties, MeterRegistry meterRegistry) {
+        Map<String, DataSource> dataSources = new LinkedHashMap<>();
+        for (ShardingProperties.Shard shard : properties.getShards()) {
+            HikariDataSource dataSource = new HikariDataSource();
+            dataSource.setPoolName("collection-" + shard.getName());
+            dataSource.setJdbcUrl(shard.getUrl());
+            dataSource.setUsername(shard.getUsername());
+            dataSource.setPassword(shard.getPassword());
+            dataSource.setDriverClassName("org.postgresql.Driver");
+            dataSource.setMaximumPoolSize(shard.getMaxPoolSize());
+            // Per-shard pool metrics (hikaricp_connections_*{pool="collection-<shard>"})
+            dataSource.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+            dataSources.put(shard.getName(), dataSource);
+        }
+        log.info("Sharding enabled with {} shards: {}", dataSources.size(), dataSources.keySet());
+        return new ShardDataSources(dataSources);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "collection.sharding.enabled", havingValue = "false", matchIfMissing = true)
+    public ShardDataSources singleShardDataSources(DataSource dataSource) {
+        return ShardDataSources.single(dataSource);
+    }
+
+    @Bean
+    @Primary
+    @ConditionalOnProperty(name = "collection.sharding.enabled", havingValue = "true")
+    public DataSource dataSource(ShardDataSources shardDataSources) {
+        ShardRoutingDataSource routing = new ShardRoutingDataSource();
+        routing.setTargetDataSources(new HashMap<>(shardDataSources.asMap()));
+        routing.setDefaultTargetDataSource(shardDataSources.primary());
+        routing.setLenientFallback(false);
+        routing.afterPropertiesSet();
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+
+    /**
+     * Apply the schema migrations to every shard, not just the primary
+     */
+    @Bean
+    @ConditionalOnProperty(name = "collection.sharding.enabled", havingValue = "true")
+    public FlywayMigrationStrategy shardedFlywayMigrationStrategy(ShardDataSources shardDataSources) {
+        return flyway -> shardDataSources.asMap().forEach((shard, dataSource) -> {
+            log.info("Migrating shard {}", shard);
+            Flyway.configure()
+                    .configuration(flyway.getConfiguration())
+                    .dataSource(dataSource)
+                    .load()
+                    .migrate();
+        });
+    }
+}
@@ -0,0 +1,58 @@
+package no.kristiania.pg3402.collection.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shard layout for collection data (collection.sharding.*).
+ * With sharding disabled the service uses spring.datasource as its only shard.
+ */
+@Data
+@ConfigurationProperties(prefix = "collection.sharding")
+public class ShardingProperties {
+
+    private boolean enabled = false;
+
+    /**
+     * Points per shard on the consistent-hash ring; more points give a more even spread
+     */
+    private int virtualNodes = 128;
+
+    private List<Shard> shards = new ArrayList<>();
+
+    /**
+     * User ID ranges pinned to a shard, overriding the ring (later entries win)
+     */
+    private List<UserRange> ranges = new ArrayList<>();
+
+    /**
+     * How often each replica polls the routing epoch on the primary shard (ISO-8601)
+     */
+    private Duration routingPollInterval = Duration.ofSeconds(1);
+
+    /**
+     * Replicas not seen for this long are left out of shard moves. A replica that
+     * has not reached the primary shard for half of it rejects writes.
+     */
+    private Duration replicaTimeout = Duration.ofSeconds(15);
+
+    @Data
+    public static class Shard {
+        private String name;
+        private String url;
+        private String username;
+        private String password;
+        private int maxPoolSize = 10;
+    }
+
+    @Data
+    public static class UserRange {
+        private long from;
+        private long to;
+        private String shard;
+    }
+}
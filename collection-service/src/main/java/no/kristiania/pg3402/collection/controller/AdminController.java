@@ -0,0 +1,137 @@
+package no.kristiania.pg3402.collection.controller;
+
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import no.kristiania.pg3402.collection.config.ExportTimeoutInterceptor;
+import no.kristiania.pg3402.collection.dto.OwnershipIndexStats;
+import no.kristiania.pg3402.collection.dto.ShardMoveResult;
+import no.kristiania.pg3402.collection.service.CardOwnershipIndex;
+import no.kristiania.pg3402.collection.service.CollectionExportService;
+import no.kristiania.pg3402.collection.service.RecommendationService;
+import no.kristiania.pg3402.collection.service.ShardRebalancer;
+import no.kristiania.pg3402.collection.service.ShardRouter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+@RestController
+@RequestMapping("/api/collections/admin")
+@RequiredArgsConstructor
+@Slf4j
+public class AdminController {
+
+    private final CollectionExportService collectionExportService;
+    private final CardOwnershipIndex cardOwnershipIndex;
+    private final RecommendationService recommendationService;
+    private final ShardRouter shardRouter;
+    private final ShardRebalancer shardRebalancer;
+
+    /**
+     * Stream every user's collection as CSV or NDJSON, read in parallel user ID ranges
+     * GET /api/collections/admin/export?format=csv|ndjson&partitions=4&gzip=true
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportAllCollections(
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(defaultValue = "4") int partitions,
+            @RequestParam(defaultValue = "false") boolean gzip,
+            HttpServletRequest request) {
+        log.info("Admin: Exporting all collections as {} with {} partitions", format, partitions);
+        ExportTimeoutInterceptor.markExport(request);
+        CollectionExportService.ExportFormat exportFormat = CollectionExportService.ExportFormat.parse(format);
+
+        StreamingResponseBody body = out -> {
+            if (gzip) {
+                try (GZIPOutputStream gzipOut = new GZIPOutputStream(out, 8192)) {
+                    collectionExportService.exportAll(exportFormat, partitions, gzipOut);
+                }
+            } else {
+                collectionExportService.exportAll(exportFormat, partitions, out);
+            }
+        };
+
+        String filename = String.format("collections.%s%s", exportFormat.getExtension(), gzip ? ".gz" : "");
+        return ResponseEntity.ok()
+                .contentType(gzip ? MediaType.parseMediaType("application/gzip")
+                        : MediaType.parseMediaType(exportFormat.getContentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                .body(body);
+    }
+
+    /**
+     * Size and memory footprint of the card ownership index
+     * GET /api/collections/admin/ownership-index
+     */
+    @GetMapping("/ownership-index")
+    public ResponseEntity<OwnershipIndexStats> getOwnershipIndexStats() {
+        log.info("Admin: Getting ownership index stats");
+        return ResponseEntity.ok(cardOwnershipIndex.getStats());
+    }
+
+    /**
+     * Rebuild the card ownership index from the database
+     * POST /api/collections/admin/ownership-index/rebuild
+     */
+    @PostMapping("/ownership-index/rebuild")
+    public ResponseEntity<OwnershipIndexStats> rebuildOwnershipIndex() {
+        log.info("Admin: Rebuilding ownership index");
+        if (!cardOwnershipIndex.rebuild()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(cardOwnershipIndex.getStats());
+        }
+        return ResponseEntity.ok(cardOwnershipIndex.getStats());
+    }
+
+    /**
+     * Rebuild the co-ownership recommendation matrix from the database
+     * POST /api/collections/admin/recommendations/rebuild
+     */
+    @PostMapping("/recommendations/rebuild")
+    public ResponseEntity<Void> rebuildRecommendations() {
+        log.info("Admin: Rebuilding recommendation matrix");
+        if (!recommendationService.rebuild()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+        return ResponseEntity.noContent().build();
+    }
+
+    /**
+     * Shards and pinned user ranges (newest first)
+     * GET /api/collections/admin/shards
+     */
+    @GetMapping("/shards")
+    public ResponseEntity<Map<String, Object>> getShards() {
+        log.info("Admin: Getting shard layout");
+        return ResponseEntity.ok(Map.of(
+                "shards", shardRouter.shardNames(),
+                "ranges", shardRouter.getRanges()));
+    }
+
+    /**
+     * Shard a user's collection lives on
+     * GET /api/collections/admin/shards/users/{userId}
+     */
+    @GetMapping("/shards/users/{userId}")
+    public ResponseEntity<Map<String, Object>> getUserShard(@PathVariable Long userId) {
+        return ResponseEntity.ok(Map.of("userId", userId, "shard", shardRouter.shardFor(userId)));
+    }
+
+    /**
+     * Move an inclusive user ID range to another shard
+     * POST /api/collections/admin/shards/move?fromUserId=1&toUserId=1000&shard=shard-1
+     */
+    @PostMapping("/shards/move")
+    public ResponseEntity<ShardMoveResult> moveShardRange(
+            @RequestParam long fromUserId,
+            @RequestParam long toUserId,
+            @RequestParam String shard) {
+        log.info("Admin: Moving users {}..{} to shard {}", fromUserId, toUserId, shard);
+        return ResponseEntity.ok(shardRebalancer.moveRange(fromUserId, toUserId, shard));
+    }
+}
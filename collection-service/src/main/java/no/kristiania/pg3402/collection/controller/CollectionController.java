@@ -1,16 +1,42 @@
 package no.kristiania.pg3402.collection.controller;
 
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import no.kristiania.pg3402.collection.config.ExportTimeoutInterceptor;
+import no.kristiania.pg3402.collection.dto.CardOwnersResponse;
+import no.kristiania.pg3402.collection.dto.CollectionChangesResponse;
+import no.kristiania.pg3402.collection.dto.ImportSummary;
+import no.kristiania.pg3402.collection.dto.RecommendationsResponse;
+import no.kristiania.pg3402.collection.dto.UserCardPage;
+import no.kristiania.pg3402.collection.dto.UserCardQuery;
 import no.kristiania.pg3402.collection.dto.UserCardRequest;
 import no.kristiania.pg3402.collection.dto.UserCardResponse;
+import no.kristiania.pg3402.collection.model.UserCard;
+import no.kristiania.pg3402.collection.service.CardOwnershipIndex;
+import no.kristiania.pg3402.collection.service.CollectionEventBroadcaster;
+import no.kristiania.pg3402.collection.service.CollectionExportService;
+import no.kristiania.pg3402.collection.service.CollectionImportService;
+import no.kristiania.pg3402.collection.service.CollectionQueryService;
 import no.kristiania.pg3402.collection.service.CollectionService;
+import no.kristiania.pg3402.collection.service.RecommendationService;
+import org.springframework.data.domain.Sort;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api/collections")
@@ -19,6 +45,12 @@
 public class CollectionController {
 
     private final CollectionService collectionService;
+    private final CollectionQueryService collectionQueryService;
+    private final CollectionExportService collectionExportService;
+    private final CollectionImportService collectionImportService;
+    private final CollectionEventBroadcaster collectionEventBroadcaster;
+    private final CardOwnershipIndex cardOwnershipIndex;
+    private final RecommendationService recommendationService;
 
     /**
      * Add a card to user's collection
@@ -44,6 +76,83 @@ public ResponseEntity<List<UserCardResponse>> getUserCollection(@PathVariable Lo
         return ResponseEntity.ok(collection);
     }
 
+    /**
+     * Query a user's collection with filters, sorting and keyset pagination
+     * GET /api/collections/users/{userId}/cards/query?condition=MINT&reverseHolo=true&limit=50
+     * Follow-up pages: pass the previous response's nextCursor as ?cursor=
+     */
+    @GetMapping("/users/{userId}/cards/query")
+    public ResponseEntity<UserCardPage> queryUserCards(
+            @PathVariable Long userId,
+            @RequestParam(required = false) UserCard.CardCondition condition,
+            @RequestParam(required = false) Boolean reverseHolo,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime acquiredFrom,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime acquiredTo,
+            @RequestParam(required = false) Integer quantityGreaterThan,
+            @RequestParam(defaultValue = "CARD_ID") UserCardQuery.SortField sort,
+            @RequestParam(defaultValue = "ASC") Sort.Direction direction,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit) {
+        log.info("Request to query collection for user {}", userId);
+        UserCardQuery query = UserCardQuery.builder()
+                .condition(condition)
+                .isReverseHolo(reverseHolo)
+                .acquiredFrom(acquiredFrom)
+                .acquiredTo(acquiredTo)
+                .quantityGreaterThan(quantityGreaterThan)
+                .sort(sort)
+                .direction(direction)
+                .cursor(cursor)
+                .limit(limit)
+                .build();
+        return ResponseEntity.ok(collectionQueryService.queryUserCards(userId, query));
+    }
+
+    /**
+     * Stream a user's collection as CSV or NDJSON, optionally gzipped
+     * GET /api/collections/users/{userId}/cards/export?format=csv|ndjson&gzip=true
+     */
+    @GetMapping("/users/{userId}/cards/export")
+    public ResponseEntity<StreamingResponseBody> exportUserCollection(
+            @PathVariable Long userId,
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(defaultValue = "false") boolean gzip,
+            HttpServletRequest request) {
+        log.info("Request to export collection for user {} as {}", userId, format);
+        ExportTimeoutInterceptor.markExport(request);
+        CollectionExportService.ExportFormat exportFormat = CollectionExportService.ExportFormat.parse(format);
+
+        StreamingResponseBody body = out -> {
+            if (gzip) {
+                try (GZIPOutputStream gzipOut = new GZIPOutputStream(out, 8192)) {
+                    collectionExportService.exportUser(userId, exportFormat, gzipOut);
+                }
+            } else {
+                collectionExportService.exportUser(userId, exportFormat, out);
+            }
+        };
+
+        String filename = String.format("collection-%d.%s%s", userId, exportFormat.getExtension(), gzip ? ".gz" : "");
+        return ResponseEntity.ok()
+                .contentType(gzip ? MediaType.parseMediaType("application/gzip")
+                        : MediaType.parseMediaType(exportFormat.getContentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                .body(body);
+    }
+
+    /**
+     * Bulk import cards from CSV (header: card_id,quantity,condition,is_reverse_holo,notes,acquired_date)
+     * POST /api/collections/users/{userId}/cards/import
+     */
+    @PostMapping(value = "/users/{userId}/cards/import", consumes = {"text/csv", MediaType.TEXT_PLAIN_VALUE})
+    public ResponseEntity<ImportSummary> importCards(
+            @PathVariable Long userId,
+            InputStream csv) throws IOException {
+        log.info("Request to import cards into user {}'s collection", userId);
+        ImportSummary summary = collectionImportService.importCards(userId, csv);
+        return ResponseEntity.ok(summary);
+    }
+
     /**
      * Get a specific card from user's collection
      * GET /api/collections/users/{userId}/cards/{cardId}
@@ -95,6 +204,50 @@ public ResponseEntity<CollectionService.CollectionStats> getCollectionStats(@Pat
         return ResponseEntity.ok(stats);
     }
 
+    /**
+     * Recompute collection statistics for a user from their cards
+     * POST /api/collections/users/{userId}/stats/repair
+     */
+    @PostMapping("/users/{userId}/stats/repair")
+    public ResponseEntity<CollectionService.CollectionStats> repairCollectionStats(@PathVariable Long userId) {
+        log.info("Request to repair collection stats for user {}", userId);
+        CollectionService.CollectionStats stats = collectionService.repairCollectionStats(userId);
+        return ResponseEntity.ok(stats);
+    }
+
+    /**
+     * Get changes to a user's collection since a sequence number (incremental sync)
+     * GET /api/collections/users/{userId}/changes?since=0&limit=1000
+     */
+    @GetMapping("/users/{userId}/changes")
+    public ResponseEntity<CollectionChangesResponse> getChanges(
+            @PathVariable Long userId,
+            @RequestParam(defaultValue = "0") long since,
+            @RequestParam(defaultValue = "1000") int limit) {
+        log.info("Request to get changes for user {} since {}", userId, since);
+        int boundedLimit = Math.max(1, Math.min(limit, 5000));
+        CollectionChangesResponse changes = collectionService.getChangesSince(userId, since, boundedLimit);
+        return ResponseEntity.ok(changes);
+    }
+
+    /**
+     * Stream changes to a user's collection as Server-Sent Events
+     * GET /api/collections/users/{userId}/events
+     * Each "change" event carries a CollectionChange with its sequence number as the event ID;
+     * a "resync" event means deltas were skipped and the client should call /changes?since=
+     */
+    @GetMapping(value = "/users/{userId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamEvents(
+            @PathVariable Long userId,
+            @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        log.info("Request to stream collection events for user {}", userId);
+        SseEmitter emitter = collectionEventBroadcaster.subscribe(userId, lastEventId);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CACHE_CONTROL, "no-cache")
+                .header("X-Accel-Buffering", "no")
+                .body(emitter);
+    }
+
     /**
      * Get list of card IDs owned by a user (for progress service)
      * GET /api/collections/users/{userId}/card-ids
@@ -105,4 +258,42 @@ public ResponseEntity<List<Long>> getUserCardIds(@PathVariable Long userId) {
         List<Long> cardIds = collectionService.getUserCardIds(userId);
         return ResponseEntity.ok(cardIds);
     }
+
+    /**
+     * Count the users owning a card (answered from the in-memory ownership index)
+     * GET /api/collections/cards/{cardId}/owners/count
+     */
+    @GetMapping("/cards/{cardId}/owners/count")
+    public ResponseEntity<Map<String, Long>> countCardOwners(@PathVariable Long cardId) {
+        log.info("Request to count owners of card {}", cardId);
+        long owners = cardOwnershipIndex.countOwners(cardId);
+        return ResponseEntity.ok(Map.of("cardId", cardId, "ownerCount", owners));
+    }
+
+    /**
+     * List the users owning a card, in ascending user ID order
+     * GET /api/collections/cards/{cardId}/owners?after=0&limit=1000
+     */
+    @GetMapping("/cards/{cardId}/owners")
+    public ResponseEntity<CardOwnersResponse> getCardOwners(
+            @PathVariable Long cardId,
+            @RequestParam(required = false) Long after,
+            @RequestParam(defaultValue = "1000") int limit) {
+        log.info("Request to list owners of card {} after {}", cardId, after);
+        CardOwnersResponse owners = cardOwnershipIndex.findOwners(cardId, after, limit);
+        return ResponseEntity.ok(owners);
+    }
+
+    /**
+     * Recommend cards the user does not own, based on what collectors of their cards also own
+     * GET /api/collections/users/{userId}/recommendations?limit=20
+     */
+    @GetMapping("/users/{userId}/recommendations")
+    public ResponseEntity<RecommendationsResponse> getRecommendations(
+            @PathVariable Long userId,
+            @RequestParam(defaultValue = "20") int limit) {
+        log.info("Request to get recommendations for user {}", userId);
+        RecommendationsResponse recommendations = recommendationService.recommend(userId, limit);
+        return ResponseEntity.ok(recommendations);
+    }
 }
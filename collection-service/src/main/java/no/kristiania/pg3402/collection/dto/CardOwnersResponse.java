@@ -0,0 +1,25 @@
+package no.kristiania.pg3402.collection.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Owners of a card, in ascending user ID order.
+ * Follow-up pages: pass nextAfter as ?after= on the next request.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CardOwnersResponse {
+
+    private Long cardId;
+    private long ownerCount;
+    private List<Long> userIds;
+    private Long nextAfter;
+    private boolean hasMore;
+}
@@ -0,0 +1,21 @@
+package no.kristiania.pg3402.collection.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CardRecommendation {
+
+    private Long cardId;
+    private double score;
+
+    /**
+     * Number of the user's own cards that point to this card
+     */
+    private int supportingCards;
+}
@@ -0,0 +1,30 @@
+package no.kristiania.pg3402.collection.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One entry in a user's change sequence: the card's current state, or a tombstone if it was removed
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CollectionChange {
+
+    private long seq;
+    private Long cardId;
+    private Operation operation;
+
+    /**
+     * Current state of the card (null for REMOVE)
+     */
+    private UserCardResponse card;
+
+    public enum Operation {
+        UPSERT,
+        REMOVE
+    }
+}
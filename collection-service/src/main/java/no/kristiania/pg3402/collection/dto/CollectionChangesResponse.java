@@ -0,0 +1,26 @@
+package no.kristiania.pg3402.collection.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Changes to a user's collection after a given sequence number.
+ * Clients store nextSince and pass it as ?since= on their next sync.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CollectionChangesResponse {
+
+    private Long userId;
+    private long since;
+    private long nextSince;
+    private long latestSeq;
+    private boolean hasMore;
+    private List<CollectionChange> changes;
+}
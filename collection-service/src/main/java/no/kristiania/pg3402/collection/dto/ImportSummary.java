@@ -0,0 +1,34 @@
+package no.kristiania.pg3402.collection.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Result of a bulk collection import
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ImportSummary {
+
+    private Long userId;
+    private long totalRows;
+    private long inserted;
+    private long merged;
+    private long rejected;
+    private long durationMillis;
+    private List<RejectedRow> rejections;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class RejectedRow {
+        private long row;
+        private String reason;
+    }
+}
@@ -0,0 +1,26 @@
+package no.kristiania.pg3402.collection.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Size and memory footprint of the card ownership index
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class OwnershipIndexStats {
+
+    private boolean ready;
+    private long cards;
+    private long ownerships;
+    private long sizeInBytes;
+    private double bytesPerOwnership;
+    private LocalDateTime lastRebuiltAt;
+    private long lastRebuildMillis;
+}
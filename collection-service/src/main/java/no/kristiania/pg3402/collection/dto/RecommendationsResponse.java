@@ -0,0 +1,23 @@
+package no.kristiania.pg3402.collection.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Cards the user does not own, ranked by how often they are co-owned with the user's cards
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class RecommendationsResponse {
+
+    private Long userId;
+    private List<CardRecommendation> recommendations;
+    private LocalDateTime matrixRebuiltAt;
+}
@@ -0,0 +1,29 @@
+package no.kristiania.pg3402.collection.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ShardMoveResult {
+
+    private ShardRange range;
+
+    /**
+     * Users moved, per source shard
+     */
+    private Map<String, Integer> usersMoved;
+    private long rowsCopied;
+    private long durationMillis;
+
+    /**
+     * False if a replica did not acknowledge the new routing in time and the source rows were kept
+     */
+    private boolean sourceRowsDeleted;
+}
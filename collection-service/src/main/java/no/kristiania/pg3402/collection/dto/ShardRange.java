@@ -0,0 +1,24 @@
+package no.kristiania.pg3402.collection.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Inclusive user ID range pinned to a shard
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ShardRange {
+
+    private long fromUserId;
+    private long toUserId;
+    private String shard;
+
+    public boolean contains(long userId) {
+        return userId >= fromUserId && userId <= toUserId;
+    }
+}
@@ -0,0 +1,22 @@
+package no.kristiania.pg3402.collection.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * One page of a collection query. Pass nextCursor back to get the following page.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class UserCardPage {
+
+    private List<UserCardResponse> items;
+    private String nextCursor;
+    private boolean hasMore;
+}
@@ -0,0 +1,57 @@
+package no.kristiania.pg3402.collection.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.RequiredArgsConstructor;
+import no.kristiania.pg3402.collection.model.UserCard;
+import org.springframework.data.domain.Sort;
+
+import java.time.LocalDateTime;
+
+/**
+ * Filters, sort order and keyset position for a collection query
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class UserCardQuery {
+
+    private UserCard.CardCondition condition;
+    private Boolean isReverseHolo;
+    private LocalDateTime acquiredFrom;
+    private LocalDateTime acquiredTo;
+    private Integer quantityGreaterThan;
+
+    @Builder.Default
+    private SortField sort = SortField.CARD_ID;
+
+    @Builder.Default
+    private Sort.Direction direction = Sort.Direction.ASC;
+
+    /**
+     * Opaque cursor from the previous page's nextCursor (null for the first page)
+     */
+    private String cursor;
+
+    @Builder.Default
+    private int limit = 50;
+
+    /**
+     * Sortable columns. card_id is unique per user, so it is always appended
+     * as the tie-breaker that makes the keyset position unambiguous.
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public enum SortField {
+        CARD_ID("cardId"),
+        ACQUIRED_DATE("acquiredDate"),
+        UPDATED_AT("updatedAt"),
+        QUANTITY("quantity");
+
+        private final String property;
+    }
+}
@@ -0,0 +1,64 @@
+package no.kristiania.pg3402.collection.events;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import no.kristiania.pg3402.collection.dto.CollectionChange;
+
+import java.util.List;
+
+/**
+ * In-process event published by CollectionService for every committed change.
+ * Listeners use {@code @TransactionalEventListener} so they only see committed
+ * changes. CollectionChangeRelay forwards it to the other replicas, which
+ * republish it locally with {@code remote} set (outside any transaction, so
+ * listeners that want remote changes set {@code fallbackExecution}).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CollectionChangedEvent {
+
+    private Long userId;
+
+    /**
+     * Sequence number of the last change in this event
+     */
+    private long latestSeq;
+
+    /**
+     * Individual changes, or empty for bulk changes (imports) where
+     * listeners should resync from the change log instead
+     */
+    private List<CollectionChange> changes;
+
+    /**
+     * Cards that were not in the collection before this change (quantity or
+     * condition updates of owned cards are not listed)
+     */
+    private List<Long> addedCardIds;
+
+    /**
+     * True if the change was committed by another replica
+     */
+    @JsonIgnore
+    private boolean remote;
+
+    public static CollectionChangedEvent added(Long userId, CollectionChange change) {
+        return new CollectionChangedEvent(userId, change.getSeq(), List.of(change), List.of(change.getCardId()), false);
+    }
+
+    public static CollectionChangedEvent changed(Long userId, CollectionChange change) {
+        return new CollectionChangedEvent(userId, change.getSeq(), List.of(change), List.of(), false);
+    }
+
+    public static CollectionChangedEvent bulkAdded(Long userId, long latestSeq, List<Long> addedCardIds) {
+        return new CollectionChangedEvent(userId, latestSeq, List.of(), addedCardIds, false);
+    }
+
+    @JsonIgnore
+    public boolean isBulk() {
+        return changes.isEmpty();
+    }
+}
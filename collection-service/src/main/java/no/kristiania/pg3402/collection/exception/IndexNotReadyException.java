@@ -0,0 +1,7 @@
+package no.kristiania.pg3402.collection.exception;
+
+public class IndexNotReadyException extends RuntimeException {
+    public IndexNotReadyException(String message) {
+        super(message);
+    }
+}
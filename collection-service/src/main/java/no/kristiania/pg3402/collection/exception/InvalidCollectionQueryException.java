@@ -0,0 +1,7 @@
+package no.kristiania.pg3402.collection.exception;
+
+public class InvalidCollectionQueryException extends RuntimeException {
+    public InvalidCollectionQueryException(String message) {
+        super(message);
+    }
+}
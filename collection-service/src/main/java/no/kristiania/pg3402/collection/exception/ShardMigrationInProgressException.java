@@ -0,0 +1,7 @@
+package no.kristiania.pg3402.collection.exception;
+
+public class ShardMigrationInProgressException extends RuntimeException {
+    public ShardMigrationInProgressException(String message) {
+        super(message);
+    }
+}
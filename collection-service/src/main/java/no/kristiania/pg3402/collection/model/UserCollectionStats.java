@@ -0,0 +1,53 @@
+package no.kristiania.pg3402.collection.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * Collection counters for one (user, condition, reverse holo) bucket.
+ * Maintained incrementally by CollectionService, so reading a user's stats
+ * touches at most 14 rows instead of aggregating the whole collection.
+ */
+@Entity
+@Table(name = "user_collection_stats")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class UserCollectionStats {
+
+    @EmbeddedId
+    private Bucket id;
+
+    @Column(name = "unique_cards", nullable = false)
+    private Long uniqueCards;
+
+    @Column(name = "total_cards", nullable = false)
+    private Long totalCards;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    @Embeddable
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Bucket implements Serializable {
+
+        @Column(name = "user_id", nullable = false)
+        private Long userId;
+
+        @Enumerated(EnumType.STRING)
+        @Column(nullable = false)
+        private UserCard.CardCondition condition;
+
+        @Column(name = "is_reverse_holo", nullable = false)
+        private Boolean isReverseHolo;
+    }
+}
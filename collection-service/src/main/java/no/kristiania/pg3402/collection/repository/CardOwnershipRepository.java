@@ -0,0 +1,88 @@
+package no.kristiania.pg3402.collection.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Raw (card, owner) scans used to build the in-memory ownership index and
+ * the recommendation matrix.
+ * Must run inside a transaction so the driver streams rows with a cursor
+ * instead of materialising the whole table.
+ */
+@Repository
+public class CardOwnershipRepository {
+
+    private static final int FETCH_SIZE = 10_000;
+
+    private final JdbcTemplate streamingTemplate;
+
+    public CardOwnershipRepository(DataSource dataSource) {
+        this.streamingTemplate = new JdbcTemplate(dataSource);
+        this.streamingTemplate.setFetchSize(FETCH_SIZE);
+    }
+
+    /**
+     * Visit every (cardId, userId) pair in user_cards
+     */
+    public void forEachOwnership(OwnershipVisitor visitor) {
+        RowCallbackHandler handler = rs -> visitor.visit(rs.getLong(1), rs.getLong(2));
+        streamingTemplate.query("SELECT card_id, user_id FROM user_cards", handler);
+    }
+
+    /**
+     * Visit the rows of one hash partition (user_id mod partitions), grouped by
+     * user, with each user's change sequence from the same snapshot. Users
+     * without cards are visited once with a null card ID.
+     */
+    public void forEachOwnershipInPartition(int partitions, int partition, VersionedOwnershipVisitor visitor) {
+        RowCallbackHandler handler = rs -> {
+            long cardId = rs.getLong(1);
+            visitor.visit(rs.wasNull() ? null : cardId, rs.getLong(2), rs.getLong(3));
+        };
+        streamingTemplate.query(
+                "SELECT uc.card_id, COALESCE(uc.user_id, v.user_id) AS user_id, COALESCE(v.last_seq, 0) " +
+                "FROM user_cards uc FULL JOIN user_collection_versions v ON v.user_id = uc.user_id " +
+                "WHERE MOD(COALESCE(uc.user_id, v.user_id), ?) = ? ORDER BY 2",
+                handler, partitions, partition);
+    }
+
+    /**
+     * Get a user's distinct card IDs together with the change sequence they
+     * correspond to, read in one statement so both come from the same snapshot
+     */
+    public OwnedCards findOwnedCards(Long userId) {
+        Set<Long> cardIds = new HashSet<>();
+        long[] lastSeq = new long[1];
+        streamingTemplate.query(
+                "SELECT COALESCE(v.last_seq, 0), uc.card_id FROM (SELECT CAST(? AS BIGINT) AS user_id) u " +
+                "LEFT JOIN user_collection_versions v ON v.user_id = u.user_id " +
+                "LEFT JOIN user_cards uc ON uc.user_id = u.user_id",
+                (RowCallbackHandler) rs -> {
+                    lastSeq[0] = rs.getLong(1);
+                    long cardId = rs.getLong(2);
+                    if (!rs.wasNull()) {
+                        cardIds.add(cardId);
+                    }
+                },
+                userId);
+        return new OwnedCards(lastSeq[0], cardIds);
+    }
+
+    @FunctionalInterface
+    public interface OwnershipVisitor {
+        void visit(long cardId, long userId);
+    }
+
+    @FunctionalInterface
+    public interface VersionedOwnershipVisitor {
+        void visit(Long cardId, long userId, long lastSeq);
+    }
+
+    public record OwnedCards(long lastSeq, Set<Long> cardIds) {
+    }
+}
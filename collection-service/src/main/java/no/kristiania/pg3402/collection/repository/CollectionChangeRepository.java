@@ -0,0 +1,136 @@
+package no.kristiania.pg3402.collection.repository;
+
+import lombok.RequiredArgsConstructor;
+import no.kristiania.pg3402.collection.dto.CollectionChange;
+import no.kristiania.pg3402.collection.dto.UserCardResponse;
+import no.kristiania.pg3402.collection.model.UserCard;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Per-user change sequence backing incremental sync.
+ *
+ * Sequence numbers come from a row in user_collection_versions that stays locked
+ * until the writing transaction commits, so a user's changes become visible in
+ * sequence order without gaps. Write methods must run inside the caller's transaction.
+ */
+@Repository
+@RequiredArgsConstructor
+public class CollectionChangeRepository {
+
+    private static final String RESERVE_SEQUENCE =
+            "INSERT INTO user_collection_versions (user_id, last_seq) VALUES (?, ?) " +
+            "ON CONFLICT (user_id) DO UPDATE SET last_seq = user_collection_versions.last_seq + EXCLUDED.last_seq " +
+            "RETURNING last_seq";
+
+    private static final String RECORD_CHANGE =
+            "INSERT INTO user_card_changes (user_id, card_id, seq, operation, changed_at) " +
+            "VALUES (?, ?, ?, ?, NOW()) " +
+            "ON CONFLICT (user_id, card_id) DO UPDATE SET " +
+            "seq = EXCLUDED.seq, operation = EXCLUDED.operation, changed_at = EXCLUDED.changed_at";
+
+    private static final String RECORD_CHANGES =
+            "INSERT INTO user_card_changes (user_id, card_id, seq, operation, changed_at) " +
+            "SELECT ?, ids.card_id, ? + ids.ord, ?, NOW() FROM unnest(?::BIGINT[]) WITH ORDINALITY AS ids(card_id, ord) " +
+            "ON CONFLICT (user_id, card_id) DO UPDATE SET " +
+            "seq = EXCLUDED.seq, operation = EXCLUDED.operation, changed_at = EXCLUDED.changed_at";
+
+    private static final String FIND_CHANGES_SINCE =
+            "SELECT c.seq, c.card_id, c.operation, uc.id, uc.quantity, uc.condition, uc.is_reverse_holo, " +
+            "       uc.notes, uc.acquired_date, uc.created_at, uc.updated_at " +
+            "FROM user_card_changes c " +
+            "LEFT JOIN user_cards uc ON uc.user_id = c.user_id AND uc.card_id = c.card_id " +
+            "WHERE c.user_id = ? AND c.seq > ? ORDER BY c.seq LIMIT ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Stamp one card with the user's next sequence number
+     *
+     * @return the assigned sequence number
+     */
+    public long record(Long userId, Long cardId, CollectionChange.Operation operation) {
+        long seq = reserve(userId, 1);
+        jdbcTemplate.update(RECORD_CHANGE, userId, cardId, seq, operation.name());
+        return seq;
+    }
+
+    /**
+     * Stamp many cards with consecutive sequence numbers (in list order)
+     *
+     * @return the last assigned sequence number
+     */
+    public long recordAll(Long userId, List<Long> cardIds, CollectionChange.Operation operation) {
+        if (cardIds.isEmpty()) {
+            return latestSeq(userId);
+        }
+        long last = reserve(userId, cardIds.size());
+        long base = last - cardIds.size();
+        jdbcTemplate.update(connection -> {
+            Array ids = connection.createArrayOf("bigint", cardIds.toArray());
+            PreparedStatement statement = connection.prepareStatement(RECORD_CHANGES);
+            statement.setLong(1, userId);
+            statement.setLong(2, base);
+            statement.setString(3, operation.name());
+            statement.setArray(4, ids);
+            return statement;
+        });
+        return last;
+    }
+
+    public long latestSeq(Long userId) {
+        List<Long> seq = jdbcTemplate.queryForList(
+                "SELECT last_seq FROM user_collection_versions WHERE user_id = ?", Long.class, userId);
+        return seq.isEmpty() ? 0 : seq.get(0);
+    }
+
+    /**
+     * Get up to limit changes after the given sequence number, oldest first
+     */
+    public List<CollectionChange> findSince(Long userId, long since, int limit) {
+        return jdbcTemplate.query(FIND_CHANGES_SINCE, (rs, i) -> mapChange(userId, rs), userId, since, limit);
+    }
+
+    private long reserve(Long userId, int count) {
+        Long last = jdbcTemplate.queryForObject(RESERVE_SEQUENCE, Long.class, userId, count);
+        return last != null ? last : count;
+    }
+
+    private CollectionChange mapChange(Long userId, ResultSet rs) throws SQLException {
+        CollectionChange.Operation operation = CollectionChange.Operation.valueOf(rs.getString("operation"));
+        UserCardResponse card = null;
+        // A card re-stamped as REMOVE is gone from user_cards; UPSERT rows always join
+        if (operation == CollectionChange.Operation.UPSERT && rs.getObject("id") != null) {
+            card = UserCardResponse.builder()
+                    .id(rs.getLong("id"))
+                    .userId(userId)
+                    .cardId(rs.getLong("card_id"))
+                    .quantity(rs.getInt("quantity"))
+                    .condition(UserCard.CardCondition.valueOf(rs.getString("condition")))
+                    .isReverseHolo(rs.getBoolean("is_reverse_holo"))
+                    .notes(rs.getString("notes"))
+                    .acquiredDate(toLocalDateTime(rs.getTimestamp("acquired_date")))
+                    .createdAt(toLocalDateTime(rs.getTimestamp("created_at")))
+                    .updatedAt(toLocalDateTime(rs.getTimestamp("updated_at")))
+                    .build();
+        }
+        return CollectionChange.builder()
+                .seq(rs.getLong("seq"))
+                .cardId(rs.getLong("card_id"))
+                .operation(operation)
+                .card(card)
+                .build();
+    }
+
+    private static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toLocalDateTime() : null;
+    }
+}
@@ -0,0 +1,154 @@
+package no.kristiania.pg3402.collection.repository;
+
+import no.kristiania.pg3402.collection.config.ShardDataSources;
+import no.kristiania.pg3402.collection.dto.ShardRange;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
+
+/**
+ * Persisted shard range overrides and the routing epoch replicas acknowledge,
+ * always on the primary shard
+ */
+@Repository
+public class ShardRangeRepository {
+
+    private static final String FROZEN = "FROZEN";
+    private static final String ACTIVE = "ACTIVE";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public ShardRangeRepository(ShardDataSources shardDataSources) {
+        this.jdbcTemplate = new JdbcTemplate(shardDataSources.primary());
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(shardDataSources.primary()));
+    }
+
+    /**
+     * Get the current epoch with the active and frozen ranges, oldest first.
+     * The epoch is read before the ranges, so the ranges are never older than it.
+     */
+    public RoutingTable load() {
+        long epoch = currentEpoch();
+        List<ShardRange> active = new ArrayList<>();
+        List<ShardRange> frozen = new ArrayList<>();
+        jdbcTemplate.query(
+                "SELECT from_user_id, to_user_id, shard, state FROM user_shard_ranges ORDER BY id",
+                rs -> {
+                    ShardRange range = new ShardRange(
+                            rs.getLong("from_user_id"), rs.getLong("to_user_id"), rs.getString("shard"));
+                    (FROZEN.equals(rs.getString("state")) ? frozen : active).add(range);
+                });
+        return new RoutingTable(epoch, active, frozen);
+    }
+
+    public long currentEpoch() {
+        Long epoch = jdbcTemplate.queryForObject("SELECT epoch FROM shard_routing WHERE id = 1", Long.class);
+        return epoch == null ? 0 : epoch;
+    }
+
+    /**
+     * Insert a range as frozen: writes for its users are rejected once replicas
+     * reach the returned epoch. Empty if another move is in progress.
+     */
+    public Optional<RangeChange> freeze(ShardRange range, String instanceId) {
+        return transactionTemplate.execute(status -> {
+            // Serialises moves started on different replicas
+            jdbcTemplate.queryForObject("SELECT epoch FROM shard_routing WHERE id = 1 FOR UPDATE", Long.class);
+            Integer moving = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM user_shard_ranges WHERE state = ?", Integer.class, FROZEN);
+            if (moving != null && moving > 0) {
+                return Optional.empty();
+            }
+            Long id = jdbcTemplate.queryForObject(
+                    "INSERT INTO user_shard_ranges (from_user_id, to_user_id, shard, moved_at, state, moved_by) " +
+                    "VALUES (?, ?, ?, NOW(), ?, ?) RETURNING id",
+                    Long.class, range.getFromUserId(), range.getToUserId(), range.getShard(), FROZEN, instanceId);
+            return Optional.of(new RangeChange(id, bumpEpoch()));
+        });
+    }
+
+    /**
+     * Route the frozen range to its shard and lift the freeze. Empty if the
+     * range is no longer frozen (released as abandoned).
+     */
+    public OptionalLong activate(long rangeId) {
+        return transactionTemplate.execute(status -> {
+            int updated = jdbcTemplate.update(
+                    "UPDATE user_shard_ranges SET state = ?, moved_at = NOW() WHERE id = ? AND state = ?",
+                    ACTIVE, rangeId, FROZEN);
+            return updated == 0 ? OptionalLong.empty() : OptionalLong.of(bumpEpoch());
+        });
+    }
+
+    /**
+     * Drop a frozen range after an aborted move
+     */
+    public long remove(long rangeId) {
+        return transactionTemplate.execute(status -> {
+            jdbcTemplate.update("DELETE FROM user_shard_ranges WHERE id = ?", rangeId);
+            return bumpEpoch();
+        });
+    }
+
+    /**
+     * Record that a replica has applied the epoch; doubles as its heartbeat
+     */
+    public void acknowledge(String instanceId, long epoch) {
+        jdbcTemplate.update(
+                "INSERT INTO shard_routing_replicas (instance_id, epoch, seen_at) VALUES (?, ?, NOW()) " +
+                "ON CONFLICT (instance_id) DO UPDATE SET epoch = EXCLUDED.epoch, seen_at = EXCLUDED.seen_at",
+                instanceId, epoch);
+    }
+
+    /**
+     * Replicas seen within the timeout that have not applied the epoch yet
+     */
+    public List<String> findReplicasBehind(long epoch, Duration replicaTimeout) {
+        return jdbcTemplate.queryForList(
+                "SELECT instance_id FROM shard_routing_replicas " +
+                "WHERE epoch < ? AND seen_at > NOW() - make_interval(secs => ?)",
+                String.class, epoch, replicaTimeout.toMillis() / 1000.0);
+    }
+
+    /**
+     * Drop frozen ranges whose mover has not been seen within the timeout,
+     * so a crashed move does not block writes for good
+     */
+    public int releaseAbandonedFreezes(Duration replicaTimeout) {
+        return transactionTemplate.execute(status -> {
+            int released = jdbcTemplate.update(
+                    "DELETE FROM user_shard_ranges r WHERE r.state = ? AND NOT EXISTS (" +
+                    "SELECT 1 FROM shard_routing_replicas p WHERE p.instance_id = r.moved_by " +
+                    "AND p.seen_at > NOW() - make_interval(secs => ?))",
+                    FROZEN, replicaTimeout.toMillis() / 1000.0);
+            if (released > 0) {
+                bumpEpoch();
+            }
+            return released;
+        });
+    }
+
+    public void forget(String instanceId) {
+        jdbcTemplate.update("DELETE FROM shard_routing_replicas WHERE instance_id = ?", instanceId);
+    }
+
+    private long bumpEpoch() {
+        Long epoch = jdbcTemplate.queryForObject(
+                "UPDATE shard_routing SET epoch = epoch + 1 WHERE id = 1 RETURNING epoch", Long.class);
+        return epoch == null ? 0 : epoch;
+    }
+
+    public record RoutingTable(long epoch, List<ShardRange> active, List<ShardRange> frozen) {
+    }
+
+    public record RangeChange(long rangeId, long epoch) {
+    }
+}
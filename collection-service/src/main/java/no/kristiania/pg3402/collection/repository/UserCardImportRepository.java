@@ -0,0 +1,154 @@
+package no.kristiania.pg3402.collection.repository;
+
+import lombok.RequiredArgsConstructor;
+import no.kristiania.pg3402.collection.dto.ImportSummary;
+import org.postgresql.PGConnection;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Bulk import into user_cards through PostgreSQL COPY.
+ *
+ * CSV is streamed into a transaction-scoped staging table, validated in one
+ * UPDATE and merged into user_cards with one INSERT ... ON CONFLICT.
+ * All methods must run inside the caller's transaction.
+ */
+@Repository
+@RequiredArgsConstructor
+public class UserCardImportRepository {
+
+    /**
+     * Columns expected in the imported CSV (header row required, in this order)
+     */
+    public static final String CSV_COLUMNS = "card_id,quantity,condition,is_reverse_holo,notes,acquired_date";
+
+    private static final String CREATE_STAGING_TABLE =
+            "CREATE TEMP TABLE user_cards_import (" +
+            "line_no BIGINT GENERATED ALWAYS AS IDENTITY, " +
+            "card_id TEXT, quantity TEXT, condition TEXT, is_reverse_holo TEXT, notes TEXT, acquired_date TEXT, " +
+            "reject_reason TEXT) ON COMMIT DROP";
+
+    private static final String COPY_INTO_STAGING =
+            "COPY user_cards_import (" + CSV_COLUMNS + ") FROM STDIN WITH (FORMAT csv, HEADER true)";
+
+    // Nested CASEs keep each cast behind its regex check (boolean operands are not evaluated in order)
+    private static final String VALIDATE_STAGED_ROWS =
+            "UPDATE user_cards_import SET reject_reason = CASE " +
+            "WHEN card_id IS NULL OR btrim(card_id) !~ '^[0-9]{1,18}$' THEN 'invalid card_id' " +
+            "WHEN CASE WHEN quantity IS NULL OR btrim(quantity) = '' THEN FALSE " +
+            "     WHEN btrim(quantity) ~ '^[0-9]{1,6}$' THEN btrim(quantity)::INTEGER < 1 " +
+            "     ELSE TRUE END THEN 'invalid quantity' " +
+            "WHEN condition IS NOT NULL AND btrim(condition) <> '' AND upper(btrim(condition)) NOT IN " +
+            "     ('MINT', 'NEAR_MINT', 'EXCELLENT', 'GOOD', 'LIGHT_PLAYED', 'PLAYED', 'POOR') THEN 'invalid condition' " +
+            "WHEN is_reverse_holo IS NOT NULL AND lower(btrim(is_reverse_holo)) NOT IN " +
+            "     ('', 'true', 'false', 't', 'f', 'yes', 'no', '1', '0') THEN 'invalid is_reverse_holo' " +
+            "WHEN acquired_date IS NOT NULL AND btrim(acquired_date) <> '' " +
+            "     AND import_try_timestamp(acquired_date) IS NULL THEN 'invalid acquired_date' " +
+            "END";
+
+    // Duplicate card IDs are summed by the merge; reject them all if the sum would not fit user_cards.quantity
+    private static final String VALID_CARD_ID =
+            "CASE WHEN btrim(%1$s.card_id) ~ '^[0-9]{1,18}$' THEN btrim(%1$s.card_id)::BIGINT END";
+
+    // Duplicate card IDs are summed by the merge; reject them all if the sum would not fit user_cards.quantity.
+    // The casts are guarded again: the planner may evaluate them before the reject_reason filter.
+    private static final String VALIDATE_FOLDED_QUANTITIES =
+            "UPDATE user_cards_import i SET reject_reason = 'total quantity too large' FROM (" +
+            "  SELECT " + VALID_CARD_ID.formatted("s") + " AS card_id FROM user_cards_import s " +
+            "  WHERE s.reject_reason IS NULL GROUP BY 1 " +
+            "  HAVING SUM(CASE WHEN btrim(s.quantity) ~ '^[0-9]{1,6}$' THEN btrim(s.quantity)::BIGINT ELSE 1 END) > " +
+            Integer.MAX_VALUE +
+            ") oversized WHERE i.reject_reason IS NULL AND " + VALID_CARD_ID.formatted("i") + " = oversized.card_id";
+
+    // Duplicate card IDs within the file are folded into one row (quantities summed,
+    // other attributes from the first occurrence) so the upsert touches each card once.
+    // Cards the user already owns get the imported quantity added to their existing copies;
+    // if that overflows, the statement fails with numeric_value_out_of_range (22003).
+    // Whether a card was new is looked up beforehand (all CTEs see the same snapshot): RETURNING
+    // cannot read xmax of a partitioned table.
+    private static final String MERGE_INTO_USER_CARDS =
+            "WITH valid AS (" +
+            "  SELECT line_no, btrim(card_id)::BIGINT AS card_id, " +
+            "         COALESCE(NULLIF(btrim(quantity), '')::INTEGER, 1) AS quantity, " +
+            "         COALESCE(NULLIF(upper(btrim(condition)), ''), 'NEAR_MINT') AS condition, " +
+            "         COALESCE(lower(btrim(is_reverse_holo)) IN ('true', 't', 'yes', '1'), FALSE) AS is_reverse_holo, " +
+            "         NULLIF(notes, '') AS notes, " +
+            "         import_try_timestamp(acquired_date) AS acquired_date " +
+            "  FROM user_cards_import WHERE reject_reason IS NULL" +
+            "), folded AS (" +
+            "  SELECT DISTINCT ON (card_id) card_id, SUM(quantity) OVER (PARTITION BY card_id) AS quantity, " +
+            "         condition, is_reverse_holo, notes, acquired_date " +
+            "  FROM valid ORDER BY card_id, line_no" +
+            "), existing AS (" +
+            "  SELECT card_id FROM user_cards WHERE user_id = ? AND card_id IN (SELECT card_id FROM folded)" +
+            "), upserted AS (" +
+            "  INSERT INTO user_cards (user_id, card_id, quantity, condition, is_reverse_holo, notes, " +
+            "                          acquired_date, created_at, updated_at) " +
+            "  SELECT ?, card_id, quantity, condition, is_reverse_holo, notes, " +
+            "         COALESCE(acquired_date, NOW()), NOW(), NOW() FROM folded " +
+            "  ON CONFLICT (user_id, card_id) DO UPDATE SET " +
+            "    quantity = user_cards.quantity + EXCLUDED.quantity, updated_at = EXCLUDED.updated_at " +
+            "  RETURNING card_id" +
+            ") SELECT u.card_id, e.card_id IS NULL AS inserted FROM upserted u LEFT JOIN existing e ON e.card_id = u.card_id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DataSource dataSource;
+
+    /**
+     * Create the staging table and stream the CSV into it with COPY
+     *
+     * @return number of staged rows
+     */
+    public long stage(InputStream csv) throws SQLException, IOException {
+        jdbcTemplate.execute(CREATE_STAGING_TABLE);
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        return connection.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY_INTO_STAGING, csv);
+    }
+
+    /**
+     * Mark staged rows that cannot be imported
+     */
+    public void validate() {
+        jdbcTemplate.update(VALIDATE_STAGED_ROWS);
+        jdbcTemplate.update(VALIDATE_FOLDED_QUANTITIES);
+    }
+
+    /**
+     * Get the first rejected rows, in file order
+     */
+    public List<ImportSummary.RejectedRow> findRejections(int limit) {
+        return jdbcTemplate.query(
+                "SELECT line_no, reject_reason FROM user_cards_import WHERE reject_reason IS NOT NULL " +
+                "ORDER BY line_no LIMIT ?",
+                (rs, i) -> new ImportSummary.RejectedRow(rs.getLong("line_no"), rs.getString("reject_reason")),
+                limit);
+    }
+
+    public long countRejections() {
+        Long count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM user_cards_import WHERE reject_reason IS NOT NULL", Long.class);
+        return count != null ? count : 0;
+    }
+
+    /**
+     * Upsert all valid staged rows into the user's collection
+     *
+     * @return one entry per affected card, flagged as inserted (new) or merged (existing)
+     */
+    public List<MergedCard> merge(Long userId) {
+        return jdbcTemplate.query(MERGE_INTO_USER_CARDS,
+                (rs, i) -> new MergedCard(rs.getLong("card_id"), rs.getBoolean("inserted")),
+                userId, userId);
+    }
+
+    public record MergedCard(long cardId, boolean inserted) {
+    }
+}
@@ -1,16 +1,33 @@
 package no.kristiania.pg3402.collection.repository;
 
+import jakarta.persistence.QueryHint;
+import no.kristiania.pg3402.collection.dto.UserCardResponse;
 import no.kristiania.pg3402.collection.model.UserCard;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
-public interface UserCardRepository extends JpaRepository<UserCard, Long> {
+public interface UserCardRepository extends JpaRepository<UserCard, Long>, JpaSpecificationExecutor<UserCard> {
+
+    /**
+     * Rows fetched per round trip by the export cursors
+     */
+    String EXPORT_FETCH_SIZE = "1000";
+
+    String EXPORT_PROJECTION = "SELECT new no.kristiania.pg3402.collection.dto.UserCardResponse(" +
+            "uc.id, uc.userId, uc.cardId, uc.quantity, uc.condition, uc.isReverseHolo, " +
+            "uc.notes, uc.acquiredDate, uc.createdAt, uc.updatedAt) FROM UserCard uc ";
 
     /**
      * Find all cards owned by a specific user
@@ -29,8 +46,9 @@ public interface UserCardRepository extends JpaRepository<UserCard, Long> {
 
     /**
      * Get total number of unique cards owned by a user
+     * (user_id, card_id) is unique, so counting rows is enough
      */
-    @Query("SELECT COUNT(DISTINCT uc.cardId) FROM UserCard uc WHERE uc.userId = :userId")
+    @Query("SELECT COUNT(uc) FROM UserCard uc WHERE uc.userId = :userId")
     Long countUniqueCardsByUserId(@Param("userId") Long userId);
 
     /**
@@ -50,13 +68,71 @@ public interface UserCardRepository extends JpaRepository<UserCard, Long> {
     List<UserCard> findByUserIdAndCondition(Long userId, UserCard.CardCondition condition);
 
     /**
-     * Delete a specific card from user's collection
+     * Update a specific card in a user's collection.
+     * Qualified by user_id, so it touches a single partition (the entity's own
+     * UPDATE ... WHERE id = ? would have to search all of them). Clears the
+     * persistence context; entities loaded before are detached.
      */
-    void deleteByUserIdAndCardId(Long userId, Long cardId);
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE UserCard uc SET uc.quantity = :quantity, uc.condition = :condition, " +
+            "uc.isReverseHolo = :isReverseHolo, uc.notes = :notes, uc.acquiredDate = :acquiredDate, " +
+            "uc.updatedAt = :updatedAt WHERE uc.userId = :userId AND uc.cardId = :cardId")
+    int updateByUserIdAndCardId(@Param("userId") Long userId,
+                                @Param("cardId") Long cardId,
+                                @Param("quantity") Integer quantity,
+                                @Param("condition") UserCard.CardCondition condition,
+                                @Param("isReverseHolo") Boolean isReverseHolo,
+                                @Param("notes") String notes,
+                                @Param("acquiredDate") LocalDateTime acquiredDate,
+                                @Param("updatedAt") LocalDateTime updatedAt);
+
+    /**
+     * Delete a specific card from user's collection.
+     * Qualified by user_id, so it touches a single partition.
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("DELETE FROM UserCard uc WHERE uc.userId = :userId AND uc.cardId = :cardId")
+    int deleteByUserIdAndCardId(@Param("userId") Long userId, @Param("cardId") Long cardId);
 
     /**
      * Get list of card IDs owned by a user (for progress calculation)
      */
     @Query("SELECT uc.cardId FROM UserCard uc WHERE uc.userId = :userId")
     List<Long> findCardIdsByUserId(@Param("userId") Long userId);
+
+    /**
+     * Stream a user's collection through a forward-only cursor (for exports).
+     * Rows are projected straight into DTOs, so nothing accumulates in the persistence context.
+     * Must be consumed inside a transaction.
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = EXPORT_FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query(EXPORT_PROJECTION + "WHERE uc.userId = :userId ORDER BY uc.cardId")
+    Stream<UserCardResponse> streamByUserId(@Param("userId") Long userId);
+
+    /**
+     * Lowest and highest user ID with cards, for splitting admin exports into
+     * user ID ranges (each answered from the per-partition index ends). Null
+     * if there are no cards.
+     */
+    @Query("SELECT MIN(uc.userId) FROM UserCard uc")
+    Long findMinUserId();
+
+    @Query("SELECT MAX(uc.userId) FROM UserCard uc")
+    Long findMaxUserId();
+
+    /**
+     * Stream the collections of one user ID range, inclusive (for admin exports).
+     * A range scan of the (user_id, card_id) index in every partition, merged in order.
+     * Must be consumed inside a transaction.
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = EXPORT_FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query(EXPORT_PROJECTION + "WHERE uc.userId BETWEEN :fromUserId AND :toUserId ORDER BY uc.userId, uc.cardId")
+    Stream<UserCardResponse> streamUserIdRange(@Param("fromUserId") long fromUserId,
+                                               @Param("toUserId") long toUserId);
 }
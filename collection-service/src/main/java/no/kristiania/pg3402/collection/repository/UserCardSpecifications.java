@@ -0,0 +1,71 @@
+package no.kristiania.pg3402.collection.repository;
+
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Predicate;
+import no.kristiania.pg3402.collection.model.UserCard;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDateTime;
+
+/**
+ * Building blocks for filtered collection queries.
+ * Each filter maps onto one of the (user_id, ..., card_id) composite indexes.
+ */
+public final class UserCardSpecifications {
+
+    private UserCardSpecifications() {
+    }
+
+    public static Specification<UserCard> ownedBy(Long userId) {
+        return (root, query, cb) -> cb.equal(root.get("userId"), userId);
+    }
+
+    public static Specification<UserCard> hasCondition(UserCard.CardCondition condition) {
+        return (root, query, cb) -> cb.equal(root.get("condition"), condition);
+    }
+
+    public static Specification<UserCard> isReverseHolo(boolean reverseHolo) {
+        // Rendered as a literal so the partial reverse holo index can be used
+        return (root, query, cb) -> reverseHolo
+                ? cb.isTrue(root.get("isReverseHolo"))
+                : cb.or(cb.isFalse(root.get("isReverseHolo")), cb.isNull(root.get("isReverseHolo")));
+    }
+
+    public static Specification<UserCard> acquiredFrom(LocalDateTime from) {
+        return (root, query, cb) -> cb.greaterThanOrEqualTo(root.get("acquiredDate"), from);
+    }
+
+    public static Specification<UserCard> acquiredBefore(LocalDateTime to) {
+        return (root, query, cb) -> cb.lessThan(root.get("acquiredDate"), to);
+    }
+
+    public static Specification<UserCard> quantityGreaterThan(int quantity) {
+        return (root, query, cb) -> cb.greaterThan(root.get("quantity"), quantity);
+    }
+
+    /**
+     * Keyset position: rows strictly after (value, cardId) in the given sort order.
+     * A null property means the query is sorted by card ID alone.
+     */
+    public static <T extends Comparable<? super T>> Specification<UserCard> after(
+            String property, T value, Long cardId, Sort.Direction direction) {
+        return (root, query, cb) -> {
+            Expression<Long> cardIdPath = root.get("cardId");
+            Predicate cardIdAfter = beyond(cb, cardIdPath, cardId, direction);
+            if (property == null) {
+                return cardIdAfter;
+            }
+            Expression<T> path = root.get(property);
+            return cb.or(
+                    beyond(cb, path, value, direction),
+                    cb.and(cb.equal(path, value), cardIdAfter));
+        };
+    }
+
+    private static <T extends Comparable<? super T>> Predicate beyond(
+            CriteriaBuilder cb, Expression<T> path, T value, Sort.Direction direction) {
+        return direction.isAscending() ? cb.greaterThan(path, value) : cb.lessThan(path, value);
+    }
+}
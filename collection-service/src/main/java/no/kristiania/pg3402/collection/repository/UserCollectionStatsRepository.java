@@ -0,0 +1,63 @@
+package no.kristiania.pg3402.collection.repository;
+
+import no.kristiania.pg3402.collection.model.UserCollectionStats;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface UserCollectionStatsRepository extends JpaRepository<UserCollectionStats, UserCollectionStats.Bucket> {
+
+    /**
+     * Find all stat buckets for a user (at most one per condition and reverse holo flag)
+     */
+    List<UserCollectionStats> findByIdUserId(Long userId);
+
+    /**
+     * Apply a delta to one bucket, creating the bucket if it does not exist yet
+     */
+    @Modifying
+    @Query(value = "INSERT INTO user_collection_stats " +
+            "(user_id, condition, is_reverse_holo, unique_cards, total_cards, updated_at) " +
+            "VALUES (:userId, :condition, :isReverseHolo, :uniqueDelta, :totalDelta, NOW()) " +
+            "ON CONFLICT (user_id, condition, is_reverse_holo) DO UPDATE SET " +
+            "unique_cards = user_collection_stats.unique_cards + EXCLUDED.unique_cards, " +
+            "total_cards = user_collection_stats.total_cards + EXCLUDED.total_cards, " +
+            "updated_at = EXCLUDED.updated_at",
+            nativeQuery = true)
+    void applyDelta(@Param("userId") Long userId,
+                    @Param("condition") String condition,
+                    @Param("isReverseHolo") boolean isReverseHolo,
+                    @Param("uniqueDelta") long uniqueDelta,
+                    @Param("totalDelta") long totalDelta);
+
+    /**
+     * Delete all stat buckets for a user (first half of a recompute)
+     */
+    @Modifying
+    @Query(value = "DELETE FROM user_collection_stats WHERE user_id = :userId", nativeQuery = true)
+    void deleteAllForUser(@Param("userId") Long userId);
+
+    /**
+     * Recompute all stat buckets for a user from user_cards (second half of a recompute)
+     */
+    @Modifying
+    @Query(value = "INSERT INTO user_collection_stats " +
+            "(user_id, condition, is_reverse_holo, unique_cards, total_cards, updated_at) " +
+            "SELECT user_id, condition, COALESCE(is_reverse_holo, FALSE), COUNT(*), SUM(quantity), NOW() " +
+            "FROM user_cards WHERE user_id = :userId " +
+            "GROUP BY user_id, condition, COALESCE(is_reverse_holo, FALSE)",
+            nativeQuery = true)
+    void recomputeForUser(@Param("userId") Long userId);
+
+    /**
+     * Get every user that has either cards or stat buckets (candidates for repair)
+     */
+    @Query(value = "SELECT user_id FROM user_cards UNION SELECT user_id FROM user_collection_stats",
+            nativeQuery = true)
+    List<Long> findAllUserIds();
+}
@@ -0,0 +1,296 @@
+package no.kristiania.pg3402.collection.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import no.kristiania.pg3402.collection.dto.CardOwnersResponse;
+import no.kristiania.pg3402.collection.dto.CollectionChange;
+import no.kristiania.pg3402.collection.dto.OwnershipIndexStats;
+import no.kristiania.pg3402.collection.events.CollectionChangedEvent;
+import no.kristiania.pg3402.collection.exception.IndexNotReadyException;
+import no.kristiania.pg3402.collection.exception.InvalidCollectionQueryException;
+import no.kristiania.pg3402.collection.repository.CardOwnershipRepository;
+import org.roaringbitmap.longlong.PeekableLongIterator;
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory inverted index from card ID to the compressed set of users owning it.
+ *
+ * Answers "who owns card X" and "how many owners does card X have" without
+ * touching the database. The index is built from user_cards on startup and
+ * then kept current from committed CollectionChangedEvents, including those
+ * other replicas relay (CollectionChangeRelay), so every replica's index sees
+ * every write. Changes committed while a rebuild is scanning are queued and
+ * replayed onto the new index, so a rebuild never loses writes.
+ */
+@Component
+@Slf4j
+public class CardOwnershipIndex {
+
+    public static final int MAX_OWNERS_PAGE = 10_000;
+
+    private final CardOwnershipRepository ownershipRepository;
+    private final ShardRouter shardRouter;
+    private final TransactionTemplate readOnlyTransaction;
+    private final boolean rebuildOnStartup;
+
+    // Writers hold the read lock (they only contend per card); a rebuild swaps under the write lock
+    private final ReadWriteLock swapLock = new ReentrantReadWriteLock();
+    private final AtomicBoolean rebuilding = new AtomicBoolean(false);
+    private volatile ConcurrentHashMap<Long, OwnerSet> owners = new ConcurrentHashMap<>();
+    private volatile Queue<Ownership> pendingDuringRebuild;
+    private volatile boolean ready;
+    private volatile LocalDateTime lastRebuiltAt;
+    private volatile long lastRebuildMillis;
+    private final AtomicLong ownerships = new AtomicLong();
+
+    public CardOwnershipIndex(CardOwnershipRepository ownershipRepository,
+                              ShardRouter shardRouter,
+                              PlatformTransactionManager transactionManager,
+                              MeterRegistry meterRegistry,
+                              @Value("${collection.ownership-index.rebuild-on-startup:true}") boolean rebuildOnStartup) {
+        this.ownershipRepository = ownershipRepository;
+        this.shardRouter = shardRouter;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.rebuildOnStartup = rebuildOnStartup;
+
+        Gauge.builder("collection.ownership.index.cards", this, index -> index.owners.size())
+                .description("Cards with at least one owner in the ownership index")
+                .register(meterRegistry);
+        Gauge.builder("collection.ownership.index.entries", ownerships, AtomicLong::get)
+                .description("(card, owner) pairs held by the ownership index")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStartup() {
+        if (!rebuildOnStartup) {
+            return;
+        }
+        // Build in the background so the service becomes healthy while the scan runs
+        Thread thread = new Thread(this::rebuild, "ownership-index-rebuild");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Rebuild the index from user_cards
+     *
+     * @return false if a rebuild was already running
+     */
+    public boolean rebuild() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return false;
+        }
+        long start = System.nanoTime();
+        try {
+            pendingDuringRebuild = new ConcurrentLinkedQueue<>();
+            ConcurrentHashMap<Long, OwnerSet> rebuilt = new ConcurrentHashMap<>();
+            AtomicLong count = new AtomicLong();
+            shardRouter.forEachShard(shard -> readOnlyTransaction.executeWithoutResult(status ->
+                    ownershipRepository.forEachOwnership((cardId, userId) -> {
+                        if (rebuilt.computeIfAbsent(cardId, id -> new OwnerSet()).add(userId)) {
+                            count.incrementAndGet();
+                        }
+                    })));
+            rebuilt.values().forEach(OwnerSet::compact);
+
+            swapLock.writeLock().lock();
+            try {
+                owners = rebuilt;
+                ownerships.set(count.get());
+                Queue<Ownership> pending = pendingDuringRebuild;
+                pendingDuringRebuild = null;
+                Ownership change;
+                while ((change = pending.poll()) != null) {
+                    apply(change);
+                }
+                ready = true;
+            } finally {
+                swapLock.writeLock().unlock();
+            }
+
+            lastRebuiltAt = LocalDateTime.now();
+            lastRebuildMillis = (System.nanoTime() - start) / 1_000_000;
+            log.info("Rebuilt card ownership index: {} cards, {} ownerships in {} ms",
+                    rebuilt.size(), ownerships.get(), lastRebuildMillis);
+            return true;
+        } catch (RuntimeException e) {
+            pendingDuringRebuild = null;
+            log.error("Failed to rebuild card ownership index", e);
+            throw e;
+        } finally {
+            rebuilding.set(false);
+        }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onCollectionChanged(CollectionChangedEvent event) {
+        swapLock.readLock().lock();
+        try {
+            Queue<Ownership> pending = pendingDuringRebuild;
+            for (Long cardId : event.getAddedCardIds()) {
+                record(new Ownership(cardId, event.getUserId(), true), pending);
+            }
+            for (CollectionChange change : event.getChanges()) {
+                if (change.getOperation() == CollectionChange.Operation.REMOVE) {
+                    record(new Ownership(change.getCardId(), event.getUserId(), false), pending);
+                }
+            }
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    public long countOwners(Long cardId) {
+        checkReady();
+        OwnerSet set = owners.get(cardId);
+        return set != null ? set.cardinality() : 0;
+    }
+
+    /**
+     * Get up to limit owners of a card with user ID greater than after
+     */
+    public CardOwnersResponse findOwners(Long cardId, Long after, int limit) {
+        checkReady();
+        if (limit < 1 || limit > MAX_OWNERS_PAGE) {
+            throw new InvalidCollectionQueryException(
+                    String.format("Limit must be between 1 and %d", MAX_OWNERS_PAGE));
+        }
+        OwnerSet set = owners.get(cardId);
+        if (set == null) {
+            return CardOwnersResponse.builder().cardId(cardId).userIds(List.of()).build();
+        }
+        return set.page(cardId, after, limit);
+    }
+
+    public OwnershipIndexStats getStats() {
+        long bytes = 0;
+        for (OwnerSet set : owners.values()) {
+            bytes += set.sizeInBytes();
+        }
+        long entries = ownerships.get();
+        return OwnershipIndexStats.builder()
+                .ready(ready)
+                .cards(owners.size())
+                .ownerships(entries)
+                .sizeInBytes(bytes)
+                .bytesPerOwnership(entries > 0 ? (double) bytes / entries : 0)
+                .lastRebuiltAt(lastRebuiltAt)
+                .lastRebuildMillis(lastRebuildMillis)
+                .build();
+    }
+
+    private void record(Ownership change, Queue<Ownership> pending) {
+        apply(change);
+        if (pending != null) {
+            pending.add(change);
+        }
+    }
+
+    private void apply(Ownership change) {
+        if (change.owned()) {
+            owners.compute(change.cardId(), (id, set) -> {
+                OwnerSet target = set != null ? set : new OwnerSet();
+                if (target.add(change.userId())) {
+                    ownerships.incrementAndGet();
+                }
+                return target;
+            });
+        } else {
+            owners.computeIfPresent(change.cardId(), (id, set) -> {
+                if (set.remove(change.userId())) {
+                    ownerships.decrementAndGet();
+                }
+                return set.isEmpty() ? null : set;
+            });
+        }
+    }
+
+    private void checkReady() {
+        if (!ready) {
+            throw new IndexNotReadyException("Card ownership index is still being built");
+        }
+    }
+
+    private record Ownership(long cardId, long userId, boolean owned) {
+    }
+
+    /**
+     * Owners of one card. Roaring bitmaps are not thread-safe, so every access synchronizes.
+     */
+    private static class OwnerSet {
+
+        private final Roaring64Bitmap userIds = new Roaring64Bitmap();
+
+        synchronized boolean add(long userId) {
+            if (userIds.contains(userId)) {
+                return false;
+            }
+            userIds.addLong(userId);
+            return true;
+        }
+
+        synchronized boolean remove(long userId) {
+            if (!userIds.contains(userId)) {
+                return false;
+            }
+            userIds.removeLong(userId);
+            return true;
+        }
+
+        synchronized boolean isEmpty() {
+            return userIds.isEmpty();
+        }
+
+        synchronized long cardinality() {
+            return userIds.getLongCardinality();
+        }
+
+        synchronized long sizeInBytes() {
+            return userIds.getLongSizeInBytes();
+        }
+
+        synchronized void compact() {
+            userIds.runOptimize();
+        }
+
+        synchronized CardOwnersResponse page(Long cardId, Long after, int limit) {
+            PeekableLongIterator iterator = after != null
+                    ? userIds.getLongIteratorFrom(after + 1)
+                    : userIds.getLongIterator();
+            List<Long> page = new ArrayList<>(Math.min(limit, 256));
+            while (iterator.hasNext() && page.size() < limit) {
+                page.add(iterator.next());
+            }
+            boolean hasMore = iterator.hasNext();
+            return CardOwnersResponse.builder()
+                    .cardId(cardId)
+                    .ownerCount(userIds.getLongCardinality())
+                    .userIds(page)
+                    .nextAfter(hasMore ? page.get(page.size() - 1) : null)
+                    .hasMore(hasMore)
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package no.kristiania.pg3402.collection.service;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Sparse card-to-card co-ownership counts, pruned to the top k neighbours per card.
+ *
+ * Each row is a fixed-size space-saving sketch: when a full row sees a new
+ * neighbour, that neighbour takes over the slot of the weakest one and
+ * inherits its count. Heavy co-owners therefore stay in the row, and memory
+ * is bounded by (cards x k) regardless of how many users there are.
+ */
+class CoOccurrenceMatrix {
+
+    private final int topK;
+    private final Map<Long, Row> rows = new ConcurrentHashMap<>();
+
+    CoOccurrenceMatrix(int topK) {
+        this.topK = topK;
+    }
+
+    /**
+     * Count one user owning all of the given cards (each unordered pair once)
+     */
+    void addCollection(long[] cardIds) {
+        for (int i = 0; i < cardIds.length; i++) {
+            for (int j = i + 1; j < cardIds.length; j++) {
+                addPair(cardIds[i], cardIds[j], 1);
+            }
+        }
+    }
+
+    /**
+     * Adjust the co-ownership count of a card with each of the other cards
+     */
+    void addCard(long cardId, Collection<Long> others, int delta) {
+        for (Long other : others) {
+            if (other != cardId) {
+                addPair(cardId, other, delta);
+            }
+        }
+    }
+
+    void addPair(long a, long b, int delta) {
+        row(a, delta).add(b, delta);
+        row(b, delta).add(a, delta);
+    }
+
+    /**
+     * Fold another matrix into this one, re-pruning each row to k entries
+     */
+    void merge(CoOccurrenceMatrix other) {
+        other.rows.forEach((cardId, row) ->
+                row.forEach((neighbour, count) -> row(cardId, count).add(neighbour, count)));
+    }
+
+    /**
+     * Visit the neighbours kept for a card with their (possibly overestimated) counts
+     */
+    void forEachNeighbour(long cardId, BiConsumer<Long, Integer> visitor) {
+        Row row = rows.get(cardId);
+        if (row != null) {
+            row.forEach(visitor);
+        }
+    }
+
+    int cardCount() {
+        return rows.size();
+    }
+
+    long entryCount() {
+        return rows.values().stream().mapToLong(Row::size).sum();
+    }
+
+    /**
+     * Approximate heap footprint: two parallel arrays of k slots per row plus map overhead
+     */
+    long estimatedSizeInBytes() {
+        return (long) rows.size() * (topK * (Long.BYTES + Integer.BYTES) + 96);
+    }
+
+    private Row row(long cardId, int delta) {
+        if (delta > 0) {
+            return rows.computeIfAbsent(cardId, id -> new Row(topK));
+        }
+        Row row = rows.get(cardId);
+        return row != null ? row : Row.EMPTY;
+    }
+
+    private static class Row {
+
+        static final Row EMPTY = new Row(0) {
+            @Override
+            synchronized void add(long neighbour, int delta) {
+            }
+        };
+
+        private final long[] neighbours;
+        private final int[] counts;
+        private int size;
+
+        Row(int capacity) {
+            this.neighbours = new long[capacity];
+            this.counts = new int[capacity];
+        }
+
+        synchronized void add(long neighbour, int delta) {
+            int weakest = -1;
+            for (int i = 0; i < size; i++) {
+                if (neighbours[i] == neighbour) {
+                    counts[i] = Math.max(0, counts[i] + delta);
+                    return;
+                }
+                if (weakest < 0 || counts[i] < counts[weakest]) {
+                    weakest = i;
+                }
+            }
+            if (delta <= 0) {
+                return;
+            }
+            if (size < neighbours.length) {
+                neighbours[size] = neighbour;
+                counts[size] = delta;
+                size++;
+            } else if (weakest >= 0) {
+                neighbours[weakest] = neighbour;
+                counts[weakest] += delta;
+            }
+        }
+
+        void forEach(BiConsumer<Long, Integer> visitor) {
+            long[] ids;
+            int[] values;
+            synchronized (this) {
+                ids = Arrays.copyOf(neighbours, size);
+                values = Arrays.copyOf(counts, size);
+            }
+            for (int i = 0; i < ids.length; i++) {
+                if (values[i] > 0) {
+                    visitor.accept(ids[i], values[i]);
+                }
+            }
+        }
+
+        synchronized int size() {
+            return size;
+        }
+    }
+}
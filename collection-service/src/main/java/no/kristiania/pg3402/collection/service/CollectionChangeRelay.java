@@ -0,0 +1,72 @@
+package no.kristiania.pg3402.collection.service;
+
+import lombok.extern.slf4j.Slf4j;
+import no.kristiania.pg3402.collection.config.RabbitMQConfig;
+import no.kristiania.pg3402.collection.events.CollectionChangedEvent;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.UUID;
+
+/**
+ * Shares committed collection changes between collection-service replicas.
+ *
+ * A user's writes can land on any replica (load-balancer spill, failover,
+ * ring changes), while caches and SSE streams live on each replica. Every
+ * committed change is published to a fanout exchange; the other replicas drop
+ * the user's cached collection and republish the change locally as remote,
+ * so their listeners (open event streams, the ownership index, the
+ * recommendation matrix) see it too. Remote changes are never relayed again.
+ */
+@Component
+@Slf4j
+public class CollectionChangeRelay {
+
+    private static final String ORIGIN_HEADER = "x-origin-instance";
+
+    private final RabbitTemplate rabbitTemplate;
+    private final UserCollectionCache collectionCache;
+    private final ApplicationEventPublisher eventPublisher;
+    private final String instanceId = UUID.randomUUID().toString();
+
+    public CollectionChangeRelay(RabbitTemplate rabbitTemplate,
+                                 UserCollectionCache collectionCache,
+                                 ApplicationEventPublisher eventPublisher) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.collectionCache = collectionCache;
+        this.eventPublisher = eventPublisher;
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onCollectionChanged(CollectionChangedEvent event) {
+        if (event.isRemote()) {
+            return;
+        }
+        try {
+            rabbitTemplate.convertAndSend(RabbitMQConfig.CHANGES_EXCHANGE_NAME, "", event, message -> {
+                message.getMessageProperties().setHeader(ORIGIN_HEADER, instanceId);
+                return message;
+            });
+        } catch (AmqpException e) {
+            // Other replicas catch up when their cache entry expires or the client resyncs
+            log.warn("Failed to relay collection change of user {} to other replicas: {}",
+                    event.getUserId(), e.getMessage());
+        }
+    }
+
+    @RabbitListener(queues = "#{collectionChangesQueue.name}")
+    public void onRemoteChange(CollectionChangedEvent event, @Header(ORIGIN_HEADER) String origin) {
+        if (instanceId.equals(origin)) {
+            return;
+        }
+        collectionCache.invalidate(event.getUserId());
+        event.setRemote(true);
+        eventPublisher.publishEvent(event);
+    }
+}
@@ -0,0 +1,340 @@
+package no.kristiania.pg3402.collection.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import no.kristiania.pg3402.collection.dto.CollectionChange;
+import no.kristiania.pg3402.collection.events.CollectionChangedEvent;
+import no.kristiania.pg3402.collection.repository.CollectionChangeRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pushes committed collection changes to Server-Sent Events subscribers.
+ *
+ * Each subscriber gets a small bounded buffer drained by a shared pool, so a
+ * slow client never blocks the committing thread or other subscribers. When a
+ * buffer is full the oldest change is dropped and the client is told to
+ * resync from the change log (GET /changes?since=) before further deltas.
+ *
+ * Changes committed on other replicas arrive through CollectionChangeRelay and
+ * can overtake local ones. Sequence numbers have no gaps, so a live change that
+ * skips ahead is sent as a resync instead, and the late one is then dropped.
+ * A Last-Event-ID replay is exempt: the change log compacts it to the latest
+ * change per card, so its own gaps are expected, and it sets the baseline for
+ * the live changes that follow. An import is announced as one resync that
+ * covers every sequence number up to the import's latest.
+ */
+@Service
+@Slf4j
+public class CollectionEventBroadcaster {
+
+    /**
+     * Event names sent on the stream
+     */
+    public static final String CHANGE_EVENT = "change";
+    public static final String RESYNC_EVENT = "resync";
+
+    private static final int MAX_REPLAY = 1000;
+
+    private final CollectionChangeRepository changeRepository;
+    private final int bufferSize;
+    private final long emitterTimeoutMillis;
+    private final Map<Long, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final ExecutorService drainExecutor;
+    private final Counter droppedEvents;
+
+    public CollectionEventBroadcaster(CollectionChangeRepository changeRepository,
+                                      MeterRegistry meterRegistry,
+                                      @Value("${collection.events.buffer-size:256}") int bufferSize,
+                                      @Value("${collection.events.emitter-timeout:30m}") Duration emitterTimeout,
+                                      @Value("${collection.events.drain-threads:4}") int drainThreads) {
+        this.changeRepository = changeRepository;
+        this.bufferSize = bufferSize;
+        this.emitterTimeoutMillis = emitterTimeout.toMillis();
+        this.drainExecutor = Executors.newFixedThreadPool(drainThreads, r -> {
+            Thread thread = new Thread(r, "collection-events");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.droppedEvents = Counter.builder("collection.events.dropped")
+                .description("Changes dropped because a subscriber's buffer was full")
+                .register(meterRegistry);
+        Gauge.builder("collection.events.subscribers", subscriberCount, AtomicInteger::get)
+                .description("Open collection event streams")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Open a stream for one user. With a lastEventId (the last sequence number
+     * the client saw) missed changes are replayed from the change log first.
+     */
+    public SseEmitter subscribe(Long userId, Long lastEventId) {
+        SseEmitter emitter = new SseEmitter(emitterTimeoutMillis);
+        Subscriber subscriber = new Subscriber(userId, emitter, lastEventId != null);
+
+        // Register before replaying so nothing committed in between is missed. Live changes
+        // are held back until the replay is queued, then those it already covered are skipped
+        subscribers.computeIfAbsent(userId, id -> ConcurrentHashMap.newKeySet()).add(subscriber);
+        subscriberCount.incrementAndGet();
+        emitter.onCompletion(() -> unsubscribe(subscriber));
+        emitter.onTimeout(() -> unsubscribe(subscriber));
+        emitter.onError(e -> unsubscribe(subscriber));
+
+        if (lastEventId != null) {
+            List<CollectionChange> missed;
+            try {
+                missed = changeRepository.findSince(userId, lastEventId, MAX_REPLAY + 1);
+            } catch (RuntimeException e) {
+                unsubscribe(subscriber);
+                throw e;
+            }
+            if (missed.size() > MAX_REPLAY) {
+                subscriber.finishReplay(lastEventId, List.of(Message.resync(lastEventId)));
+            } else {
+                subscriber.finishReplay(lastEventId, missed.stream().map(Message::replayed).toList());
+            }
+        }
+        log.info("User {} subscribed to collection events (lastEventId={})", userId, lastEventId);
+        return emitter;
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onCollectionChanged(CollectionChangedEvent event) {
+        Set<Subscriber> userSubscribers = subscribers.get(event.getUserId());
+        if (userSubscribers == null || userSubscribers.isEmpty()) {
+            return;
+        }
+        for (Subscriber subscriber : userSubscribers) {
+            if (event.isBulk()) {
+                subscriber.offer(Message.bulk(event.getLatestSeq()));
+            } else {
+                event.getChanges().forEach(change -> subscriber.offer(Message.change(change)));
+            }
+        }
+    }
+
+    /**
+     * Keep idle streams open through proxies and detect clients that have gone away
+     */
+    @Scheduled(fixedDelayString = "${collection.events.heartbeat-interval:PT15S}")
+    public void sendHeartbeats() {
+        subscribers.values().forEach(set -> set.forEach(subscriber -> subscriber.offer(Message.HEARTBEAT)));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        subscribers.values().forEach(set -> set.forEach(subscriber -> subscriber.emitter.complete()));
+        drainExecutor.shutdownNow();
+    }
+
+    private void unsubscribe(Subscriber subscriber) {
+        if (!subscriber.closed.compareAndSet(false, true)) {
+            return;
+        }
+        subscriberCount.decrementAndGet();
+        subscribers.computeIfPresent(subscriber.userId, (id, set) -> {
+            set.remove(subscriber);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    /**
+     * A message for the stream. Replayed changes come from the change log and are
+     * not checked for gaps; a bulk message is a resync covering changes up to seq.
+     */
+    private record Message(String name, Long seq, Object data, boolean replayed) {
+
+        static final Message HEARTBEAT = new Message(null, null, null, false);
+
+        static Message change(CollectionChange change) {
+            return new Message(CHANGE_EVENT, change.getSeq(), change, false);
+        }
+
+        static Message replayed(CollectionChange change) {
+            return new Message(CHANGE_EVENT, change.getSeq(), change, true);
+        }
+
+        static Message resync(long since) {
+            return new Message(RESYNC_EVENT, null, Map.of("since", since), false);
+        }
+
+        static Message bulk(long latestSeq) {
+            return new Message(RESYNC_EVENT, latestSeq, null, false);
+        }
+    }
+
+    /**
+     * One open stream. Producers only ever append to the buffer; a single
+     * drain task at a time writes to the emitter, preserving order.
+     */
+    private class Subscriber {
+
+        private final Long userId;
+        private final SseEmitter emitter;
+        private final ArrayDeque<Message> buffer = new ArrayDeque<>();
+        private final AtomicBoolean draining = new AtomicBoolean(false);
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+        private boolean overflowed;
+        // Live messages offered while a Last-Event-ID replay is being read; null once it is queued
+        private List<Message> heldDuringReplay;
+        private volatile long lastSentSeq = -1;
+
+        Subscriber(Long userId, SseEmitter emitter, boolean replaying) {
+            this.userId = userId;
+            this.emitter = emitter;
+            this.heldDuringReplay = replaying ? new ArrayList<>() : null;
+        }
+
+        long lastSentSeq() {
+            return Math.max(lastSentSeq, 0);
+        }
+
+        void offer(Message message) {
+            if (closed.get()) {
+                return;
+            }
+            synchronized (buffer) {
+                if (heldDuringReplay != null) {
+                    // Sent after the replay, or a live change could raise lastSentSeq past
+                    // replayed ones and get them skipped as duplicates
+                    heldDuringReplay.add(message);
+                    return;
+                }
+                enqueue(message);
+            }
+            scheduleDrain();
+        }
+
+        /**
+         * Queue the replayed messages, then the live ones held back meanwhile that the replay
+         * did not already cover. Nothing has been queued yet, so no drain is running and the
+         * client's Last-Event-ID can be taken as the last sequence sent.
+         */
+        void finishReplay(long lastEventId, List<Message> replayed) {
+            synchronized (buffer) {
+                lastSentSeq = lastEventId;
+                long replayedUpTo = -1;
+                for (Message message : replayed) {
+                    enqueue(message);
+                    if (message.seq() != null) {
+                        replayedUpTo = Math.max(replayedUpTo, message.seq());
+                    }
+                }
+                for (Message message : heldDuringReplay) {
+                    if (message.seq() == null || message.seq() > replayedUpTo) {
+                        enqueue(message);
+                    }
+                }
+                heldDuringReplay = null;
+            }
+            scheduleDrain();
+        }
+
+        private void enqueue(Message message) {
+            if (buffer.size() >= bufferSize) {
+                buffer.pollFirst();
+                overflowed = true;
+                droppedEvents.increment();
+            }
+            buffer.addLast(message);
+        }
+
+        private void scheduleDrain() {
+            if (draining.compareAndSet(false, true)) {
+                try {
+                    drainExecutor.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    draining.set(false);
+                }
+            }
+        }
+
+        private void drain() {
+            try {
+                Message message;
+                while ((message = next()) != null) {
+                    send(message);
+                }
+            } catch (IOException | IllegalStateException e) {
+                // Client disconnected or emitter already completed
+                emitter.completeWithError(e);
+                unsubscribe(this);
+                return;
+            } finally {
+                draining.set(false);
+            }
+            // A producer may have appended after the last poll but before draining was cleared
+            boolean pending;
+            synchronized (buffer) {
+                pending = !buffer.isEmpty();
+            }
+            if (pending && !closed.get()) {
+                scheduleDrain();
+            }
+        }
+
+        private Message next() {
+            synchronized (buffer) {
+                if (overflowed) {
+                    overflowed = false;
+                    return Message.resync(lastSentSeq());
+                }
+                return buffer.pollFirst();
+            }
+        }
+
+        private void send(Message message) throws IOException {
+            if (message == Message.HEARTBEAT) {
+                emitter.send(SseEmitter.event().comment("heartbeat"));
+                return;
+            }
+            if (message.seq() != null) {
+                if (message.seq() <= lastSentSeq) {
+                    return;
+                }
+                if (message.data() == null) {
+                    // An import: the client fetches everything after what it has, up to and including it
+                    emitter.send(SseEmitter.event().name(RESYNC_EVENT).data(Map.of("since", lastSentSeq())));
+                    lastSentSeq = message.seq();
+                    return;
+                }
+                if (!message.replayed() && lastSentSeq >= 0 && message.seq() > lastSentSeq + 1) {
+                    // An earlier change is still on its way from another replica; the
+                    // resync fetches both, as this one is already committed
+                    emitter.send(SseEmitter.event().name(RESYNC_EVENT).data(Map.of("since", lastSentSeq)));
+                    lastSentSeq = message.seq();
+                    return;
+                }
+                lastSentSeq = message.seq();
+                emitter.send(SseEmitter.event()
+                        .id(String.valueOf(message.seq()))
+                        .name(message.name())
+                        .data(message.data()));
+            } else {
+                emitter.send(SseEmitter.event().name(message.name()).data(message.data()));
+            }
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package no.kristiania.pg3402.collection.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import no.kristiania.pg3402.collection.dto.UserCardResponse;
+import no.kristiania.pg3402.collection.exception.InvalidCollectionQueryException;
+import no.kristiania.pg3402.collection.repository.UserCardRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+/**
+ * Streams collections out as CSV or NDJSON.
+ *
+ * Rows are read through a forward-only database cursor and written to the
+ * response as they arrive, so memory use does not depend on collection size.
+ */
+@Service
+@Slf4j
+public class CollectionExportService {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final UserCardRepository userCardRepository;
+    private final ShardRouter shardRouter;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate readOnlyTransaction;
+    private final int maxPartitions;
+
+    public CollectionExportService(UserCardRepository userCardRepository,
+                                   ShardRouter shardRouter,
+                                   ObjectMapper objectMapper,
+                                   PlatformTransactionManager transactionManager,
+                                   @Value("${collection.export.max-partitions:4}") int maxPartitions) {
+        this.userCardRepository = userCardRepository;
+        this.shardRouter = shardRouter;
+        this.objectMapper = objectMapper;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.maxPartitions = maxPartitions;
+    }
+
+    /**
+     * Write one user's collection to the output stream
+     */
+    public void exportUser(Long userId, ExportFormat format, OutputStream out) throws IOException {
+        log.info("Exporting collection for user {} as {}", userId, format);
+        ChunkWriter writer = new ChunkWriter(format, chunk -> out.write(chunk));
+        writer.writeHeader();
+        // Runs on the async response thread, so the request's shard binding is not inherited
+        shardRouter.runForUser(userId, () -> readOnlyTransaction.executeWithoutResult(status -> {
+            try (Stream<UserCardResponse> rows = userCardRepository.streamByUserId(userId)) {
+                rows.forEach(writer::writeRow);
+            }
+        }));
+        writer.flush();
+    }
+
+    /**
+     * Write every user's collection to the output stream.
+     * The user IDs of each shard are split into equal ranges, each read on its
+     * own thread and connection (a user_id MOD split would have to scan every
+     * row of every partition per thread, as no index covers it);
+     * chunks are handed to the writing thread through a bounded queue, so a slow
+     * client applies backpressure instead of buffering the export in memory.
+     */
+    public void exportAll(ExportFormat format, int partitions, OutputStream out) throws IOException {
+        int partitionCount = Math.max(1, Math.min(partitions, maxPartitions));
+        log.info("Exporting all collections as {} using {} partitions", format, partitionCount);
+
+        BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(partitionCount * 4);
+        byte[] partitionDone = new byte[0];
+        AtomicBoolean cancelled = new AtomicBoolean(false);
+        AtomicBoolean writerGone = new AtomicBoolean(false);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(partitionCount, r -> {
+            Thread thread = new Thread(r, "collection-export");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            for (int i = 0; i < partitionCount; i++) {
+                int slice = i;
+                executor.execute(() -> {
+                    try {
+                        ChunkWriter writer = new ChunkWriter(format, chunk -> offer(queue, chunk, cancelled));
+                        shardRouter.forEachShard(shard -> readOnlyTransaction.executeWithoutResult(status -> {
+                            Long min = userCardRepository.findMinUserId();
+                            Long max = userCardRepository.findMaxUserId();
+                            if (min == null || max == null) {
+                                return;
+                            }
+                            long[] range = slice(min, max, partitionCount, slice);
+                            if (range[0] > range[1]) {
+                                return;
+                            }
+                            try (Stream<UserCardResponse> rows = userCardRepository.streamUserIdRange(range[0], range[1])) {
+                                rows.forEach(writer::writeRow);
+                            }
+                        }));
+                        writer.flush();
+                    } catch (CancellationSignal ignored) {
+                        // Export was aborted; stop reading this partition
+                    } catch (Throwable e) {
+                        log.error("Export of slice {} failed: {}", slice, e.getMessage());
+                        failure.compareAndSet(null, e);
+                        cancelled.set(true);
+                    } finally {
+                        try {
+                            offer(queue, partitionDone, writerGone);
+                        } catch (CancellationSignal ignored) {
+                            // Writing thread has already given up
+                        }
+                    }
+                });
+            }
+
+            new ChunkWriter(format, chunk -> out.write(chunk)).writeHeaderAndFlush();
+            int remaining = partitionCount;
+            while (remaining > 0) {
+                byte[] chunk = queue.take();
+                if (chunk == partitionDone) {
+                    remaining--;
+                } else if (!cancelled.get()) {
+                    out.write(chunk);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Export interrupted", e);
+        } finally {
+            cancelled.set(true);
+            writerGone.set(true);
+            executor.shutdownNow();
+        }
+
+        if (failure.get() != null) {
+            throw new IOException("Export failed", failure.get());
+        }
+    }
+
+    /**
+     * The index-th of count near-equal, contiguous slices of [min, max], as
+     * {from, to} inclusive (from > to if there are more slices than user IDs)
+     */
+    private static long[] slice(long min, long max, int count, int index) {
+        long span = max - min + 1;
+        long size = span / count;
+        long remainder = span % count;
+        long from = min + size * index + Math.min(index, remainder);
+        long to = from + size - 1 + (index < remainder ? 1 : 0);
+        return new long[]{from, to};
+    }
+
+    private static void offer(BlockingQueue<byte[]> queue, byte[] chunk, AtomicBoolean stop) {
+        try {
+            if (stop.get()) {
+                throw new CancellationSignal();
+            }
+            while (!queue.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+                if (stop.get()) {
+                    throw new CancellationSignal();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationSignal();
+        }
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public enum ExportFormat {
+        CSV("text/csv", "csv"),
+        NDJSON("application/x-ndjson", "ndjson");
+
+        private final String contentType;
+        private final String extension;
+
+        public static ExportFormat parse(String value) {
+            try {
+                return ExportFormat.valueOf(value.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new InvalidCollectionQueryException("Unsupported export format: " + value);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface ChunkSink {
+        void accept(byte[] chunk) throws IOException;
+    }
+
+    /**
+     * Formats rows into a reusable buffer and hands it on in fixed-size chunks
+     */
+    private class ChunkWriter {
+
+        private static final String CSV_HEADER =
+                "id,user_id,card_id,quantity,condition,is_reverse_holo,notes,acquired_date,created_at,updated_at\n";
+
+        private final ExportFormat format;
+        private final ChunkSink sink;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(CHUNK_SIZE + 1024);
+        private final StringBuilder line = new StringBuilder(256);
+
+        ChunkWriter(ExportFormat format, ChunkSink sink) {
+            this.format = format;
+            this.sink = sink;
+        }
+
+        void writeHeader() {
+            if (format == ExportFormat.CSV) {
+                buffer.writeBytes(CSV_HEADER.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        void writeHeaderAndFlush() throws IOException {
+            writeHeader();
+            flush();
+        }
+
+        void writeRow(UserCardResponse row) {
+            try {
+                if (format == ExportFormat.NDJSON) {
+                    objectMapper.writeValue(buffer, row);
+                    buffer.write('\n');
+                } else {
+                    line.setLength(0);
+                    line.append(row.getId()).append(',')
+                            .append(row.getUserId()).append(',')
+                            .append(row.getCardId()).append(',')
+                            .append(row.getQuantity()).append(',')
+                            .append(row.getCondition()).append(',')
+                            .append(Boolean.TRUE.equals(row.getIsReverseHolo())).append(',');
+                    appendCsvField(row.getNotes());
+                    line.append(',').append(nullToEmpty(row.getAcquiredDate()))
+                            .append(',').append(nullToEmpty(row.getCreatedAt()))
+                            .append(',').append(nullToEmpty(row.getUpdatedAt()))
+                            .append('\n');
+                    buffer.writeBytes(line.toString().getBytes(StandardCharsets.UTF_8));
+                }
+                if (buffer.size() >= CHUNK_SIZE) {
+                    flush();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        void flush() throws IOException {
+            if (buffer.size() > 0) {
+                sink.accept(buffer.toByteArray());
+                buffer.reset();
+            }
+        }
+
+        private void appendCsvField(String value) {
+            if (value == null) {
+                return;
+            }
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+                line.append(value);
+                return;
+            }
+            line.append('"').append(value.replace("\"", "\"\"")).append('"');
+        }
+
+        private Object nullToEmpty(Object value) {
+            return value == null ? "" : value;
+        }
+    }
+
+    /**
+     * Unwinds a partition reader once the export has been aborted
+     */
+    private static class CancellationSignal extends RuntimeException {
+        CancellationSignal() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package no.kristiania.pg3402.collection.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import no.kristiania.pg3402.collection.dto.CollectionChange;
+import no.kristiania.pg3402.collection.dto.ImportSummary;
+import no.kristiania.pg3402.collection.events.CollectionChangedEvent;
+import no.kristiania.pg3402.collection.exception.InvalidCollectionQueryException;
+import no.kristiania.pg3402.collection.repository.CollectionChangeRepository;
+import no.kristiania.pg3402.collection.repository.UserCardImportRepository;
+import org.postgresql.util.PSQLException;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Bulk import of collection rows from CSV.
+ *
+ * The whole file is staged with COPY and merged into user_cards with one
+ * set-based upsert, so importing thousands of rows costs a handful of
+ * statements instead of one request, transaction and event per row.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CollectionImportService {
+
+    private static final int MAX_REPORTED_REJECTIONS = 100;
+    private static final String NUMERIC_VALUE_OUT_OF_RANGE = "22003";
+
+    private final UserCardImportRepository importRepository;
+    private final CollectionChangeRepository changeRepository;
+    private final CollectionStatsService statsService;
+    private final UserCollectionCache collectionCache;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ShardRouter shardRouter;
+
+    /**
+     * Import CSV rows (see UserCardImportRepository.CSV_COLUMNS) into a user's collection.
+     * Invalid rows are rejected individually; the rest are imported atomically.
+     */
+    @Transactional(rollbackFor = IOException.class)
+    public ImportSummary importCards(Long userId, InputStream csv) throws IOException {
+        log.info("Importing cards into user {}'s collection", userId);
+        long start = System.nanoTime();
+        collectionCache.lockUntilCompletion(userId);
+        shardRouter.checkWritable(userId);
+
+        long staged;
+        try {
+            staged = importRepository.stage(csv);
+        } catch (PSQLException e) {
+            // Malformed CSV (wrong column count, unterminated quotes, bad encoding, ...) aborts the
+            // COPY with a data exception; anything else (lost connection, deadlock, ...) is a server error
+            if (isDataException(e)) {
+                throw new InvalidCollectionQueryException("Malformed CSV: " + e.getMessage());
+            }
+            throw new IOException("Failed to stage import", e);
+        } catch (SQLException e) {
+            throw new IOException("Failed to stage import", e);
+        }
+
+        importRepository.validate();
+        long rejected = importRepository.countRejections();
+        List<ImportSummary.RejectedRow> rejections = rejected > 0
+                ? importRepository.findRejections(MAX_REPORTED_REJECTIONS)
+                : List.of();
+
+        List<UserCardImportRepository.MergedCard> merged;
+        try {
+            merged = importRepository.merge(userId);
+        } catch (DataAccessException e) {
+            // Validation caps each card's total within the file; only adding it to a quantity
+            // the user already has can still overflow, which is the client's input too
+            if (e.getMostSpecificCause() instanceof SQLException sqlException
+                    && NUMERIC_VALUE_OUT_OF_RANGE.equals(sqlException.getSQLState())) {
+                throw new InvalidCollectionQueryException(
+                        "Import would take a card's quantity above " + Integer.MAX_VALUE);
+            }
+            throw e;
+        }
+        long inserted = merged.stream().filter(UserCardImportRepository.MergedCard::inserted).count();
+        List<Long> mergedCardIds = merged.stream()
+                .map(UserCardImportRepository.MergedCard::cardId)
+                .collect(Collectors.toList());
+        long latestSeq = changeRepository.recordAll(userId, mergedCardIds, CollectionChange.Operation.UPSERT);
+
+        // One set-based recompute instead of a delta per imported row
+        statsService.repairUser(userId);
+        collectionCache.invalidateAfterCommit(userId);
+        eventPublisher.publishEvent(CollectionChangedEvent.bulkAdded(userId, latestSeq, merged.stream()
+                .filter(UserCardImportRepository.MergedCard::inserted)
+                .map(UserCardImportRepository.MergedCard::cardId)
+                .collect(Collectors.toList())));
+
+        long durationMillis = (System.nanoTime() - start) / 1_000_000;
+        log.info("Imported {} rows into user {}'s collection in {} ms ({} inserted, {} merged, {} rejected)",
+                staged, userId, durationMillis, inserted, merged.size() - inserted, rejected);
+
+        return ImportSummary.builder()
+                .userId(userId)
+                .totalRows(staged)
+                .inserted(inserted)
+                .merged(merged.size() - inserted)
+                .rejected(rejected)
+                .durationMillis(durationMillis)
+                .rejections(rejections)
+                .build();
+    }
+
+    /**
+     * SQLSTATE class 22 (data exception), which covers COPY's malformed-input errors
+     */
+    private static boolean isDataException(SQLException e) {
+        String sqlState = e.getSQLState();
+        return sqlState != null && sqlState.startsWith("22");
+    }
+}
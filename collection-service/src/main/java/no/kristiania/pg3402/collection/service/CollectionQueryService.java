@@ -0,0 +1,129 @@
+package no.kristiania.pg3402.collection.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import no.kristiania.pg3402.collection.dto.UserCardPage;
+import no.kristiania.pg3402.collection.dto.UserCardQuery;
+import no.kristiania.pg3402.collection.dto.UserCardResponse;
+import no.kristiania.pg3402.collection.exception.InvalidCollectionQueryException;
+import no.kristiania.pg3402.collection.model.UserCard;
+import no.kristiania.pg3402.collection.repository.UserCardRepository;
+import no.kristiania.pg3402.collection.repository.UserCardSpecifications;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Filtered, keyset-paginated queries over a user's collection.
+ *
+ * Pages are addressed by the (sort value, card ID) of the last row returned,
+ * so fetching page N costs the same as fetching page 1.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CollectionQueryService {
+
+    public static final int MAX_LIMIT = 500;
+
+    private final UserCardRepository userCardRepository;
+
+    @Transactional(readOnly = true)
+    public UserCardPage queryUserCards(Long userId, UserCardQuery query) {
+        log.info("Querying collection for user {}: {}", userId, query);
+
+        if (query.getLimit() < 1 || query.getLimit() > MAX_LIMIT) {
+            throw new InvalidCollectionQueryException(
+                    String.format("Limit must be between 1 and %d", MAX_LIMIT));
+        }
+
+        Specification<UserCard> spec = buildFilter(userId, query);
+        if (query.getCursor() != null && !query.getCursor().isBlank()) {
+            spec = spec.and(decodeCursor(query));
+        }
+
+        String sortProperty = query.getSort().getProperty();
+        Sort sort = query.getSort() == UserCardQuery.SortField.CARD_ID
+                ? Sort.by(query.getDirection(), "cardId")
+                : Sort.by(query.getDirection(), sortProperty).and(Sort.by(query.getDirection(), "cardId"));
+
+        // Fetch one extra row to know whether another page exists
+        List<UserCard> rows = userCardRepository.findBy(spec, q -> q
+                .sortBy(sort)
+                .limit(query.getLimit() + 1)
+                .all());
+
+        boolean hasMore = rows.size() > query.getLimit();
+        List<UserCard> page = hasMore ? rows.subList(0, query.getLimit()) : rows;
+
+        return UserCardPage.builder()
+                .items(page.stream().map(UserCardResponse::fromEntity).collect(Collectors.toList()))
+                .nextCursor(hasMore ? encodeCursor(page.get(page.size() - 1), query.getSort()) : null)
+                .hasMore(hasMore)
+                .build();
+    }
+
+    private Specification<UserCard> buildFilter(Long userId, UserCardQuery query) {
+        Specification<UserCard> spec = UserCardSpecifications.ownedBy(userId);
+        if (query.getCondition() != null) {
+            spec = spec.and(UserCardSpecifications.hasCondition(query.getCondition()));
+        }
+        if (query.getIsReverseHolo() != null) {
+            spec = spec.and(UserCardSpecifications.isReverseHolo(query.getIsReverseHolo()));
+        }
+        if (query.getAcquiredFrom() != null) {
+            spec = spec.and(UserCardSpecifications.acquiredFrom(query.getAcquiredFrom()));
+        }
+        if (query.getAcquiredTo() != null) {
+            spec = spec.and(UserCardSpecifications.acquiredBefore(query.getAcquiredTo()));
+        }
+        if (query.getQuantityGreaterThan() != null) {
+            spec = spec.and(UserCardSpecifications.quantityGreaterThan(query.getQuantityGreaterThan()));
+        }
+        return spec;
+    }
+
+    /**
+     * Cursor format (before base64url): "SORT_FIELD|value|cardId"
+     */
+    private String encodeCursor(UserCard last, UserCardQuery.SortField sortField) {
+        String value = switch (sortField) {
+            case CARD_ID -> "";
+            case ACQUIRED_DATE -> last.getAcquiredDate().toString();
+            case UPDATED_AT -> last.getUpdatedAt().toString();
+            case QUANTITY -> last.getQuantity().toString();
+        };
+        String raw = sortField.name() + "|" + value + "|" + last.getCardId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Specification<UserCard> decodeCursor(UserCardQuery query) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(query.getCursor()), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|", -1);
+            if (parts.length != 3 || !parts[0].equals(query.getSort().name())) {
+                throw new InvalidCollectionQueryException("Cursor does not match the requested sort order");
+            }
+            String value = parts[1];
+            Long cardId = Long.valueOf(parts[2]);
+            Sort.Direction direction = query.getDirection();
+
+            return switch (query.getSort()) {
+                case CARD_ID -> UserCardSpecifications.after(null, (Long) null, cardId, direction);
+                case ACQUIRED_DATE -> UserCardSpecifications.after("acquiredDate", LocalDateTime.parse(value), cardId, direction);
+                case UPDATED_AT -> UserCardSpecifications.after("updatedAt", LocalDateTime.parse(value), cardId, direction);
+                case QUANTITY -> UserCardSpecifications.after("quantity", Integer.valueOf(value), cardId, direction);
+            };
+        } catch (IllegalArgumentException | DateTimeException e) {
+            throw new InvalidCollectionQueryException("Invalid cursor");
+        }
+    }
+}
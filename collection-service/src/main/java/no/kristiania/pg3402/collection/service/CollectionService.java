@@ -3,20 +3,30 @@
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import no.kristiania.pg3402.collection.config.RabbitMQConfig;
+import no.kristiania.pg3402.collection.dto.CollectionChange;
+import no.kristiania.pg3402.collection.dto.CollectionChangesResponse;
 import no.kristiania.pg3402.collection.dto.UserCardRequest;
 import no.kristiania.pg3402.collection.dto.UserCardResponse;
 import no.kristiania.pg3402.collection.events.CardAddedEvent;
 import no.kristiania.pg3402.collection.events.CardRemovedEvent;
 import no.kristiania.pg3402.collection.events.CardUpdatedEvent;
+import no.kristiania.pg3402.collection.events.CollectionChangedEvent;
 import no.kristiania.pg3402.collection.exception.CardAlreadyOwnedException;
 import no.kristiania.pg3402.collection.exception.CardNotFoundException;
 import no.kristiania.pg3402.collection.model.UserCard;
+import no.kristiania.pg3402.collection.model.UserCollectionStats;
+import no.kristiania.pg3402.collection.repository.CollectionChangeRepository;
 import no.kristiania.pg3402.collection.repository.UserCardRepository;
+import no.kristiania.pg3402.collection.repository.UserCollectionStatsRepository;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @Service
@@ -25,7 +35,13 @@
 public class CollectionService {
 
     private final UserCardRepository userCardRepository;
+    private final CollectionChangeRepository changeRepository;
+    private final UserCollectionStatsRepository statsRepository;
+    private final CollectionStatsService statsService;
+    private final UserCollectionCache collectionCache;
     private final RabbitTemplate rabbitTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ShardRouter shardRouter;
 
     /**
      * Add a card to user's collection
@@ -33,6 +49,8 @@ public class CollectionService {
     @Transactional
     public UserCardResponse addCardToCollection(Long userId, UserCardRequest request) {
         log.info("Adding card {} to user {}'s collection", request.getCardId(), userId);
+        collectionCache.lockUntilCompletion(userId);
+        shardRouter.checkWritable(userId);
 
         // Check if user already owns this card
         if (userCardRepository.existsByUserIdAndCardId(userId, request.getCardId())) {
@@ -52,6 +70,11 @@ public UserCardResponse addCardToCollection(Long userId, UserCardRequest request
                 .build();
 
         UserCard savedCard = userCardRepository.save(userCard);
+        long seq = changeRepository.record(userId, savedCard.getCardId(), CollectionChange.Operation.UPSERT);
+        statsService.recordAdded(savedCard);
+        UserCardResponse response = UserCardResponse.fromEntity(savedCard);
+        collectionCache.putAfterCommit(userId, response);
+        publishChange(userId, seq, CollectionChange.Operation.UPSERT, savedCard.getCardId(), response, true);
         log.info("Successfully added card {} to user {}'s collection", request.getCardId(), userId);
 
         // Publish CardAddedEvent to RabbitMQ
@@ -69,32 +92,30 @@ public UserCardResponse addCardToCollection(Long userId, UserCardRequest request
         );
         log.info("Published CardAddedEvent for card {} and user {}", request.getCardId(), userId);
 
-        return UserCardResponse.fromEntity(savedCard);
+        return response;
     }
 
     /**
      * Get all cards in user's collection
+     * Served from the per-user cache; no transaction (or connection) is opened on a hit
      */
-    @Transactional(readOnly = true)
     public List<UserCardResponse> getUserCollection(Long userId) {
         log.info("Fetching collection for user {}", userId);
-        List<UserCard> userCards = userCardRepository.findByUserId(userId);
-        return userCards.stream()
-                .map(UserCardResponse::fromEntity)
-                .collect(Collectors.toList());
+        return cachedCollection(userId).cards();
     }
 
     /**
      * Get a specific card from user's collection
      */
-    @Transactional(readOnly = true)
     public UserCardResponse getUserCard(Long userId, Long cardId) {
         log.info("Fetching card {} for user {}", cardId, userId);
-        UserCard userCard = userCardRepository.findByUserIdAndCardId(userId, cardId)
-                .orElseThrow(() -> new CardNotFoundException(
-                        String.format("Card %d not found in user %d's collection", cardId, userId)
-                ));
-        return UserCardResponse.fromEntity(userCard);
+        UserCardResponse userCard = cachedCollection(userId).get(cardId);
+        if (userCard == null) {
+            throw new CardNotFoundException(
+                    String.format("Card %d not found in user %d's collection", cardId, userId)
+            );
+        }
+        return userCard;
     }
 
     /**
@@ -103,21 +124,40 @@ public UserCardResponse getUserCard(Long userId, Long cardId) {
     @Transactional
     public UserCardResponse updateUserCard(Long userId, Long cardId, UserCardRequest request) {
         log.info("Updating card {} for user {}", cardId, userId);
+        collectionCache.lockUntilCompletion(userId);
+        shardRouter.checkWritable(userId);
 
         UserCard userCard = userCardRepository.findByUserIdAndCardId(userId, cardId)
                 .orElseThrow(() -> new CardNotFoundException(
                         String.format("Card %d not found in user %d's collection", cardId, userId)
                 ));
 
-        userCard.setQuantity(request.getQuantity());
-        userCard.setCondition(request.getCondition());
-        userCard.setIsReverseHolo(request.getIsReverseHolo());
-        userCard.setNotes(request.getNotes());
-        if (request.getAcquiredDate() != null) {
-            userCard.setAcquiredDate(request.getAcquiredDate());
-        }
+        UserCard.CardCondition oldCondition = userCard.getCondition();
+        Boolean oldIsReverseHolo = userCard.getIsReverseHolo();
+        Integer oldQuantity = userCard.getQuantity();
+
+        LocalDateTime acquiredDate = request.getAcquiredDate() != null
+                ? request.getAcquiredDate()
+                : userCard.getAcquiredDate();
+        LocalDateTime updatedAt = LocalDateTime.now();
+        // A user-qualified UPDATE touches one partition. It runs before the entity is changed (so
+        // nothing flushes an UPDATE ... WHERE id = ?) and detaches it; the entity then only carries
+        // the new values for the stats and the response
+        userCardRepository.updateByUserIdAndCardId(userId, cardId, request.getQuantity(), request.getCondition(),
+                request.getIsReverseHolo(), request.getNotes(), acquiredDate, updatedAt);
 
-        UserCard updatedCard = userCardRepository.save(userCard);
+        UserCard updatedCard = userCard;
+        updatedCard.setQuantity(request.getQuantity());
+        updatedCard.setCondition(request.getCondition());
+        updatedCard.setIsReverseHolo(request.getIsReverseHolo());
+        updatedCard.setNotes(request.getNotes());
+        updatedCard.setAcquiredDate(acquiredDate);
+        updatedCard.setUpdatedAt(updatedAt);
+        long seq = changeRepository.record(userId, cardId, CollectionChange.Operation.UPSERT);
+        statsService.recordUpdated(updatedCard, oldCondition, oldIsReverseHolo, oldQuantity);
+        UserCardResponse response = UserCardResponse.fromEntity(updatedCard);
+        collectionCache.putAfterCommit(userId, response);
+        publishChange(userId, seq, CollectionChange.Operation.UPSERT, cardId, response, false);
         log.info("Successfully updated card {} for user {}", cardId, userId);
 
         // Publish CardUpdatedEvent to RabbitMQ
@@ -134,7 +174,7 @@ public UserCardResponse updateUserCard(Long userId, Long cardId, UserCardRequest
         );
         log.info("Published CardUpdatedEvent for card {} and user {}", cardId, userId);
 
-        return UserCardResponse.fromEntity(updatedCard);
+        return response;
     }
 
     /**
@@ -143,14 +183,20 @@ public UserCardResponse updateUserCard(Long userId, Long cardId, UserCardRequest
     @Transactional
     public void removeCardFromCollection(Long userId, Long cardId) {
         log.info("Removing card {} from user {}'s collection", cardId, userId);
+        collectionCache.lockUntilCompletion(userId);
+        shardRouter.checkWritable(userId);
 
-        if (!userCardRepository.existsByUserIdAndCardId(userId, cardId)) {
-            throw new CardNotFoundException(
-                    String.format("Card %d not found in user %d's collection", cardId, userId)
-            );
-        }
+        UserCard userCard = userCardRepository.findByUserIdAndCardId(userId, cardId)
+                .orElseThrow(() -> new CardNotFoundException(
+                        String.format("Card %d not found in user %d's collection", cardId, userId)
+                ));
 
+        // By user and card, not the entity's DELETE ... WHERE id = ?, so only one partition is touched
         userCardRepository.deleteByUserIdAndCardId(userId, cardId);
+        long seq = changeRepository.record(userId, cardId, CollectionChange.Operation.REMOVE);
+        statsService.recordRemoved(userCard);
+        collectionCache.removeAfterCommit(userId, cardId);
+        publishChange(userId, seq, CollectionChange.Operation.REMOVE, cardId, null, false);
         log.info("Successfully removed card {} from user {}'s collection", cardId, userId);
 
         // Publish CardRemovedEvent to RabbitMQ
@@ -165,28 +211,104 @@ public void removeCardFromCollection(Long userId, Long cardId) {
 
     /**
      * Get collection statistics for a user
+     * Served from the incrementally maintained user_collection_stats buckets
      */
     @Transactional(readOnly = true)
     public CollectionStats getCollectionStats(Long userId) {
         log.info("Fetching collection stats for user {}", userId);
 
-        Long uniqueCards = userCardRepository.countUniqueCardsByUserId(userId);
-        Long totalCards = userCardRepository.sumQuantityByUserId(userId);
+        long uniqueCards = 0;
+        long totalCards = 0;
+        long reverseHoloUniqueCards = 0;
+        long reverseHoloTotalCards = 0;
+        Map<UserCard.CardCondition, Long> uniqueByCondition = new EnumMap<>(UserCard.CardCondition.class);
+        Map<UserCard.CardCondition, Long> totalByCondition = new EnumMap<>(UserCard.CardCondition.class);
+
+        for (UserCollectionStats bucket : statsRepository.findByIdUserId(userId)) {
+            UserCard.CardCondition condition = bucket.getId().getCondition();
+            uniqueCards += bucket.getUniqueCards();
+            totalCards += bucket.getTotalCards();
+            uniqueByCondition.merge(condition, bucket.getUniqueCards(), Long::sum);
+            totalByCondition.merge(condition, bucket.getTotalCards(), Long::sum);
+            if (bucket.getId().getIsReverseHolo()) {
+                reverseHoloUniqueCards += bucket.getUniqueCards();
+                reverseHoloTotalCards += bucket.getTotalCards();
+            }
+        }
+        uniqueByCondition.values().removeIf(count -> count == 0);
+        totalByCondition.values().removeIf(count -> count == 0);
 
         return CollectionStats.builder()
                 .userId(userId)
-                .uniqueCards(uniqueCards != null ? uniqueCards : 0L)
-                .totalCards(totalCards != null ? totalCards : 0L)
+                .uniqueCards(uniqueCards)
+                .totalCards(totalCards)
+                .reverseHoloUniqueCards(reverseHoloUniqueCards)
+                .reverseHoloTotalCards(reverseHoloTotalCards)
+                .uniqueCardsByCondition(uniqueByCondition)
+                .totalCardsByCondition(totalByCondition)
                 .build();
     }
 
     /**
-     * Get list of card IDs owned by a user (for progress service)
+     * Recompute collection statistics for a user from their cards
+     */
+    public CollectionStats repairCollectionStats(Long userId) {
+        log.info("Repairing collection stats for user {}", userId);
+        statsService.repairUser(userId);
+        return getCollectionStats(userId);
+    }
+
+    /**
+     * Get changes to a user's collection after the given sequence number
+     * Removed cards are returned as REMOVE tombstones
      */
     @Transactional(readOnly = true)
+    public CollectionChangesResponse getChangesSince(Long userId, long since, int limit) {
+        log.info("Fetching changes for user {} since {}", userId, since);
+        long latestSeq = changeRepository.latestSeq(userId);
+        List<CollectionChange> changes = since >= latestSeq
+                ? List.of()
+                : changeRepository.findSince(userId, since, limit);
+        long nextSince = changes.isEmpty() ? Math.max(since, 0) : changes.get(changes.size() - 1).getSeq();
+
+        return CollectionChangesResponse.builder()
+                .userId(userId)
+                .since(since)
+                .nextSince(nextSince)
+                .latestSeq(latestSeq)
+                .hasMore(nextSince < latestSeq)
+                .changes(changes)
+                .build();
+    }
+
+    /**
+     * Get list of card IDs owned by a user (for progress service)
+     */
     public List<Long> getUserCardIds(Long userId) {
         log.info("Fetching card IDs for user {}", userId);
-        return userCardRepository.findCardIdsByUserId(userId);
+        return cachedCollection(userId).cardIds();
+    }
+
+    /**
+     * Announce a change in-process; listeners receive it after the transaction commits
+     */
+    private void publishChange(Long userId, long seq, CollectionChange.Operation operation,
+                               Long cardId, UserCardResponse card, boolean added) {
+        CollectionChange change = CollectionChange.builder()
+                .seq(seq)
+                .cardId(cardId)
+                .operation(operation)
+                .card(card)
+                .build();
+        eventPublisher.publishEvent(added
+                ? CollectionChangedEvent.added(userId, change)
+                : CollectionChangedEvent.changed(userId, change));
+    }
+
+    private UserCollectionCache.CachedCollection cachedCollection(Long userId) {
+        return collectionCache.get(userId, id -> userCardRepository.findByUserId(id).stream()
+                .map(UserCardResponse::fromEntity)
+                .collect(Collectors.toList()));
     }
 
     @lombok.Data
@@ -197,5 +319,9 @@ public static class CollectionStats {
         private Long userId;
         private Long uniqueCards;
         private Long totalCards;
+        private Long reverseHoloUniqueCards;
+        private Long reverseHoloTotalCards;
+        private Map<UserCard.CardCondition, Long> uniqueCardsByCondition;
+        private Map<UserCard.CardCondition, Long> totalCardsByCondition;
     }
 }
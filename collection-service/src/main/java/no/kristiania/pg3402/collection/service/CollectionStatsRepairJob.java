@@ -0,0 +1,71 @@
+package no.kristiania.pg3402.collection.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import no.kristiania.pg3402.collection.repository.UserCollectionStatsRepository;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically recomputes every user's collection stats from user_cards.
+ * Counters are kept exact by CollectionService, so this only repairs drift
+ * from manual database edits or failed deployments.
+ *
+ * The repair covers every user and can take a long time, so it runs on its own
+ * thread instead of holding up the shared scheduler thread.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class CollectionStatsRepairJob {
+
+    private final UserCollectionStatsRepository statsRepository;
+    private final CollectionStatsService statsService;
+    private final ShardRouter shardRouter;
+    // At most one repair running and one waiting
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(1),
+            r -> {
+                Thread thread = new Thread(r, "collection-stats-repair");
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.DiscardPolicy());
+
+    @Scheduled(cron = "${collection.stats.repair-cron:0 30 3 * * *}")
+    public void scheduleRepair() {
+        executor.execute(this::repairAll);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public void repairAll() {
+        shardRouter.forEachShard(this::repairShard);
+    }
+
+    private void repairShard(String shard) {
+        List<Long> userIds = statsRepository.findAllUserIds();
+        log.info("Repairing collection stats for {} users on shard {}", userIds.size(), shard);
+
+        int failed = 0;
+        for (Long userId : userIds) {
+            try {
+                statsService.repairUser(userId);
+            } catch (Exception e) {
+                failed++;
+                log.error("Failed to repair collection stats for user {}: {}", userId, e.getMessage());
+            }
+        }
+
+        log.info("Collection stats repair completed on shard {} ({} users, {} failed)", shard, userIds.size(), failed);
+    }
+}
@@ -0,0 +1,67 @@
+package no.kristiania.pg3402.collection.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import no.kristiania.pg3402.collection.model.UserCard;
+import no.kristiania.pg3402.collection.repository.UserCollectionStatsRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Maintains the per-user counters in user_collection_stats.
+ * Every method joins the caller's transaction, so counters commit or roll back
+ * together with the user_cards change they describe.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CollectionStatsService {
+
+    private final UserCollectionStatsRepository statsRepository;
+
+    /**
+     * Count a newly added card
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordAdded(UserCard userCard) {
+        apply(userCard.getUserId(), userCard.getCondition(), userCard.getIsReverseHolo(),
+                1, userCard.getQuantity());
+    }
+
+    /**
+     * Move a card's counts from its previous bucket to its current one
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordUpdated(UserCard userCard, UserCard.CardCondition oldCondition,
+                              Boolean oldIsReverseHolo, Integer oldQuantity) {
+        apply(userCard.getUserId(), oldCondition, oldIsReverseHolo, -1, -oldQuantity);
+        apply(userCard.getUserId(), userCard.getCondition(), userCard.getIsReverseHolo(),
+                1, userCard.getQuantity());
+    }
+
+    /**
+     * Uncount a removed card
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordRemoved(UserCard userCard) {
+        apply(userCard.getUserId(), userCard.getCondition(), userCard.getIsReverseHolo(),
+                -1, -userCard.getQuantity());
+    }
+
+    /**
+     * Recompute a user's counters from user_cards, repairing any drift
+     */
+    @Transactional
+    public void repairUser(Long userId) {
+        log.debug("Recomputing collection stats for user {}", userId);
+        statsRepository.deleteAllForUser(userId);
+        statsRepository.recomputeForUser(userId);
+    }
+
+    private void apply(Long userId, UserCard.CardCondition condition, Boolean isReverseHolo,
+                       long uniqueDelta, long totalDelta) {
+        statsRepository.applyDelta(userId, condition.name(), Boolean.TRUE.equals(isReverseHolo),
+                uniqueDelta, totalDelta);
+    }
+}
@@ -0,0 +1,603 @@
+package no.kristiania.pg3402.collection.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import no.kristiania.pg3402.collection.dto.CardRecommendation;
+import no.kristiania.pg3402.collection.dto.CollectionChange;
+import no.kristiania.pg3402.collection.dto.RecommendationsResponse;
+import no.kristiania.pg3402.collection.events.CollectionChangedEvent;
+import no.kristiania.pg3402.collection.exception.IndexNotReadyException;
+import no.kristiania.pg3402.collection.exception.InvalidCollectionQueryException;
+import no.kristiania.pg3402.collection.repository.CardOwnershipRepository;
+import no.kristiania.pg3402.collection.repository.CardOwnershipRepository.OwnedCards;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * "Collectors who own X also own Y" recommendations.
+ *
+ * Scores come from a top-k pruned co-ownership matrix (see CoOccurrenceMatrix),
+ * so a request costs (cards owned x k) lookups instead of a self-join over
+ * user_cards. The matrix is rebuilt periodically in parallel over hash
+ * partitions of users, and kept current in between from committed collection
+ * changes (including other replicas', relayed by CollectionChangeRelay).
+ *
+ * Changes are applied on a single update thread, off the committing request's
+ * thread, as a delta against the user's cards as of the change: the cards and
+ * the change sequence are read in one statement. If a later change has already
+ * landed, the user's changes are held and netted with the events still to come
+ * until they reach the sequence read, then applied together; users whose events
+ * never catch up are given up on after a timeout. Changes committed while a
+ * rebuild scans are buffered and replayed onto the new matrix, except those at
+ * or below the sequence the scan saw for that user. Whenever an update cannot
+ * be applied exactly (buffer or queue full, a deferral timing out, a collection
+ * crossing max-user-cards) the matrix is marked dirty and rebuilt on the next
+ * dirty check.
+ */
+@Service
+@Slf4j
+public class RecommendationService {
+
+    public static final int MAX_LIMIT = 100;
+
+    private static final int MAX_PENDING_DURING_REBUILD = 100_000;
+
+    private static final int MAX_DEFERRED_USERS = 10_000;
+
+    private final CollectionService collectionService;
+    private final CardOwnershipRepository ownershipRepository;
+    private final CardOwnershipIndex ownershipIndex;
+    private final ShardRouter shardRouter;
+    private final TransactionTemplate readOnlyTransaction;
+    private final int topK;
+    private final int partitions;
+    private final int parallelism;
+    private final int maxUserCards;
+    private final long maxBulkPairs;
+    private final long deferralTimeoutNanos;
+
+    private final ThreadPoolExecutor updateExecutor;
+    // Rebuilds take a while; they run here rather than on the shared scheduler thread
+    private final ThreadPoolExecutor rebuildExecutor;
+    private final Counter droppedUpdates;
+    private final AtomicBoolean rebuilding = new AtomicBoolean(false);
+    private final AtomicBoolean dirty = new AtomicBoolean(false);
+    private final Object swapLock = new Object();
+    private volatile CoOccurrenceMatrix matrix;
+    private volatile LocalDateTime lastRebuiltAt;
+    private List<PendingUpdate> pendingDuringRebuild;
+    // Only touched on the update thread
+    private final Map<Long, UserChanges> userChanges = new HashMap<>();
+
+    public RecommendationService(CollectionService collectionService,
+                                 CardOwnershipRepository ownershipRepository,
+                                 CardOwnershipIndex ownershipIndex,
+                                 ShardRouter shardRouter,
+                                 PlatformTransactionManager transactionManager,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${collection.recommendations.top-k:50}") int topK,
+                                 @Value("${collection.recommendations.partitions:8}") int partitions,
+                                 @Value("${collection.recommendations.parallelism:4}") int parallelism,
+                                 @Value("${collection.recommendations.max-user-cards:2000}") int maxUserCards,
+                                 @Value("${collection.recommendations.max-bulk-pairs:1000000}") long maxBulkPairs,
+                                 @Value("${collection.recommendations.deferral-timeout:PT1M}") Duration deferralTimeout) {
+        this.collectionService = collectionService;
+        this.ownershipRepository = ownershipRepository;
+        this.ownershipIndex = ownershipIndex;
+        this.shardRouter = shardRouter;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.topK = topK;
+        this.partitions = Math.max(1, partitions);
+        this.parallelism = Math.max(1, parallelism);
+        this.maxUserCards = maxUserCards;
+        this.maxBulkPairs = maxBulkPairs;
+        this.deferralTimeoutNanos = deferralTimeout.toNanos();
+
+        this.droppedUpdates = Counter.builder("collection.recommendations.updates.dropped")
+                .description("Incremental matrix updates that could not be applied; the matrix is rebuilt")
+                .register(meterRegistry);
+        this.updateExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(10_000),
+                r -> {
+                    Thread thread = new Thread(r, "recommendation-updates");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (task, executor) -> markDirty());
+        // One rebuild at a time and at most one waiting; a rebuild asked for meanwhile is covered by it
+        this.rebuildExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(1),
+                r -> {
+                    Thread thread = new Thread(r, "recommendation-rebuild");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.DiscardPolicy());
+
+        Gauge.builder("collection.recommendations.matrix.cards", this,
+                        service -> service.matrix != null ? service.matrix.cardCount() : 0)
+                .description("Cards with a row in the co-ownership matrix")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStartup() {
+        rebuildExecutor.execute(this::rebuildQuietly);
+    }
+
+    @Scheduled(cron = "${collection.recommendations.rebuild-cron:0 0 4 * * *}")
+    public void scheduledRebuild() {
+        rebuildExecutor.execute(this::rebuildQuietly);
+    }
+
+    private void rebuildQuietly() {
+        try {
+            rebuild();
+        } catch (RuntimeException e) {
+            log.error("Failed to rebuild co-ownership matrix", e);
+        }
+    }
+
+    /**
+     * Rebuild if an incremental update had to be dropped since the last rebuild started
+     */
+    @Scheduled(fixedDelayString = "${collection.recommendations.dirty-check-interval:PT5M}")
+    public void rebuildIfDirty() {
+        if (dirty.get()) {
+            log.info("Co-ownership matrix missed incremental updates; rebuilding");
+            rebuildExecutor.execute(this::rebuildQuietly);
+        }
+    }
+
+    /**
+     * Recompute the matrix from user_cards, one fork-join task per user partition
+     *
+     * @return false if a rebuild was already running
+     */
+    public boolean rebuild() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return false;
+        }
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            synchronized (swapLock) {
+                pendingDuringRebuild = new ArrayList<>();
+            }
+            // The scan starts after this, so it covers anything dropped so far
+            dirty.set(false);
+            ScannedVersions scanned = new ScannedVersions();
+            CoOccurrenceMatrix rebuilt = pool.invoke(new PartitionTask(0, partitions, scanned));
+
+            synchronized (swapLock) {
+                List<PendingUpdate> pending = pendingDuringRebuild;
+                pendingDuringRebuild = null;
+                if (pending != null) {
+                    for (PendingUpdate update : pending) {
+                        // The scan already saw changes up to the user's sequence at that moment.
+                        // Each change commits atomically, so the scan saw all of an event or none of it.
+                        long scannedSeq = scanned.seqOf(update.userId());
+                        if (scannedSeq < update.firstSeq()) {
+                            update.update().accept(rebuilt);
+                        } else if (scannedSeq < update.latestSeq()) {
+                            // The scan saw some of the coalesced events but not all of them
+                            markDirty();
+                        }
+                    }
+                }
+                matrix = rebuilt;
+            }
+            lastRebuiltAt = LocalDateTime.now();
+            log.info("Rebuilt co-ownership matrix: {} cards, {} entries (~{} KB) in {} ms",
+                    rebuilt.cardCount(), rebuilt.entryCount(), rebuilt.estimatedSizeInBytes() / 1024,
+                    (System.nanoTime() - start) / 1_000_000);
+            return true;
+        } finally {
+            synchronized (swapLock) {
+                pendingDuringRebuild = null;
+            }
+            pool.shutdown();
+            rebuilding.set(false);
+        }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onCollectionChanged(CollectionChangedEvent event) {
+        List<Long> removed = event.getChanges().stream()
+                .filter(change -> change.getOperation() == CollectionChange.Operation.REMOVE)
+                .map(CollectionChange::getCardId)
+                .toList();
+        if (event.getAddedCardIds().isEmpty() && removed.isEmpty()) {
+            return;
+        }
+        // The read and the delta run on the update thread, not on the committing request's
+        List<Long> added = event.getAddedCardIds();
+        updateExecutor.execute(() -> accept(event.getUserId(), event.getLatestSeq(), added, removed));
+    }
+
+    /**
+     * Re-read users whose changes are still waiting for a missing event, and give
+     * up on those that have waited longer than the deferral timeout
+     */
+    @Scheduled(fixedDelayString = "${collection.recommendations.deferred-check-interval:PT10S}")
+    public void retryDeferred() {
+        updateExecutor.execute(() -> {
+            long now = System.nanoTime();
+            for (Long userId : List.copyOf(userChanges.keySet())) {
+                UserChanges changes = userChanges.get(userId);
+                if (now - changes.deferredSince > deferralTimeoutNanos) {
+                    log.debug("Gave up waiting for the changes of user {} up to seq {}", userId,
+                            changes.readSeq);
+                    userChanges.remove(userId);
+                    markDirty();
+                } else {
+                    applyIfComplete(userId, changes);
+                }
+            }
+        });
+    }
+
+    /**
+     * Add one event's changes to the user's unapplied changes and apply them if
+     * they now bring the matrix up to the user's current sequence. Runs on the
+     * update thread only.
+     */
+    private void accept(Long userId, long seq, List<Long> added, List<Long> removed) {
+        UserChanges changes = userChanges.get(userId);
+        if (changes == null) {
+            if (userChanges.size() >= MAX_DEFERRED_USERS) {
+                markDirty();
+                return;
+            }
+            changes = new UserChanges();
+            userChanges.put(userId, changes);
+        }
+        changes.add(seq, added, removed);
+        applyIfComplete(userId, changes);
+    }
+
+    private void applyIfComplete(Long userId, UserChanges changes) {
+        OwnedCards owned;
+        try {
+            owned = shardRouter.callForUser(userId, () -> ownershipRepository.findOwnedCards(userId));
+        } catch (RuntimeException e) {
+            log.warn("Failed to update co-ownership matrix for user {}: {}", userId, e.getMessage());
+            userChanges.remove(userId);
+            markDirty();
+            return;
+        }
+        if (owned.lastSeq() != changes.latestSeq) {
+            // Usually a later change whose event is still queued (or still being relayed from
+            // another replica); it joins these changes when it arrives and they apply together
+            if (changes.readSeq != owned.lastSeq()) {
+                changes.readSeq = owned.lastSeq();
+                changes.deferredSince = System.nanoTime();
+            }
+            return;
+        }
+        userChanges.remove(userId);
+        Consumer<CoOccurrenceMatrix> update = delta(changes.added(), changes.removed(), owned.cardIds());
+        if (update != null) {
+            apply(new PendingUpdate(userId, changes.firstSeq, changes.latestSeq, update));
+        }
+    }
+
+    /**
+     * Score the cards a user does not own by co-ownership with the cards they do own
+     */
+    public RecommendationsResponse recommend(Long userId, int limit) {
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new InvalidCollectionQueryException(
+                    String.format("Limit must be between 1 and %d", MAX_LIMIT));
+        }
+        CoOccurrenceMatrix current = matrix;
+        if (current == null) {
+            throw new IndexNotReadyException("Recommendation matrix is still being built");
+        }
+
+        Set<Long> owned = new HashSet<>(collectionService.getUserCardIds(userId));
+        Map<Long, double[]> scores = new HashMap<>();
+        for (Long cardId : owned) {
+            current.forEachNeighbour(cardId, (neighbour, count) -> {
+                if (!owned.contains(neighbour)) {
+                    double[] score = scores.computeIfAbsent(neighbour, id -> new double[2]);
+                    score[0] += count;
+                    score[1]++;
+                }
+            });
+        }
+
+        // Dampen cards that are co-owned with everything simply because everyone owns them
+        PriorityQueue<CardRecommendation> top = new PriorityQueue<>(
+                Comparator.comparingDouble(CardRecommendation::getScore));
+        scores.forEach((cardId, score) -> {
+            CardRecommendation recommendation = CardRecommendation.builder()
+                    .cardId(cardId)
+                    .score(score[0] / Math.sqrt(1 + ownerCount(cardId)))
+                    .supportingCards((int) score[1])
+                    .build();
+            top.add(recommendation);
+            if (top.size() > limit) {
+                top.poll();
+            }
+        });
+
+        List<CardRecommendation> ranked = new ArrayList<>(top);
+        ranked.sort(Comparator.comparingDouble(CardRecommendation::getScore).reversed());
+        return RecommendationsResponse.builder()
+                .userId(userId)
+                .recommendations(ranked)
+                .matrixRebuiltAt(lastRebuiltAt)
+                .build();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        updateExecutor.shutdownNow();
+        rebuildExecutor.shutdownNow();
+    }
+
+    private long ownerCount(Long cardId) {
+        try {
+            return ownershipIndex.countOwners(cardId);
+        } catch (IndexNotReadyException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * The matrix change for one collection change, given the user's cards right
+     * after it: added cards pair with each card owned before and with each other,
+     * removed cards unpair from every card still owned. Null if there is nothing
+     * to apply.
+     */
+    private Consumer<CoOccurrenceMatrix> delta(List<Long> added, List<Long> removed, Set<Long> owned) {
+        Set<Long> before = new HashSet<>(owned);
+        added.forEach(before::remove);
+        before.addAll(removed);
+        boolean includedBefore = before.size() <= maxUserCards;
+        boolean includedAfter = owned.size() <= maxUserCards;
+        if (!includedBefore || !includedAfter) {
+            // Same cut-off as the rebuild: near-complete binders carry little signal.
+            // Crossing it adds or removes the whole collection, which only a rebuild does.
+            if (includedBefore || includedAfter) {
+                markDirty();
+            }
+            return null;
+        }
+        if ((long) added.size() * before.size() > maxBulkPairs) {
+            log.debug("Skipping incremental update for import of {} cards; rebuilding instead", added.size());
+            markDirty();
+            return null;
+        }
+
+        List<Long> previouslyOwned = List.copyOf(before);
+        List<Long> stillOwned = List.copyOf(owned);
+        long[] addedIds = added.stream().mapToLong(Long::longValue).toArray();
+        return target -> {
+            for (Long cardId : removed) {
+                target.addCard(cardId, stillOwned, -1);
+            }
+            for (Long cardId : added) {
+                target.addCard(cardId, previouslyOwned, 1);
+            }
+            target.addCollection(addedIds);
+        };
+    }
+
+    private void apply(PendingUpdate update) {
+        synchronized (swapLock) {
+            if (matrix != null) {
+                update.update().accept(matrix);
+            }
+            if (pendingDuringRebuild == null) {
+                if (matrix == null) {
+                    // No matrix yet and no build running (the startup build failed)
+                    markDirty();
+                }
+            } else if (pendingDuringRebuild.size() < MAX_PENDING_DURING_REBUILD) {
+                pendingDuringRebuild.add(update);
+            } else {
+                markDirty();
+            }
+        }
+    }
+
+    private void markDirty() {
+        droppedUpdates.increment();
+        dirty.set(true);
+    }
+
+    private CoOccurrenceMatrix buildPartition(int partition, ScannedVersions scanned) {
+        CoOccurrenceMatrix partial = new CoOccurrenceMatrix(topK);
+        // A user lives on exactly one shard, so each shard's slice of the partition is independent
+        shardRouter.forEachShard(shard -> {
+            UserCollector collector = new UserCollector(partial, scanned);
+            readOnlyTransaction.executeWithoutResult(status ->
+                    ownershipRepository.forEachOwnershipInPartition(partitions, partition, collector::accept));
+            collector.flush();
+        });
+        return partial;
+    }
+
+    /**
+     * Splits the partition range in halves; leaves read one partition, parents merge
+     */
+    private class PartitionTask extends RecursiveTask<CoOccurrenceMatrix> {
+
+        private final int from;
+        private final int to;
+        private final ScannedVersions scanned;
+
+        PartitionTask(int from, int to, ScannedVersions scanned) {
+            this.from = from;
+            this.to = to;
+            this.scanned = scanned;
+        }
+
+        @Override
+        protected CoOccurrenceMatrix compute() {
+            if (to - from == 1) {
+                return buildPartition(from, scanned);
+            }
+            int middle = (from + to) >>> 1;
+            PartitionTask left = new PartitionTask(from, middle, scanned);
+            left.fork();
+            CoOccurrenceMatrix right = new PartitionTask(middle, to, scanned).compute();
+            CoOccurrenceMatrix merged = left.join();
+            merged.merge(right);
+            return merged;
+        }
+    }
+
+    /**
+     * Groups the (card, user) stream, which is ordered by user, into one
+     * collection at a time, and records the sequence each user was scanned at
+     */
+    private class UserCollector {
+
+        private final CoOccurrenceMatrix target;
+        private final ScannedVersions scanned;
+        private long[] cards = new long[64];
+        private int size;
+        private long currentUser = Long.MIN_VALUE;
+        private long[] users = new long[1024];
+        private long[] seqs = new long[1024];
+        private int userCount;
+
+        UserCollector(CoOccurrenceMatrix target, ScannedVersions scanned) {
+            this.target = target;
+            this.scanned = scanned;
+        }
+
+        void accept(Long cardId, long userId, long lastSeq) {
+            if (userId != currentUser) {
+                flushCollection();
+                currentUser = userId;
+                if (userCount == users.length) {
+                    users = Arrays.copyOf(users, userCount * 2);
+                    seqs = Arrays.copyOf(seqs, userCount * 2);
+                }
+                users[userCount] = userId;
+                seqs[userCount] = lastSeq;
+                userCount++;
+            }
+            if (cardId == null || size > maxUserCards) {
+                return;
+            }
+            if (size == cards.length) {
+                cards = Arrays.copyOf(cards, size * 2);
+            }
+            cards[size++] = cardId;
+        }
+
+        void flush() {
+            flushCollection();
+            scanned.add(Arrays.copyOf(users, userCount), Arrays.copyOf(seqs, userCount));
+            userCount = 0;
+        }
+
+        private void flushCollection() {
+            // uk_user_card allows one row per (user, card), so the cards are already distinct
+            if (size > 1 && size <= maxUserCards) {
+                target.addCollection(Arrays.copyOf(cards, size));
+            }
+            size = 0;
+        }
+    }
+
+    /**
+     * An incremental update tagged with the latest sequences of the first and last
+     * events it covers
+     */
+    private record PendingUpdate(Long userId, long firstSeq, long latestSeq, Consumer<CoOccurrenceMatrix> update) {
+    }
+
+    /**
+     * A user's changes not yet applied to the matrix, netted per card: a card
+     * added and removed again within them cancels out. Confined to the update thread.
+     */
+    private static class UserChanges {
+
+        // +1 added (not owned before these changes), -1 removed (owned before them)
+        private final Map<Long, Integer> net = new HashMap<>();
+        private long firstSeq = Long.MAX_VALUE;
+        private long latestSeq;
+        private long readSeq = -1;
+        private long deferredSince = System.nanoTime();
+
+        void add(long seq, List<Long> added, List<Long> removed) {
+            firstSeq = Math.min(firstSeq, seq);
+            latestSeq = Math.max(latestSeq, seq);
+            // Events of one user can arrive out of order (local and relayed); netting does not care
+            added.forEach(cardId -> net.merge(cardId, 1, (a, b) -> a + b == 0 ? null : a));
+            removed.forEach(cardId -> net.merge(cardId, -1, (a, b) -> a + b == 0 ? null : a));
+        }
+
+        List<Long> added() {
+            return net.entrySet().stream().filter(e -> e.getValue() > 0).map(Map.Entry::getKey).toList();
+        }
+
+        List<Long> removed() {
+            return net.entrySet().stream().filter(e -> e.getValue() < 0).map(Map.Entry::getKey).toList();
+        }
+    }
+
+    /**
+     * Per-user change sequences seen by a rebuild's scan, as sorted slices
+     * (one per partition and shard) searched by binary search
+     */
+    private static class ScannedVersions {
+
+        private final List<long[][]> slices = new ArrayList<>();
+
+        synchronized void add(long[] users, long[] seqs) {
+            if (users.length > 0) {
+                slices.add(new long[][]{users, seqs});
+            }
+        }
+
+        /**
+         * Sequence the scan saw for the user, or -1 if the user had no cards and no changes then
+         */
+        synchronized long seqOf(long userId) {
+            for (long[][] slice : slices) {
+                int index = Arrays.binarySearch(slice[0], userId);
+                if (index >= 0) {
+                    return slice[1][index];
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package no.kristiania.pg3402.collection.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import no.kristiania.pg3402.collection.dto.ShardMoveResult;
+import no.kristiania.pg3402.collection.dto.ShardRange;
+import no.kristiania.pg3402.collection.exception.InvalidCollectionQueryException;
+import no.kristiania.pg3402.collection.exception.ShardMigrationInProgressException;
+import no.kristiania.pg3402.collection.repository.ShardRangeRepository;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Moves user ID ranges between shards, coordinating every replica through
+ * the routing epoch on the primary shard (see {@link ShardRouter}).
+ *
+ * A move persists the range as frozen and waits until every live replica has
+ * acknowledged that epoch (so none accepts writes for the range or has one in
+ * flight), copies each affected user's rows from its current shard to the
+ * target, activates the range (flipping routing), and waits for every replica
+ * to acknowledge that too before deleting the source rows. A failure before
+ * the flip drops the frozen range, leaving routing and source data untouched;
+ * partial copies on the target are overwritten by the next attempt. If a
+ * replica does not acknowledge the flip in time, the source rows are kept.
+ */
+@Service
+@Slf4j
+public class ShardRebalancer {
+
+    /**
+     * Per-user tables and the columns to copy (user_cards.id is per-shard and regenerated)
+     */
+    private static final Map<String, String> USER_TABLES = new LinkedHashMap<>();
+
+    static {
+        USER_TABLES.put("user_cards",
+                "user_id, card_id, quantity, condition, is_reverse_holo, notes, acquired_date, created_at, updated_at");
+        USER_TABLES.put("user_collection_stats",
+                "user_id, condition, is_reverse_holo, unique_cards, total_cards, updated_at");
+        USER_TABLES.put("user_collection_versions", "user_id, last_seq");
+        USER_TABLES.put("user_card_changes", "user_id, card_id, seq, operation, changed_at");
+    }
+
+    private static final Duration REPLICA_POLL_INTERVAL = Duration.ofMillis(200);
+
+    private static final String FIND_USERS_IN_RANGE =
+            "SELECT user_id FROM user_cards WHERE user_id BETWEEN ? AND ? " +
+            "UNION SELECT user_id FROM user_collection_versions WHERE user_id BETWEEN ? AND ?";
+
+    private final ShardRouter shardRouter;
+    private final ShardRangeRepository shardRangeRepository;
+    private final MeterRegistry meterRegistry;
+
+    public ShardRebalancer(ShardRouter shardRouter,
+                           ShardRangeRepository shardRangeRepository,
+                           MeterRegistry meterRegistry) {
+        this.shardRouter = shardRouter;
+        this.shardRangeRepository = shardRangeRepository;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Move every user in [fromUserId, toUserId] to the target shard
+     */
+    public synchronized ShardMoveResult moveRange(long fromUserId, long toUserId, String targetShard) {
+        if (fromUserId > toUserId) {
+            throw new InvalidCollectionQueryException("fromUserId must not be greater than toUserId");
+        }
+        if (!shardRouter.shardNames().contains(targetShard)) {
+            throw new InvalidCollectionQueryException("Unknown shard: " + targetShard);
+        }
+
+        ShardRange range = new ShardRange(fromUserId, toUserId, targetShard);
+        log.info("Moving users {}..{} to shard {}", fromUserId, toUserId, targetShard);
+        Timer.Sample sample = Timer.start(meterRegistry);
+        long start = System.nanoTime();
+
+        ShardRangeRepository.RangeChange frozen = shardRangeRepository.freeze(range, shardRouter.instanceId())
+                .orElseThrow(() -> new ShardMigrationInProgressException("Another shard move is in progress"));
+        boolean flipped = false;
+        try {
+            shardRouter.refresh();
+            if (!awaitReplicas(frozen.epoch())) {
+                throw new ShardMigrationInProgressException(
+                        "Replicas did not acknowledge the freeze in time; move of users " + fromUserId + ".." +
+                        toUserId + " aborted");
+            }
+
+            DataSource target = shardRouter.dataSources().get(targetShard);
+            Map<String, List<Long>> usersBySource = new LinkedHashMap<>();
+            for (String source : shardRouter.shardNames()) {
+                if (source.equals(targetShard)) {
+                    continue;
+                }
+                JdbcTemplate sourceJdbc = new JdbcTemplate(shardRouter.dataSources().get(source));
+                List<Long> users = sourceJdbc.queryForList(FIND_USERS_IN_RANGE, Long.class,
+                                fromUserId, toUserId, fromUserId, toUserId).stream()
+                        // Skip leftovers of earlier moves: only the shard currently routed to is authoritative
+                        .filter(userId -> source.equals(shardRouter.shardFor(userId)))
+                        .toList();
+                usersBySource.put(source, users);
+            }
+
+            AtomicLong rowsCopied = new AtomicLong();
+            usersBySource.forEach((source, users) -> {
+                JdbcTemplate sourceJdbc = new JdbcTemplate(shardRouter.dataSources().get(source));
+                for (Long userId : users) {
+                    rowsCopied.addAndGet(copyUser(userId, sourceJdbc, target));
+                }
+            });
+
+            // Flip routing; from here on the target is authoritative
+            long activeEpoch = shardRangeRepository.activate(frozen.rangeId())
+                    .orElseThrow(() -> new ShardMigrationInProgressException(
+                            "Freeze of users " + fromUserId + ".." + toUserId + " was released; move aborted"));
+            flipped = true;
+            shardRouter.refresh();
+            // Replicas still on the old routing would read the source rows
+            boolean sourceRowsDeleted = awaitReplicas(activeEpoch);
+            if (!sourceRowsDeleted) {
+                log.warn("Replicas did not acknowledge routing epoch {} in time; keeping the source rows of users " +
+                        "{}..{}", activeEpoch, fromUserId, toUserId);
+            }
+
+            usersBySource.forEach((source, users) -> {
+                if (sourceRowsDeleted) {
+                    DataSource sourceDataSource = shardRouter.dataSources().get(source);
+                    for (Long userId : users) {
+                        deleteUser(userId, sourceDataSource);
+                    }
+                }
+                meterRegistry.counter("collection.shard.users.moved", "from", source, "to", targetShard)
+                        .increment(users.size());
+            });
+
+            Map<String, Integer> usersMoved = new LinkedHashMap<>();
+            usersBySource.forEach((source, users) -> usersMoved.put(source, users.size()));
+            long durationMillis = (System.nanoTime() - start) / 1_000_000;
+            log.info("Moved users {}..{} to shard {} in {} ms: {}", fromUserId, toUserId, targetShard,
+                    durationMillis, usersMoved);
+
+            return ShardMoveResult.builder()
+                    .range(range)
+                    .usersMoved(usersMoved)
+                    .rowsCopied(rowsCopied.get())
+                    .durationMillis(durationMillis)
+                    .sourceRowsDeleted(sourceRowsDeleted)
+                    .build();
+        } finally {
+            if (!flipped) {
+                shardRangeRepository.remove(frozen.rangeId());
+                shardRouter.refresh();
+            }
+            sample.stop(meterRegistry.timer("collection.shard.rebalance", "to", targetShard));
+        }
+    }
+
+    /**
+     * Wait until no live replica is behind the epoch; false if some still are
+     * after twice the replica timeout
+     */
+    private boolean awaitReplicas(long epoch) {
+        Duration replicaTimeout = shardRouter.replicaTimeout();
+        long deadline = System.nanoTime() + replicaTimeout.multipliedBy(2).toNanos();
+        while (true) {
+            List<String> behind = shardRangeRepository.findReplicasBehind(epoch, replicaTimeout);
+            if (behind.isEmpty()) {
+                return true;
+            }
+            if (System.nanoTime() > deadline) {
+                log.warn("Replicas behind shard routing epoch {}: {}", epoch, behind);
+                return false;
+            }
+            try {
+                Thread.sleep(REPLICA_POLL_INTERVAL.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
+    private long copyUser(Long userId, JdbcTemplate sourceJdbc, DataSource target) {
+        JdbcTemplate targetJdbc = new JdbcTemplate(target);
+        return inTransaction(target).execute(status -> {
+            long copied = 0;
+            for (Map.Entry<String, String> table : USER_TABLES.entrySet()) {
+                String columns = table.getValue();
+                int columnCount = columns.split(",").length;
+                List<Object[]> rows = sourceJdbc.query(
+                        "SELECT " + columns + " FROM " + table.getKey() + " WHERE user_id = ?",
+                        (rs, i) -> {
+                            Object[] row = new Object[columnCount];
+                            for (int c = 0; c < columnCount; c++) {
+                                row[c] = rs.getObject(c + 1);
+                            }
+                            return row;
+                        },
+                        userId);
+                targetJdbc.update("DELETE FROM " + table.getKey() + " WHERE user_id = ?", userId);
+                if (!rows.isEmpty()) {
+                    String placeholders = "?" + ", ?".repeat(columnCount - 1);
+                    targetJdbc.batchUpdate(
+                            "INSERT INTO " + table.getKey() + " (" + columns + ") VALUES (" + placeholders + ")", rows);
+                    copied += rows.size();
+                }
+            }
+            return copied;
+        });
+    }
+
+    private void deleteUser(Long userId, DataSource source) {
+        JdbcTemplate sourceJdbc = new JdbcTemplate(source);
+        inTransaction(source).executeWithoutResult(status ->
+                USER_TABLES.keySet().forEach(table ->
+                        sourceJdbc.update("DELETE FROM " + table + " WHERE user_id = ?", userId)));
+    }
+
+    private TransactionTemplate inTransaction(DataSource dataSource) {
+        return new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    }
+}
@@ -0,0 +1,330 @@
+package no.kristiania.pg3402.collection.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import no.kristiania.pg3402.collection.config.ShardContext;
+import no.kristiania.pg3402.collection.config.ShardDataSources;
+import no.kristiania.pg3402.collection.config.ShardingProperties;
+import no.kristiania.pg3402.collection.dto.ShardRange;
+import no.kristiania.pg3402.collection.exception.ShardMigrationInProgressException;
+import no.kristiania.pg3402.collection.repository.ShardRangeRepository;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Maps users to shards and binds the shard for the current thread.
+ *
+ * A user's shard is the newest pinned range containing the user ID (from
+ * configuration, then ranges persisted by the rebalancer), falling back to the
+ * consistent-hash ring. Everything touching a user's rows must run inside
+ * {@link #callForUser} / {@link #runForUser} (HTTP requests are bound by
+ * ShardRoutingInterceptor); cross-user work iterates {@link #shardNames()}.
+ *
+ * With more than one shard, every replica polls the routing epoch on the
+ * primary shard and reloads the persisted ranges when it changes. It then
+ * acknowledges the epoch, after first waiting for its in-flight writes when
+ * the change froze a range, so the rebalancer knows when all replicas route
+ * (and reject writes) the same way. A replica that cannot reach the primary
+ * shard for half the replica timeout rejects writes until it can, because the
+ * rebalancer stops waiting for it after the full timeout. The poll runs on its
+ * own thread, so a long scheduled job cannot delay it into that fence.
+ */
+@Component
+@Slf4j
+public class ShardRouter implements SmartInitializingSingleton, DisposableBean {
+
+    private final ShardDataSources shardDataSources;
+    private final ShardRangeRepository shardRangeRepository;
+    private final UserCollectionCache collectionCache;
+    private final ConsistentHashRing ring;
+    private final List<String> shardNames;
+    private final List<ShardRange> configuredRanges;
+    private final String instanceId;
+    private final Duration replicaTimeout;
+    private final Duration routingPollInterval;
+    private final long fenceAfterNanos;
+    private final Map<String, Counter> routedCounters;
+    // Replaced as a whole, so a lookup never sees the ranges of one epoch with the freezes of another
+    private volatile Routing routing = new Routing(-1, List.of(), List.of());
+    private volatile long acknowledgedEpoch = -1;
+    private volatile long lastRefreshNanos = System.nanoTime();
+    private final ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "shard-routing-poll");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Waits for in-flight writes after a freeze without holding up the heartbeat
+    private final ExecutorService drainExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "shard-freeze-drain");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ShardRouter(ShardDataSources shardDataSources,
+                       ShardingProperties properties,
+                       ShardRangeRepository shardRangeRepository,
+                       UserCollectionCache collectionCache,
+                       @Value("${spring.application.name:collection-service}") String applicationName,
+                       MeterRegistry meterRegistry) {
+        this.shardDataSources = shardDataSources;
+        this.shardRangeRepository = shardRangeRepository;
+        this.collectionCache = collectionCache;
+        this.shardNames = shardDataSources.names();
+        this.ring = new ConsistentHashRing(shardNames, Math.max(1, properties.getVirtualNodes()));
+        this.configuredRanges = properties.getRanges().stream()
+                .map(range -> new ShardRange(range.getFrom(), range.getTo(), range.getShard()))
+                .toList();
+        configuredRanges.forEach(range -> shardDataSources.get(range.getShard()));
+        this.instanceId = applicationName + ":" + UUID.randomUUID();
+        this.replicaTimeout = properties.getReplicaTimeout();
+        this.routingPollInterval = properties.getRoutingPollInterval();
+        this.fenceAfterNanos = replicaTimeout.toNanos() / 2;
+
+        Map<String, Counter> counters = new HashMap<>();
+        for (String shard : shardNames) {
+            counters.put(shard, Counter.builder("collection.shard.routed")
+                    .description("Operations routed to a shard")
+                    .tag("shard", shard)
+                    .register(meterRegistry));
+        }
+        this.routedCounters = Map.copyOf(counters);
+    }
+
+    /**
+     * Load persisted ranges once all beans (including Flyway) are initialised,
+     * before the web server accepts requests
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (isSharded()) {
+            refresh();
+            long intervalMillis = Math.max(1, routingPollInterval.toMillis());
+            poller.scheduleWithFixedDelay(this::pollRoutingEpoch, intervalMillis, intervalMillis,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            routing = new Routing(0, newestFirst(configuredRanges, List.of()), List.of());
+        }
+        log.info("Shard router ready: shards={}, pinned ranges={}", shardNames, routing.ranges().size());
+    }
+
+    void pollRoutingEpoch() {
+        try {
+            refresh();
+            if (!routing.frozen().isEmpty() && shardRangeRepository.releaseAbandonedFreezes(replicaTimeout) > 0) {
+                log.warn("Released frozen shard ranges left by a replica that stopped");
+                refresh();
+            }
+        } catch (DataAccessException e) {
+            log.warn("Could not poll the shard routing epoch: {}", e.getMessage());
+        } catch (RuntimeException e) {
+            // An escaped exception would cancel the schedule, and the replica would fence itself for good
+            log.error("Failed to poll the shard routing epoch", e);
+        }
+    }
+
+    /**
+     * Reload the ranges if the routing epoch has changed and acknowledge the
+     * newest epoch this replica has fully applied
+     */
+    public synchronized void refresh() {
+        ShardRangeRepository.RoutingTable table = shardRangeRepository.load();
+        Routing current = routing;
+        if (table.epoch() != current.epoch()) {
+            Routing next = new Routing(table.epoch(), newestFirst(configuredRanges, table.active()),
+                    List.copyOf(table.frozen()));
+            routing = next;
+            if (!next.ranges().equals(current.ranges())) {
+                collectionCache.invalidateAll();
+            }
+            boolean newlyFrozen = !new HashSet<>(current.frozen()).containsAll(next.frozen());
+            // Acknowledged in order, so an epoch is never acknowledged before an earlier freeze has drained
+            drainExecutor.execute(() -> {
+                if (newlyFrozen) {
+                    // Writes that passed checkWritable before the freeze still hold their stripe locks
+                    collectionCache.awaitInFlightWrites();
+                }
+                acknowledgedEpoch = next.epoch();
+            });
+            log.info("Shard routing epoch {}: pinned ranges={}, frozen={}", next.epoch(),
+                    next.ranges().size(), next.frozen());
+        }
+        shardRangeRepository.acknowledge(instanceId, acknowledgedEpoch);
+        lastRefreshNanos = System.nanoTime();
+    }
+
+    @Override
+    public void destroy() {
+        poller.shutdownNow();
+        drainExecutor.shutdownNow();
+        if (isSharded()) {
+            try {
+                shardRangeRepository.forget(instanceId);
+            } catch (DataAccessException e) {
+                log.warn("Could not deregister from shard routing: {}", e.getMessage());
+            }
+        }
+    }
+
+    public List<String> shardNames() {
+        return shardNames;
+    }
+
+    public String shardFor(Long userId) {
+        return shardFor(routing, userId);
+    }
+
+    public <T> T callForUser(Long userId, Supplier<T> action) {
+        return callOnShard(shardFor(userId), action);
+    }
+
+    public void runForUser(Long userId, Runnable action) {
+        callForUser(userId, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    public <T> T callOnShard(String shard, Supplier<T> action) {
+        String previous = ShardContext.current();
+        bind(shard);
+        try {
+            return action.get();
+        } finally {
+            ShardContext.set(previous);
+        }
+    }
+
+    public void runOnShard(String shard, Runnable action) {
+        callOnShard(shard, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * Run the action once per shard, bound to that shard
+     */
+    public void forEachShard(Consumer<String> action) {
+        for (String shard : shardNames) {
+            runOnShard(shard, () -> action.accept(shard));
+        }
+    }
+
+    /**
+     * Bind the user's shard to the current thread until {@link #unbind()}
+     */
+    public void bindUser(Long userId) {
+        bind(shardFor(userId));
+    }
+
+    public void unbind() {
+        ShardContext.clear();
+    }
+
+    /**
+     * Reject writes for users whose rows are being moved. Write paths call this
+     * while holding the user's stripe lock, so a replica can wait for in-flight
+     * writes by cycling through the stripes before acknowledging a freeze.
+     */
+    public void checkWritable(Long userId) {
+        if (isSharded() && System.nanoTime() - lastRefreshNanos > fenceAfterNanos) {
+            throw new ShardMigrationInProgressException(
+                    "Shard routing is out of date; collection of user " + userId + " cannot be changed");
+        }
+        Routing current = routing;
+        String shard = shardFor(current, userId);
+        String bound = ShardContext.current();
+        if (bound != null && !bound.equals(shard)) {
+            // Bound before a move completed; writing now would land on the old shard
+            throw new ShardMigrationInProgressException(
+                    "Collection of user " + userId + " has moved to shard " + shard);
+        }
+        for (ShardRange range : current.frozen()) {
+            if (range.contains(userId)) {
+                throw new ShardMigrationInProgressException(
+                        "Collection of user " + userId + " is being moved to shard " + range.getShard());
+            }
+        }
+    }
+
+    /**
+     * Current routing table, newest range first
+     */
+    public List<ShardRange> getRanges() {
+        return routing.ranges();
+    }
+
+    /**
+     * Routing epoch this replica has applied, or -1 before the first load
+     */
+    public long getEpoch() {
+        return routing.epoch();
+    }
+
+    String instanceId() {
+        return instanceId;
+    }
+
+    Duration replicaTimeout() {
+        return replicaTimeout;
+    }
+
+    ShardDataSources dataSources() {
+        return shardDataSources;
+    }
+
+    private String shardFor(Routing current, Long userId) {
+        if (shardNames.size() == 1) {
+            return shardNames.get(0);
+        }
+        for (ShardRange range : current.ranges()) {
+            if (range.contains(userId)) {
+                return range.getShard();
+            }
+        }
+        return ring.shardFor(userId);
+    }
+
+    private boolean isSharded() {
+        return shardNames.size() > 1;
+    }
+
+    private static List<ShardRange> newestFirst(List<ShardRange> configured, List<ShardRange> persisted) {
+        List<ShardRange> all = new ArrayList<>(configured);
+        all.addAll(persisted);
+        List<ShardRange> newestFirst = new ArrayList<>(all.size());
+        for (int i = all.size() - 1; i >= 0; i--) {
+            newestFirst.add(all.get(i));
+        }
+        return List.copyOf(newestFirst);
+    }
+
+    private void bind(String shard) {
+        if (!routedCounters.containsKey(shard)) {
+            throw new IllegalArgumentException("Unknown shard: " + shard);
+        }
+        routedCounters.get(shard).increment();
+        ShardContext.set(shard);
+    }
+
+    private record Routing(long epoch, List<ShardRange> ranges, List<ShardRange> frozen) {
+    }
+}
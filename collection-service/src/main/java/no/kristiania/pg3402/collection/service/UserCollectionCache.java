@@ -0,0 +1,220 @@
+package no.kristiania.pg3402.collection.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import no.kristiania.pg3402.collection.dto.UserCardResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Bounded per-user cache of the collection read model.
+ *
+ * Entries are weighted by card count, so a few huge binders cannot push out
+ * thousands of small ones. Writers lock the user's stripe for the whole
+ * transaction and apply their change to the cached entry after commit, which
+ * keeps cached collections in commit order for concurrent edits of the same user.
+ */
+@Component
+@Slf4j
+public class UserCollectionCache {
+
+    private static final String CACHE_NAME = "user-collection";
+
+    private final Cache<Long, CachedCollection> cache;
+    private final ReentrantLock[] stripes;
+
+    public UserCollectionCache(
+            @Value("${collection.cache.max-cards:500000}") long maxCards,
+            @Value("${collection.cache.expire-after-write:10m}") Duration expireAfterWrite,
+            @Value("${collection.cache.lock-stripes:64}") int lockStripes,
+            MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxCards)
+                .weigher((Long userId, CachedCollection collection) -> collection.size() + 1)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+
+        int stripeCount = Integer.highestOneBit(Math.max(1, lockStripes - 1)) << 1;
+        this.stripes = new ReentrantLock[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+        Gauge.builder("collection.cache.hit.ratio", cache, c -> c.stats().hitRate())
+                .description("Hit ratio of the per-user collection cache")
+                .register(meterRegistry);
+        Gauge.builder("collection.cache.cards", cache, c -> c.policy().eviction()
+                        .map(eviction -> eviction.weightedSize().orElse(0L)).orElse(0L))
+                .description("Number of cards held by the per-user collection cache")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Get a user's collection, loading it on a miss
+     */
+    public CachedCollection get(Long userId, Function<Long, List<UserCardResponse>> loader) {
+        return cache.get(userId, id -> CachedCollection.of(loader.apply(id)));
+    }
+
+    /**
+     * Lock the user's stripe until the current transaction completes and
+     * store the card in the cached collection once the transaction commits
+     */
+    public void putAfterCommit(Long userId, UserCardResponse card) {
+        afterCommit(userId, collection -> collection.with(card));
+    }
+
+    /**
+     * Lock the user's stripe until the current transaction completes and
+     * drop the card from the cached collection once the transaction commits
+     */
+    public void removeAfterCommit(Long userId, Long cardId) {
+        afterCommit(userId, collection -> collection.without(cardId));
+    }
+
+    /**
+     * Drop the whole cached collection once the current transaction commits
+     * (for bulk changes where rebuilding the entry card by card is wasteful)
+     */
+    public void invalidateAfterCommit(Long userId) {
+        lockUntilCompletion(userId);
+        runAfterCommit(() -> cache.invalidate(userId));
+    }
+
+    /**
+     * Acquire the user's stripe lock and hold it until the current transaction
+     * completes. Write paths call this before touching the database, so the
+     * cache sees concurrent edits of one user in commit order.
+     */
+    public void lockUntilCompletion(Long userId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        ReentrantLock lock = stripeFor(userId);
+        lock.lock();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                lock.unlock();
+            }
+        });
+    }
+
+    /**
+     * Wait until every write transaction that already holds a stripe lock has completed
+     */
+    public void awaitInFlightWrites() {
+        for (ReentrantLock stripe : stripes) {
+            stripe.lock();
+            stripe.unlock();
+        }
+    }
+
+    /**
+     * Drop a user's cached collection now, e.g. after another replica changed it
+     */
+    public void invalidate(Long userId) {
+        cache.invalidate(userId);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    private void afterCommit(Long userId, Function<CachedCollection, CachedCollection> mutation) {
+        lockUntilCompletion(userId);
+        // Mutations are idempotent upserts/removals, so applying one to an entry that was
+        // loaded after the commit is harmless.
+        runAfterCommit(() -> cache.asMap().computeIfPresent(userId, (id, collection) -> mutation.apply(collection)));
+    }
+
+    private void runAfterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private ReentrantLock stripeFor(Long userId) {
+        int hash = Long.hashCode(userId);
+        hash ^= (hash >>> 16);
+        return stripes[hash & (stripes.length - 1)];
+    }
+
+    /**
+     * Immutable snapshot of one user's collection, keyed by card ID
+     */
+    public static final class CachedCollection {
+
+        private final Map<Long, UserCardResponse> cards;
+        private final List<UserCardResponse> values;
+        private final List<Long> cardIds;
+
+        private CachedCollection(Map<Long, UserCardResponse> cards) {
+            this.cards = Collections.unmodifiableMap(cards);
+            this.values = List.copyOf(cards.values());
+            this.cardIds = List.copyOf(cards.keySet());
+        }
+
+        static CachedCollection of(List<UserCardResponse> cards) {
+            Map<Long, UserCardResponse> byCardId = new LinkedHashMap<>();
+            for (UserCardResponse card : cards) {
+                byCardId.put(card.getCardId(), card);
+            }
+            return new CachedCollection(byCardId);
+        }
+
+        CachedCollection with(UserCardResponse card) {
+            Map<Long, UserCardResponse> copy = new LinkedHashMap<>(cards);
+            copy.put(card.getCardId(), card);
+            return new CachedCollection(copy);
+        }
+
+        CachedCollection without(Long cardId) {
+            if (!cards.containsKey(cardId)) {
+                return this;
+            }
+            Map<Long, UserCardResponse> copy = new LinkedHashMap<>(cards);
+            copy.remove(cardId);
+            return new CachedCollection(copy);
+        }
+
+        public UserCardResponse get(Long cardId) {
+            return cards.get(cardId);
+        }
+
+        public List<UserCardResponse> cards() {
+            return values;
+        }
+
+        public List<Long> cardIds() {
+            return cardIds;
+        }
+
+        public int size() {
+            return cards.size();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+-- Create user_collection_stats table holding per-user collection counters.
+-- One row per (user, condition, reverse holo) bucket, so a user has at most
+-- 14 rows no matter how large the collection grows. Rows are maintained in the
+-- same transaction as every add, update and remove in user_cards.
+CREATE TABLE user_collection_stats (
+    user_id BIGINT NOT NULL,
+    condition VARCHAR(20) NOT NULL,
+    is_reverse_holo BOOLEAN NOT NULL,
+    unique_cards BIGINT NOT NULL DEFAULT 0,
+    total_cards BIGINT NOT NULL DEFAULT 0,
+    updated_at TIMESTAMP NOT NULL,
+    CONSTRAINT pk_user_collection_stats PRIMARY KEY (user_id, condition, is_reverse_holo)
+);
+
+-- Backfill counters for existing collections
+INSERT INTO user_collection_stats (user_id, condition, is_reverse_holo, unique_cards, total_cards, updated_at)
+SELECT user_id, condition, COALESCE(is_reverse_holo, FALSE), COUNT(*), SUM(quantity), NOW()
+FROM user_cards
+GROUP BY user_id, condition, COALESCE(is_reverse_holo, FALSE);
+
+-- Add comments
+COMMENT ON TABLE user_collection_stats IS 'Incrementally maintained collection counters per user, condition and reverse holo';
+COMMENT ON COLUMN user_collection_stats.unique_cards IS 'Number of distinct cards in this bucket';
+COMMENT ON COLUMN user_collection_stats.total_cards IS 'Number of copies (sum of quantity) in this bucket';
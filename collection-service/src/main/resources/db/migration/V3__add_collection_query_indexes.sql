@@ -0,0 +1,20 @@
+-- Composite indexes matching the shapes of the filtered, keyset-paginated
+-- collection query (GET /users/{userId}/cards/query). Every query filters by
+-- user_id first and pages by (sort column, card_id), so each index leads with
+-- user_id and ends with card_id as the keyset tie-breaker.
+
+-- acquired_date is a sort key, so it must not be NULL (the entity always sets it)
+UPDATE user_cards SET acquired_date = created_at WHERE acquired_date IS NULL;
+ALTER TABLE user_cards ALTER COLUMN acquired_date SET NOT NULL;
+
+-- Single-column indexes on condition / is_reverse_holo have too few distinct
+-- values to be selective, and user_id alone is covered by uk_user_card
+DROP INDEX IF EXISTS idx_user_cards_condition;
+DROP INDEX IF EXISTS idx_user_cards_reverse_holo;
+DROP INDEX IF EXISTS idx_user_cards_user_id;
+
+CREATE INDEX idx_user_cards_user_condition ON user_cards(user_id, condition, card_id);
+CREATE INDEX idx_user_cards_user_reverse_holo ON user_cards(user_id, card_id) WHERE is_reverse_holo;
+CREATE INDEX idx_user_cards_user_acquired ON user_cards(user_id, acquired_date, card_id);
+CREATE INDEX idx_user_cards_user_updated ON user_cards(user_id, updated_at, card_id);
+CREATE INDEX idx_user_cards_user_quantity ON user_cards(user_id, quantity, card_id);
@@ -0,0 +1,16 @@
+-- Helper for bulk collection imports (POST /users/{userId}/cards/import).
+-- Imported rows are COPY'd into a staging table as raw text and validated
+-- set-based; this function lets a malformed date reject one row instead of
+-- aborting the whole import.
+CREATE OR REPLACE FUNCTION import_try_timestamp(value TEXT) RETURNS TIMESTAMP AS $$
+BEGIN
+    IF value IS NULL OR btrim(value) = '' THEN
+        RETURN NULL;
+    END IF;
+    RETURN btrim(value)::TIMESTAMP;
+EXCEPTION WHEN others THEN
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql IMMUTABLE;
+
+COMMENT ON FUNCTION import_try_timestamp(TEXT) IS 'Parses a timestamp, returning NULL instead of failing on bad input';
@@ -0,0 +1,34 @@
+-- Per-user change sequence for incremental sync (GET /users/{userId}/changes?since=<seq>).
+-- Every add, update, import and remove bumps the user's last_seq and stamps the
+-- affected card with it. Only the latest change per card is kept, so removals
+-- stay behind as tombstones and the log never grows beyond the cards a user has touched.
+CREATE TABLE user_collection_versions (
+    user_id BIGINT PRIMARY KEY,
+    last_seq BIGINT NOT NULL
+);
+
+CREATE TABLE user_card_changes (
+    user_id BIGINT NOT NULL,
+    card_id BIGINT NOT NULL,
+    seq BIGINT NOT NULL,
+    operation VARCHAR(10) NOT NULL,
+    changed_at TIMESTAMP NOT NULL,
+    CONSTRAINT pk_user_card_changes PRIMARY KEY (user_id, card_id)
+);
+
+CREATE UNIQUE INDEX idx_user_card_changes_user_seq ON user_card_changes(user_id, seq);
+
+-- Backfill: every existing card becomes an UPSERT, numbered in update order
+INSERT INTO user_card_changes (user_id, card_id, seq, operation, changed_at)
+SELECT user_id, card_id,
+       ROW_NUMBER() OVER (PARTITION BY user_id ORDER BY updated_at, card_id),
+       'UPSERT', updated_at
+FROM user_cards;
+
+INSERT INTO user_collection_versions (user_id, last_seq)
+SELECT user_id, MAX(seq) FROM user_card_changes GROUP BY user_id;
+
+-- Add comments
+COMMENT ON TABLE user_collection_versions IS 'Latest change sequence number per user';
+COMMENT ON TABLE user_card_changes IS 'Latest change per user card; REMOVE rows are tombstones';
+COMMENT ON COLUMN user_card_changes.operation IS 'UPSERT or REMOVE';
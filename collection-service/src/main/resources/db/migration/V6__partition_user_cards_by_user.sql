@@ -0,0 +1,56 @@
+-- Rebuild user_cards as a hash-partitioned table on user_id.
+--
+-- Every collection query filters by user_id, so the planner prunes to a single
+-- partition: each per-user lookup and insert touches a B-tree a fraction of the
+-- size, and vacuum/autoanalyze work per partition instead of on one huge heap.
+-- The partition count comes from the userCardsPartitions Flyway placeholder
+-- (spring.flyway.placeholders.userCardsPartitions) and is fixed once this has run;
+-- changing it later means another rewrite like this one.
+--
+-- Rows are copied within the migration transaction, which holds an exclusive
+-- lock on user_cards until it commits: run it in a maintenance window.
+
+-- Keep the id sequence alive when the old table is dropped
+ALTER SEQUENCE user_cards_id_seq OWNED BY NONE;
+
+CREATE TABLE user_cards_partitioned (
+    LIKE user_cards INCLUDING DEFAULTS INCLUDING CONSTRAINTS INCLUDING COMMENTS
+) PARTITION BY HASH (user_id);
+
+DO $$
+DECLARE
+    partition_count INTEGER := ${userCardsPartitions};
+BEGIN
+    IF partition_count < 1 THEN
+        RAISE EXCEPTION 'userCardsPartitions must be at least 1, got %', partition_count;
+    END IF;
+    FOR i IN 0 .. partition_count - 1 LOOP
+        EXECUTE format(
+            'CREATE TABLE user_cards_p%s PARTITION OF user_cards_partitioned FOR VALUES WITH (MODULUS %s, REMAINDER %s)',
+            lpad(i::TEXT, 3, '0'), partition_count, i);
+    END LOOP;
+END
+$$;
+
+INSERT INTO user_cards_partitioned SELECT * FROM user_cards;
+
+DROP TABLE user_cards;
+ALTER TABLE user_cards_partitioned RENAME TO user_cards;
+ALTER SEQUENCE user_cards_id_seq OWNED BY user_cards.id;
+
+-- Unique constraints on a partitioned table must include the partition key.
+-- ids still come from one sequence, so they stay unique across partitions.
+ALTER TABLE user_cards ADD CONSTRAINT user_cards_pkey PRIMARY KEY (user_id, id);
+ALTER TABLE user_cards ADD CONSTRAINT uk_user_card UNIQUE (user_id, card_id);
+
+-- Same indexes as before (V1, V3); created on the parent so every partition gets them
+CREATE INDEX idx_user_cards_card_id ON user_cards(card_id);
+CREATE INDEX idx_user_cards_user_condition ON user_cards(user_id, condition, card_id);
+CREATE INDEX idx_user_cards_user_reverse_holo ON user_cards(user_id, card_id) WHERE is_reverse_holo;
+CREATE INDEX idx_user_cards_user_acquired ON user_cards(user_id, acquired_date, card_id);
+CREATE INDEX idx_user_cards_user_updated ON user_cards(user_id, updated_at, card_id);
+CREATE INDEX idx_user_cards_user_quantity ON user_cards(user_id, quantity, card_id);
+
+COMMENT ON TABLE user_cards IS 'Stores user card collections (hash-partitioned by user_id)';
+
+ANALYZE user_cards;
@@ -0,0 +1,11 @@
+-- User ID ranges moved between shards by the rebalancer (POST /admin/shards/move).
+-- Only the primary shard's copy is read; ranges override the consistent-hash
+-- ring, newest first, and survive restarts without editing configuration.
+CREATE TABLE user_shard_ranges (
+    id BIGSERIAL PRIMARY KEY,
+    from_user_id BIGINT NOT NULL,
+    to_user_id BIGINT NOT NULL,
+    shard VARCHAR(64) NOT NULL,
+    moved_at TIMESTAMP NOT NULL,
+    CONSTRAINT chk_user_shard_range CHECK (from_user_id <= to_user_id)
+);
@@ -0,0 +1,4 @@
+-- import_try_timestamp (V4) parses text with ::TIMESTAMP, whose result depends on the
+-- session's DateStyle, so it must not be declared IMMUTABLE (that would let the planner
+-- fold or index its results across sessions). STABLE is the correct volatility.
+ALTER FUNCTION import_try_timestamp(TEXT) STABLE;
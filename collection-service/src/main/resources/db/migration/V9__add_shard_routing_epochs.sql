@@ -0,0 +1,25 @@
+-- Cross-replica shard moves. A move first inserts its range as FROZEN (writes
+-- for those users are rejected), then flips it to ACTIVE (routing changes).
+-- Every change bumps shard_routing.epoch; each replica polls the epoch,
+-- reloads the ranges and records the epoch it has applied in
+-- shard_routing_replicas. The rebalancer waits for every live replica to
+-- reach an epoch before copying, and again before deleting source rows.
+-- A frozen range whose mover (moved_by) has stopped heartbeating is released.
+-- Only the primary shard's copy is read.
+ALTER TABLE user_shard_ranges ADD COLUMN state VARCHAR(16) NOT NULL DEFAULT 'ACTIVE';
+ALTER TABLE user_shard_ranges ADD COLUMN moved_by VARCHAR(128);
+ALTER TABLE user_shard_ranges ADD CONSTRAINT chk_user_shard_range_state CHECK (state IN ('FROZEN', 'ACTIVE'));
+
+CREATE TABLE shard_routing (
+    id SMALLINT PRIMARY KEY,
+    epoch BIGINT NOT NULL,
+    CONSTRAINT chk_shard_routing_single_row CHECK (id = 1)
+);
+
+INSERT INTO shard_routing (id, epoch) VALUES (1, 0);
+
+CREATE TABLE shard_routing_replicas (
+    instance_id VARCHAR(128) PRIMARY KEY,
+    epoch BIGINT NOT NULL,
+    seen_at TIMESTAMP NOT NULL
+);
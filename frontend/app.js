@@ -6,9 +6,8 @@ const API_GATEWAY_URL = isProduction
     : 'http://localhost:8080';
 const API_BASE_URL = `${API_GATEWAY_URL}/api/catalog`;
 const COLLECTION_API_URL = `${API_GATEWAY_URL}/api/collections`;
-const MEDIA_BASE_URL = isProduction
-    ? 'https://your-media-service.onrender.com'  // Replace with your Render URL
-    : 'http://localhost:8084';
+// Card images are served by the gateway; stored URLs point at the old media-service host
+const MEDIA_BASE_URL = `${API_GATEWAY_URL}/api/media`;
 const SET_CODE = 'SV01';
 const USER_ID = 1; // Default user
 
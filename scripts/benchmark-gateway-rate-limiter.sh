@@ -0,0 +1,107 @@
+#!/bin/bash
+
+# Compare gateway throughput and latency with the Redis rate limiter and the local in-memory one
+# (gateway.rate-limiter.mode), using the Compose Redis container as the Redis stand-in and the
+# two fast catalog stubs from docker-compose.lb-simulation.yml as upstream.
+#
+# The response cache and request coalescing are switched off and limits are set high, so every
+# request goes through the limiter and upstream and none is throttled: the difference between
+# the runs is the cost of the limiter itself.
+#
+# Requires hey (https://github.com/rakyll/hey).
+#
+# Usage:
+#   ./scripts/benchmark-gateway-rate-limiter.sh
+#
+# Settings (environment):
+#   MODES        limiter modes to compare (default: "redis local")
+#   DURATION     load duration per mode (default: 30s)
+#   CONCURRENCY  parallel connections (default: 64)
+#   KEEP_RUNNING set to true to leave the stubs and gateway running afterwards
+
+set -euo pipefail
+
+MODES=${MODES:-"redis local"}
+DURATION=${DURATION:-30s}
+CONCURRENCY=${CONCURRENCY:-64}
+GATEWAY=http://localhost:8080
+COMPOSE="docker compose -f docker-compose.yml -f docker-compose.lb-simulation.yml"
+
+cd "$(dirname "$0")/.."
+
+if ! command -v hey > /dev/null; then
+    echo "hey is required: go install github.com/rakyll/hey@latest" >&2
+    exit 1
+fi
+
+WORK_DIR=$(mktemp -d)
+trap 'rm -rf "$WORK_DIR"' EXIT
+
+echo "========================================="
+echo "Gateway rate limiter benchmark"
+echo "========================================="
+echo "   Modes: $MODES"
+echo "   $DURATION per mode, $CONCURRENCY concurrent, upstream: 2 catalog stubs (10 ms)"
+echo ""
+
+echo "1. Starting Redis and stubs..."
+$COMPOSE up -d consul redis catalog-stub-fast-1 catalog-stub-fast-2 > /dev/null
+
+wait_for_gateway() {
+    for _ in $(seq 1 60); do
+        if curl -sf "$GATEWAY/actuator/health" > /dev/null; then
+            return 0
+        fi
+        sleep 2
+    done
+    echo "Gateway did not become healthy" >&2
+    exit 1
+}
+
+RESULTS="$WORK_DIR/results.txt"
+printf "%-8s %10s %8s %8s %8s %10s\n" "mode" "req/s" "p50 ms" "p99 ms" "max ms" "non-200" > "$RESULTS"
+
+step=2
+for mode in $MODES; do
+    echo "$step. Mode: $mode"
+    GATEWAY_RATE_LIMITER=$mode \
+    GATEWAY_RESPONSE_CACHE_ENABLED=false \
+    GATEWAY_COALESCING_ENABLED=false \
+    RATE_LIMIT_REPLENISH_RATE=1000000 \
+    RATE_LIMIT_BURST_CAPACITY=1000000 \
+        $COMPOSE up -d --no-deps --force-recreate api-gateway > /dev/null
+    wait_for_gateway
+
+    # Warm up the JIT and the connection pools
+    hey -z 10s -c "$CONCURRENCY" "$GATEWAY/api/catalog/sets" > /dev/null
+
+    OUT="$WORK_DIR/$mode.txt"
+    hey -z "$DURATION" -c "$CONCURRENCY" "$GATEWAY/api/catalog/sets" > "$OUT"
+
+    awk -v mode="$mode" '
+        /Requests\/sec:/ { rps = $2 }
+        /Slowest:/ { max = $2 * 1000 }
+        /50% in/ { p50 = $3 * 1000 }
+        /99% in/ { p99 = $3 * 1000 }
+        /^ *\[[0-9]+\]/ { code = $1; gsub(/[\[\]]/, "", code); if (code != "200") other += $2 }
+        END { printf "%-8s %10.0f %8.1f %8.1f %8.1f %10d\n", mode, rps, p50, p99, max, other }
+    ' "$OUT" >> "$RESULTS"
+
+    if [ "$mode" = "local" ]; then
+        echo "   Local limiter decisions:"
+        curl -s "$GATEWAY/actuator/prometheus" | grep '^gateway_ratelimiter_' | sed 's/^/      /' || true
+    fi
+    step=$((step + 1))
+done
+
+echo ""
+cat "$RESULTS"
+
+if [ "${KEEP_RUNNING:-false}" != "true" ]; then
+    $COMPOSE stop api-gateway catalog-stub-fast-1 catalog-stub-fast-2 > /dev/null
+    $COMPOSE rm -f api-gateway catalog-stub-fast-1 catalog-stub-fast-2 > /dev/null
+fi
+
+echo "========================================="
+echo "Benchmark complete"
+echo "========================================="
@@ -0,0 +1,209 @@
+#!/bin/bash
+
+# Benchmark per-user query and write latency on user_cards, plain vs hash-partitioned
+# (the layout introduced by collection-service migration V6).
+#
+# Builds two copies of user_cards in a scratch database, loads ROWS rows into each,
+# and runs the same pgbench workloads against both. Uses psql and pgbench when they are
+# installed, otherwise the JDBC stand-in in scripts/user-cards-bench (needs java and the
+# PostgreSQL JDBC driver, found in the local Maven repository or set with PG_JDBC_JAR).
+#
+# Usage:
+#   PGHOST=localhost PGPORT=5433 PGUSER=postgres PGPASSWORD=postgres \
+#     ./scripts/benchmark-user-cards-partitioning.sh
+#
+# Settings (environment):
+#   BENCH_DB     scratch database, created if missing and dropped afterwards (default: user_cards_bench)
+#   ROWS         rows per table (default: 10000000)
+#   CARDS        cards per user (default: 500)
+#   PARTITIONS   hash partitions for the partitioned copy (default: 16)
+#   CLIENTS      pgbench clients (default: 8)
+#   DURATION     seconds per workload (default: 30)
+#   WORKLOADS    workloads to run (default: collection lookup page upsert update update_by_id delete)
+#   PG_JDBC_JAR  PostgreSQL JDBC driver for the stand-in client (default: newest in ~/.m2)
+#   KEEP_BENCH_DB set to true to keep the scratch database for inspection
+
+set -euo pipefail
+
+BENCH_DB=${BENCH_DB:-user_cards_bench}
+ROWS=${ROWS:-10000000}
+CARDS=${CARDS:-500}
+PARTITIONS=${PARTITIONS:-16}
+CLIENTS=${CLIENTS:-8}
+DURATION=${DURATION:-30}
+USERS=$(( ROWS / CARDS ))
+
+cd "$(dirname "$0")/.."
+
+if command -v psql > /dev/null && command -v pgbench > /dev/null; then
+    # run_sql DB: run the SQL on stdin; run_bench DB FILE: run a pgbench script
+    run_sql() { psql -q -v ON_ERROR_STOP=1 -At -F $'\t' -d "$1"; }
+    run_bench() { pgbench -n -M prepared -c "$CLIENTS" -j "$CLIENTS" -T "$DURATION" -f "$2" "$1" 2>&1; }
+else
+    PG_JDBC_JAR=${PG_JDBC_JAR:-$(ls ~/.m2/repository/org/postgresql/postgresql/*/postgresql-*.jar 2> /dev/null \
+        | grep -v sources | sort -V | tail -1)}
+    if ! command -v java > /dev/null || [ ! -f "$PG_JDBC_JAR" ]; then
+        echo "psql and pgbench (PostgreSQL client tools), or java and PG_JDBC_JAR, are required" >&2
+        exit 1
+    fi
+    run_sql() { java -cp "$PG_JDBC_JAR" scripts/user-cards-bench/PgClient.java sql "$1"; }
+    run_bench() { java -cp "$PG_JDBC_JAR" scripts/user-cards-bench/PgClient.java bench "$1" "$2" "$CLIENTS" "$DURATION"; }
+fi
+
+WORK_DIR=$(mktemp -d)
+trap 'rm -rf "$WORK_DIR"' EXIT
+
+echo "========================================="
+echo "user_cards partitioning benchmark"
+echo "========================================="
+echo "   Rows: $ROWS ($USERS users x $CARDS cards)"
+echo "   Partitions: $PARTITIONS"
+echo "   pgbench: $CLIENTS clients, ${DURATION}s per workload"
+echo ""
+
+echo "SELECT 1 FROM pg_database WHERE datname = '$BENCH_DB'" | run_sql postgres | grep -q 1 \
+    || echo "CREATE DATABASE $BENCH_DB" | run_sql postgres
+
+echo "1. Creating tables..."
+run_sql "$BENCH_DB" <<SQL
+DROP SCHEMA IF EXISTS bench_plain CASCADE;
+DROP SCHEMA IF EXISTS bench_partitioned CASCADE;
+CREATE SCHEMA bench_plain;
+CREATE SCHEMA bench_partitioned;
+
+-- Layout after V1-V5
+CREATE TABLE bench_plain.user_cards (
+    id BIGSERIAL PRIMARY KEY,
+    user_id BIGINT NOT NULL,
+    card_id BIGINT NOT NULL,
+    quantity INTEGER NOT NULL DEFAULT 1 CHECK (quantity > 0),
+    condition VARCHAR(20) NOT NULL DEFAULT 'NEAR_MINT',
+    is_reverse_holo BOOLEAN DEFAULT FALSE,
+    notes TEXT,
+    acquired_date TIMESTAMP NOT NULL,
+    created_at TIMESTAMP NOT NULL,
+    updated_at TIMESTAMP NOT NULL,
+    CONSTRAINT uk_user_card UNIQUE (user_id, card_id)
+);
+
+-- Layout after V6
+CREATE TABLE bench_partitioned.user_cards (LIKE bench_plain.user_cards INCLUDING DEFAULTS INCLUDING CONSTRAINTS)
+    PARTITION BY HASH (user_id);
+DO \$\$
+BEGIN
+    FOR i IN 0 .. $PARTITIONS - 1 LOOP
+        EXECUTE format('CREATE TABLE bench_partitioned.user_cards_p%s PARTITION OF bench_partitioned.user_cards '
+                       'FOR VALUES WITH (MODULUS %s, REMAINDER %s)', i, $PARTITIONS, i);
+    END LOOP;
+END
+\$\$;
+ALTER TABLE bench_partitioned.user_cards ADD PRIMARY KEY (user_id, id);
+ALTER TABLE bench_partitioned.user_cards ADD CONSTRAINT uk_user_card_p UNIQUE (user_id, card_id);
+SQL
+
+echo "2. Loading $ROWS rows into each table (this takes a while)..."
+for schema in bench_plain bench_partitioned; do
+    start=$(date +%s)
+    run_sql "$BENCH_DB" <<SQL
+INSERT INTO $schema.user_cards (user_id, card_id, quantity, condition, is_reverse_holo, acquired_date, created_at, updated_at)
+SELECT u, c, 1 + (u + c) % 4,
+       (ARRAY['MINT','NEAR_MINT','EXCELLENT','GOOD','LIGHT_PLAYED','PLAYED','POOR'])[1 + (u * 7 + c) % 7],
+       (u + c) % 5 = 0,
+       NOW() - ((u + c) % 1000) * INTERVAL '1 hour', NOW(), NOW()
+FROM generate_series(1, $USERS) AS u, generate_series(1, $CARDS) AS c;
+
+CREATE INDEX ON $schema.user_cards(card_id);
+CREATE INDEX ON $schema.user_cards(user_id, condition, card_id);
+CREATE INDEX ON $schema.user_cards(user_id, card_id) WHERE is_reverse_holo;
+CREATE INDEX ON $schema.user_cards(user_id, acquired_date, card_id);
+CREATE INDEX ON $schema.user_cards(user_id, updated_at, card_id);
+CREATE INDEX ON $schema.user_cards(user_id, quantity, card_id);
+SQL
+    echo "   $schema loaded and indexed in $(( $(date +%s) - start ))s"
+done
+
+echo ""
+echo "3. Vacuum/analyze time:"
+for schema in bench_plain bench_partitioned; do
+    start=$(date +%s%N)
+    echo "VACUUM ANALYZE $schema.user_cards" | run_sql "$BENCH_DB"
+    echo "   $schema: $(( ($(date +%s%N) - start) / 1000000 )) ms"
+done
+
+# Workloads mirror collection-service: full collection read (GET /users/{id}/cards),
+# single card lookup, keyset page by acquired date, add-or-increment (import merge),
+# updating and removing one card (PUT/DELETE /users/{id}/cards/{cardId}; removed cards are
+# added back so the table keeps its size), and update_by_id, the UPDATE ... WHERE id = ?
+# Hibernate issues for a UserCard entity, which the partitioned table can only serve by
+# searching every partition
+cat > "$WORK_DIR/collection.sql" <<SQL
+\set uid random(1, $USERS)
+SELECT id, card_id, quantity, condition FROM user_cards WHERE user_id = :uid;
+SQL
+cat > "$WORK_DIR/lookup.sql" <<SQL
+\set uid random(1, $USERS)
+\set cid random(1, $CARDS)
+SELECT * FROM user_cards WHERE user_id = :uid AND card_id = :cid;
+SQL
+cat > "$WORK_DIR/page.sql" <<SQL
+\set uid random(1, $USERS)
+SELECT * FROM user_cards WHERE user_id = :uid ORDER BY acquired_date DESC, card_id DESC LIMIT 50;
+SQL
+cat > "$WORK_DIR/upsert.sql" <<SQL
+\set uid random(1, $USERS)
+\set cid random($CARDS + 1, $CARDS * 4)
+INSERT INTO user_cards (user_id, card_id, quantity, condition, acquired_date, created_at, updated_at)
+VALUES (:uid, :cid, 1, 'NEAR_MINT', NOW(), NOW(), NOW())
+ON CONFLICT (user_id, card_id) DO UPDATE SET quantity = user_cards.quantity + 1, updated_at = NOW();
+SQL
+cat > "$WORK_DIR/update.sql" <<SQL
+\set uid random(1, $USERS)
+\set cid random(1, $CARDS)
+UPDATE user_cards SET quantity = 1 + :cid % 4, updated_at = NOW() WHERE user_id = :uid AND card_id = :cid;
+SQL
+cat > "$WORK_DIR/update_by_id.sql" <<SQL
+\set id random(1, $ROWS)
+UPDATE user_cards SET quantity = 1 + :id % 4, updated_at = NOW() WHERE id = :id;
+SQL
+cat > "$WORK_DIR/delete.sql" <<SQL
+\set uid random(1, $USERS)
+\set cid random(1, $CARDS)
+DELETE FROM user_cards WHERE user_id = :uid AND card_id = :cid;
+INSERT INTO user_cards (user_id, card_id, quantity, condition, acquired_date, created_at, updated_at)
+VALUES (:uid, :cid, 1, 'NEAR_MINT', NOW(), NOW(), NOW()) ON CONFLICT (user_id, card_id) DO NOTHING;
+SQL
+
+echo ""
+echo "4. Running workloads..."
+RESULTS="$WORK_DIR/results.txt"
+printf "%-12s %-18s %12s %12s\n" "workload" "layout" "avg ms" "tps" > "$RESULTS"
+for workload in ${WORKLOADS:-collection lookup page upsert update update_by_id delete}; do
+    for schema in bench_plain bench_partitioned; do
+        output=$(PGOPTIONS="-c search_path=$schema" run_bench "$BENCH_DB" "$WORK_DIR/$workload.sql")
+        latency=$(echo "$output" | awk -F'= ' '/latency average/ {print $2}' | awk '{print $1}')
+        tps=$(echo "$output" | awk -F'= ' '/^tps/ {print $2}' | awk '{print $1}')
+        printf "%-12s %-18s %12s %12s\n" "$workload" "${schema#bench_}" "$latency" "$tps" >> "$RESULTS"
+        echo -n "."
+    done
+done
+echo ""
+echo ""
+cat "$RESULTS"
+
+echo ""
+echo "5. Largest index per layout:"
+printf "%-18s %18s %16s\n" "layout" "largest index MB" "total index MB"
+run_sql "$BENCH_DB" <<SQL | awk -F'\t' '{ printf "%-18s %18s %16s\n", $1, $2, $3 }'
+SELECT n.nspname, max(pg_relation_size(c.oid)) / 1024 / 1024, (sum(pg_relation_size(c.oid)) / 1024 / 1024)::BIGINT
+FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace
+WHERE c.relkind = 'i' AND n.nspname IN ('bench_plain', 'bench_partitioned')
+GROUP BY n.nspname;
+SQL
+
+if [ "${KEEP_BENCH_DB:-false}" != "true" ]; then
+    echo "DROP DATABASE $BENCH_DB" | run_sql postgres
+fi
+
+echo "========================================="
+echo "Benchmark complete"
+echo "========================================="
@@ -0,0 +1,104 @@
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import no.kristiania.pg3402.catalog.config.RabbitMQConfig;
+import no.kristiania.pg3402.catalog.listener.CardEventListener;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.annotation.EnableRabbit;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.listener.AbstractMessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.amqp.rabbit.listener.api.ChannelAwareMessageListener;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Broker-less counterpart of scripts/benchmark-card-events.sh: measures the
+ * catalog's card event consumer path on its own (JSON conversion, the
+ * __TypeId__ mapping and @RabbitHandler dispatch), without network, prefetch
+ * or acks.
+ *
+ * The listener container is built from catalog-service's RabbitMQConfig and
+ * CardEventListener but never started; its message listener is called
+ * directly with CardAdded, CardUpdated and CardRemovedEvent messages in turn,
+ * carrying the same payloads and headers as the broker benchmark.
+ *
+ * Usage, from the repository root after building catalog-service:
+ *   mvn -q -pl catalog-service dependency:build-classpath -Dmdep.outputFile=/tmp/catalog.cp
+ *   java -cp catalog-service/target/classes:$(cat /tmp/catalog.cp) \
+ *       scripts/card-events-bench/CardEventConsumerBench.java [LOG_LEVEL] [EVENTS] [RUNS] > /dev/null
+ *
+ * LOG_LEVEL is the catalog listener's log level (default WARN); its output goes
+ * to stdout, the rate of each run to stderr. Leave out the first couple of
+ * runs as warm-up.
+ */
+public class CardEventConsumerBench {
+
+    private static final String EVENTS_PACKAGE = "no.kristiania.pg3402.collection.events.";
+
+    @Configuration
+    @EnableRabbit
+    @Import({RabbitMQConfig.class, CardEventListener.class})
+    static class BenchConfig {
+
+        @Bean
+        CachingConnectionFactory connectionFactory() {
+            // Never connected: the container is not started
+            return new CachingConnectionFactory("localhost");
+        }
+
+        @Bean
+        SimpleRabbitListenerContainerFactory rabbitListenerContainerFactory(CachingConnectionFactory connectionFactory,
+                                                                            MessageConverter messageConverter) {
+            SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+            factory.setConnectionFactory(connectionFactory);
+            factory.setMessageConverter(messageConverter);
+            factory.setAutoStartup(false);
+            return factory;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String level = args.length > 0 ? args[0] : "WARN";
+        int events = args.length > 1 ? Integer.parseInt(args[1]) : 300_000;
+        int runs = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+        ((Logger) LoggerFactory.getLogger("no.kristiania.pg3402.catalog.listener")).setLevel(Level.toLevel(level));
+
+        try (AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(BenchConfig.class)) {
+            AbstractMessageListenerContainer container = (AbstractMessageListenerContainer) context
+                    .getBean(RabbitListenerEndpointRegistry.class).getListenerContainers().iterator().next();
+            ChannelAwareMessageListener listener = (ChannelAwareMessageListener) container.getMessageListener();
+            Message[] messages = {
+                    message("CardAddedEvent", "{\"userId\":1,\"cardId\":42,\"quantity\":1,\"condition\":\"NEAR_MINT\"," +
+                            "\"isReverseHolo\":false,\"timestamp\":\"2026-01-01T12:00:00Z\"}"),
+                    message("CardUpdatedEvent", "{\"userId\":1,\"cardId\":42,\"newQuantity\":2," +
+                            "\"newCondition\":\"LIGHTLY_PLAYED\",\"timestamp\":\"2026-01-01T12:00:00Z\"}"),
+                    message("CardRemovedEvent", "{\"userId\":1,\"cardId\":42,\"timestamp\":\"2026-01-01T12:00:00Z\"}")
+            };
+
+            for (int run = 1; run <= runs; run++) {
+                long start = System.nanoTime();
+                for (int i = 0; i < events; i++) {
+                    listener.onMessage(messages[i % messages.length], null);
+                }
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.err.printf("run %d: %d events in %.2f s = %.0f events/s%n", run, events, seconds, events / seconds);
+            }
+        }
+    }
+
+    private static Message message(String type, String json) {
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType("application/json");
+        properties.setHeader("__TypeId__", EVENTS_PACKAGE + type);
+        return new Message(json.getBytes(StandardCharsets.UTF_8), properties);
+    }
+}
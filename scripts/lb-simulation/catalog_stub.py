@@ -0,0 +1,52 @@
+"""
+Stand-in for a catalog-service replica with configurable latency, used by
+scripts/simulate-catalog-load-balancing.sh.
+
+Answers every GET on port 8081 with {"instance": ...} after DELAY_MS (+/- JITTER_MS).
+With PAUSE_EVERY_S > 0 it also stalls all requests for PAUSE_MS at that interval,
+like a stop-the-world GC pause.
+"""
+import json
+import os
+import random
+import time
+from http.server import BaseHTTPRequestHandler, ThreadingHTTPServer
+
+INSTANCE = os.environ.get("INSTANCE_NAME", "stub")
+DELAY_MS = float(os.environ.get("DELAY_MS", "10"))
+JITTER_MS = float(os.environ.get("JITTER_MS", "2"))
+PAUSE_EVERY_S = float(os.environ.get("PAUSE_EVERY_S", "0"))
+PAUSE_MS = float(os.environ.get("PAUSE_MS", "0"))
+
+started = time.monotonic()
+
+
+def remaining_pause():
+    """Seconds left of the current pause window, 0 outside one"""
+    if PAUSE_EVERY_S <= 0 or PAUSE_MS <= 0:
+        return 0.0
+    into_cycle = (time.monotonic() - started) % PAUSE_EVERY_S
+    return max(0.0, PAUSE_MS / 1000 - into_cycle)
+
+
+class Handler(BaseHTTPRequestHandler):
+
+    def do_GET(self):
+        delay = max(0.0, DELAY_MS + random.uniform(-JITTER_MS, JITTER_MS)) / 1000
+        time.sleep(remaining_pause() + delay)
+        body = json.dumps({"instance": INSTANCE, "path": self.path}).encode()
+        self.send_response(200)
+        self.send_header("Content-Type", "application/json")
+        self.send_header("Content-Length", str(len(body)))
+        self.end_headers()
+        self.wfile.write(body)
+
+    def log_message(self, format, *args):
+        pass
+
+
+if __name__ == "__main__":
+    server = ThreadingHTTPServer(("0.0.0.0", 8081), Handler)
+    server.daemon_threads = True
+    print(f"catalog stub {INSTANCE}: delay={DELAY_MS}ms pause={PAUSE_MS}ms every {PAUSE_EVERY_S}s", flush=True)
+    server.serve_forever()
@@ -0,0 +1,101 @@
+#!/bin/bash
+
+# Compare gateway load balancing strategies for catalog-service against stub replicas:
+# two fast ones and one that is slower and stalls periodically (docker-compose.lb-simulation.yml).
+#
+# For each strategy the gateway is restarted, warmed up, and sent REQUESTS GETs with
+# CONCURRENCY in flight; the script reports latency percentiles and each stub's share.
+#
+# Usage:
+#   ./scripts/simulate-catalog-load-balancing.sh
+#
+# Settings (environment):
+#   STRATEGIES   strategies to compare (default: "round-robin p2c")
+#   REQUESTS     requests per strategy (default: 3000)
+#   CONCURRENCY  parallel requests (default: 16)
+#   KEEP_RUNNING set to true to leave the stubs and gateway running afterwards
+
+set -euo pipefail
+
+STRATEGIES=${STRATEGIES:-"round-robin p2c"}
+REQUESTS=${REQUESTS:-3000}
+CONCURRENCY=${CONCURRENCY:-16}
+GATEWAY=http://localhost:8080
+COMPOSE="docker compose -f docker-compose.yml -f docker-compose.lb-simulation.yml"
+
+cd "$(dirname "$0")/.."
+
+WORK_DIR=$(mktemp -d)
+trap 'rm -rf "$WORK_DIR"' EXIT
+
+echo "========================================="
+echo "Catalog load balancing simulation"
+echo "========================================="
+echo "   Stubs: fast-1 (10 ms), fast-2 (10 ms), slow (40 ms, 800 ms stall every 3 s)"
+echo "   $REQUESTS requests per strategy, $CONCURRENCY concurrent"
+echo ""
+
+echo "1. Starting stubs..."
+$COMPOSE up -d consul redis catalog-stub-fast-1 catalog-stub-fast-2 catalog-stub-slow > /dev/null
+
+wait_for_gateway() {
+    for _ in $(seq 1 60); do
+        if curl -sf "$GATEWAY/actuator/health" > /dev/null; then
+            return 0
+        fi
+        sleep 2
+    done
+    echo "Gateway did not become healthy" >&2
+    exit 1
+}
+
+RESULTS="$WORK_DIR/results.txt"
+printf "%-12s %8s %8s %8s %8s   %s\n" "strategy" "p50 ms" "p95 ms" "p99 ms" "max ms" "share (fast-1 / fast-2 / slow)" > "$RESULTS"
+
+step=2
+for strategy in $STRATEGIES; do
+    echo "$step. Strategy: $strategy"
+    LB_CATALOG_STRATEGY=$strategy $COMPOSE up -d --no-deps --force-recreate api-gateway > /dev/null
+    wait_for_gateway
+
+    # Warm up connections and let the balancer collect latency samples
+    seq 1 200 | xargs -P "$CONCURRENCY" -I{} curl -s -o /dev/null "$GATEWAY/api/catalog/sets" || true
+
+    OUT="$WORK_DIR/$strategy.tsv"
+    seq 1 "$REQUESTS" | xargs -P "$CONCURRENCY" -I{} \
+        curl -s -w '\t%{time_total}\n' "$GATEWAY/api/catalog/sets?n={}" > "$OUT" || true
+
+    # Each line: {"instance": "fast-1", ...}<TAB>seconds
+    sort -t$'\t' -k2 -g "$OUT" | awk -F'\t' -v strategy="$strategy" '
+        {
+            latency[NR] = $2 * 1000
+            if (match($1, /"instance": *"[^"]*"/)) {
+                name = substr($1, RSTART, RLENGTH); sub(/.*"instance": *"/, "", name); sub(/"$/, "", name)
+                share[name]++
+            }
+        }
+        END {
+            p50 = latency[int(NR * 0.50)]; p95 = latency[int(NR * 0.95)]; p99 = latency[int(NR * 0.99)]
+            printf "%-12s %8.1f %8.1f %8.1f %8.1f   %.0f%% / %.0f%% / %.0f%%\n", strategy, p50, p95, p99, latency[NR],
+                100 * share["fast-1"] / NR, 100 * share["fast-2"] / NR, 100 * share["slow"] / NR
+        }' >> "$RESULTS"
+
+    if [ "$strategy" = "p2c" ]; then
+        echo "   Instance scores reported by the gateway:"
+        curl -s "$GATEWAY/actuator/prometheus" | grep '^gateway_loadbalancer_instance_' \
+            | grep 'service="catalog-service"' | sed 's/^/      /' || true
+    fi
+    step=$((step + 1))
+done
+
+echo ""
+cat "$RESULTS"
+
+if [ "${KEEP_RUNNING:-false}" != "true" ]; then
+    $COMPOSE stop api-gateway catalog-stub-fast-1 catalog-stub-fast-2 catalog-stub-slow > /dev/null
+    $COMPOSE rm -f api-gateway catalog-stub-fast-1 catalog-stub-fast-2 catalog-stub-slow > /dev/null
+fi
+
+echo "========================================="
+echo "Simulation complete"
+echo "========================================="
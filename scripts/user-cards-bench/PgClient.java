@@ -0,0 +1,205 @@
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Stand-in for psql and pgbench, used by scripts/benchmark-user-cards-partitioning.sh
+ * when the PostgreSQL client tools are not installed. Connects with the PostgreSQL
+ * JDBC driver using the usual PGHOST, PGPORT, PGUSER, PGPASSWORD and PGOPTIONS.
+ *
+ * Usage (java -cp postgresql.jar PgClient.java ...):
+ *   sql DB                    run the SQL read from stdin, print any results tab-separated
+ *   bench DB FILE CLIENTS S   run a pgbench script for S seconds with CLIENTS connections
+ *
+ * Bench scripts support the subset the benchmark uses: "\set name random(lo, hi)"
+ * (integer arithmetic allowed in the bounds) and SQL statements ending with a
+ * semicolon, with :name variables, run as prepared statements. Prints
+ * pgbench's "latency average" and "tps" lines.
+ */
+public class PgClient {
+
+    private static final Pattern SET = Pattern.compile("\\\\set\\s+(\\w+)\\s+random\\((.+),(.+)\\)\\s*");
+    private static final Pattern VARIABLE = Pattern.compile("(?<!:):(\\w+)");
+
+    public static void main(String[] args) throws Exception {
+        if (args.length >= 2 && args[0].equals("sql")) {
+            sql(args[1], new String(System.in.readAllBytes(), StandardCharsets.UTF_8));
+        } else if (args.length == 5 && args[0].equals("bench")) {
+            bench(args[1], Path.of(args[2]), Integer.parseInt(args[3]), Integer.parseInt(args[4]));
+        } else {
+            System.err.println("usage: PgClient sql DB < file | PgClient bench DB FILE CLIENTS SECONDS");
+            System.exit(2);
+        }
+    }
+
+    private static Connection connect(String database) throws SQLException {
+        String url = "jdbc:postgresql://" + env("PGHOST", "localhost") + ":" + env("PGPORT", "5432") + "/" + database;
+        Properties properties = new Properties();
+        properties.setProperty("user", env("PGUSER", System.getProperty("user.name")));
+        properties.setProperty("password", env("PGPASSWORD", ""));
+        if (!env("PGOPTIONS", "").isEmpty()) {
+            properties.setProperty("options", env("PGOPTIONS", ""));
+        }
+        return DriverManager.getConnection(url, properties);
+    }
+
+    private static void sql(String database, String script) throws SQLException {
+        try (Connection connection = connect(database); Statement statement = connection.createStatement()) {
+            boolean hasResult = statement.execute(script);
+            while (true) {
+                if (hasResult) {
+                    print(statement.getResultSet());
+                } else if (statement.getUpdateCount() == -1) {
+                    break;
+                }
+                hasResult = statement.getMoreResults(Statement.KEEP_CURRENT_RESULT);
+            }
+        }
+    }
+
+    private static void print(ResultSet resultSet) throws SQLException {
+        ResultSetMetaData meta = resultSet.getMetaData();
+        while (resultSet.next()) {
+            StringBuilder row = new StringBuilder();
+            for (int i = 1; i <= meta.getColumnCount(); i++) {
+                row.append(i > 1 ? "\t" : "").append(resultSet.getString(i));
+            }
+            System.out.println(row);
+        }
+    }
+
+    private static void bench(String database, Path file, int clients, int seconds) throws Exception {
+        Map<String, long[]> ranges = new HashMap<>();
+        List<String> statements = new ArrayList<>();
+        StringBuilder pending = new StringBuilder();
+        for (String line : Files.readAllLines(file)) {
+            Matcher set = SET.matcher(line.trim());
+            if (set.matches()) {
+                ranges.put(set.group(1), new long[]{evaluate(set.group(2)), evaluate(set.group(3))});
+            } else if (!line.isBlank()) {
+                pending.append(pending.length() > 0 ? " " : "").append(line.trim());
+                if (line.trim().endsWith(";")) {
+                    statements.add(pending.substring(0, pending.length() - 1));
+                    pending.setLength(0);
+                }
+            }
+        }
+
+        AtomicLong transactions = new AtomicLong();
+        AtomicLong latencyNanos = new AtomicLong();
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        List<Thread> threads = new ArrayList<>();
+        List<Exception> errors = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            Thread thread = new Thread(() -> {
+                try (Connection connection = connect(database)) {
+                    List<Prepared> prepared = new ArrayList<>();
+                    for (String statement : statements) {
+                        prepared.add(Prepared.of(connection, statement));
+                    }
+                    Map<String, Long> values = new HashMap<>();
+                    while (System.nanoTime() < deadline) {
+                        ranges.forEach((name, range) ->
+                                values.put(name, ThreadLocalRandom.current().nextLong(range[0], range[1] + 1)));
+                        long start = System.nanoTime();
+                        for (Prepared statement : prepared) {
+                            statement.run(values);
+                        }
+                        latencyNanos.addAndGet(System.nanoTime() - start);
+                        transactions.incrementAndGet();
+                    }
+                    for (Prepared statement : prepared) {
+                        statement.statement().close();
+                    }
+                } catch (Exception e) {
+                    synchronized (errors) {
+                        errors.add(e);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (!errors.isEmpty()) {
+            throw errors.get(0);
+        }
+        long count = transactions.get();
+        System.out.printf("number of transactions actually processed: %d%n", count);
+        System.out.printf("latency average = %.3f ms%n", count == 0 ? 0 : latencyNanos.get() / 1e6 / count);
+        System.out.printf("tps = %.6f (without initial connection time)%n", count / (double) seconds);
+    }
+
+    /**
+     * Integer expression with + - * / and no parentheses, evaluated left to right
+     * within each precedence level
+     */
+    private static long evaluate(String expression) {
+        long sum = 0;
+        for (String term : expression.replace(" ", "").split("(?=[+-])")) {
+            if (term.isEmpty()) {
+                continue;
+            }
+            int sign = term.startsWith("-") ? -1 : 1;
+            String[] factors = term.replaceFirst("^[+-]", "").split("(?=[*/])");
+            long product = Long.parseLong(factors[0]);
+            for (int i = 1; i < factors.length; i++) {
+                long operand = Long.parseLong(factors[i].substring(1));
+                product = factors[i].charAt(0) == '*' ? product * operand : product / operand;
+            }
+            sum += sign * product;
+        }
+        return sum;
+    }
+
+    private static String env(String name, String fallback) {
+        String value = System.getenv(name);
+        return value == null ? fallback : value;
+    }
+
+    private record Prepared(PreparedStatement statement, List<String> parameters) {
+
+        static Prepared of(Connection connection, String sql) throws SQLException {
+            List<String> parameters = new ArrayList<>();
+            Matcher matcher = VARIABLE.matcher(sql);
+            StringBuilder jdbcSql = new StringBuilder();
+            while (matcher.find()) {
+                parameters.add(matcher.group(1));
+                matcher.appendReplacement(jdbcSql, "?");
+            }
+            matcher.appendTail(jdbcSql);
+            return new Prepared(connection.prepareStatement(jdbcSql.toString()), parameters);
+        }
+
+        void run(Map<String, Long> values) throws SQLException {
+            for (int i = 0; i < parameters.size(); i++) {
+                statement.setLong(i + 1, values.get(parameters.get(i)));
+            }
+            if (statement.execute()) {
+                try (ResultSet resultSet = statement.getResultSet()) {
+                    while (resultSet.next()) {
+                        // Fetch every row, as pgbench does
+                    }
+                }
+            }
+        }
+    }
+}